@@ -20,6 +20,8 @@ import com.softavail.commsrouter.api.dto.arg.CreateQueueArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateQueueArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.misc.QueueMappingDto;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.misc.SizeDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.QueueDto;
@@ -27,6 +29,7 @@ import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.NotFoundException;
+import com.softavail.commsrouter.api.interfaces.PaginatedService;
 import com.softavail.commsrouter.api.interfaces.QueueService;
 
 import java.net.URI;
@@ -36,6 +39,7 @@ import javax.inject.Inject;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
 /**
@@ -123,6 +127,36 @@ public class QueueServiceClient extends ServiceClientBase<QueueDto, ApiObjectRef
         .getSize();
   }
 
+  @Override
+  public QueueStatisticsDto getStatistics(RouterObjectRef routerObjectRef)
+      throws NotFoundException {
+
+    URI uri = getApiUrl().clone()
+        .path("{resourceRef}")
+        .path("stats")
+        .build(routerObjectRef.getRouterRef(), routerObjectRef.getRef());
+
+    return getClient()
+        .target(uri)
+        .request(MediaType.APPLICATION_JSON_TYPE)
+        .get(QueueStatisticsDto.class);
+  }
+
+  @Override
+  public QueueMappingDto getMapping(RouterObjectRef routerObjectRef)
+      throws NotFoundException {
+
+    URI uri = getApiUrl().clone()
+        .path("{resourceRef}")
+        .path("mapping")
+        .build(routerObjectRef.getRouterRef(), routerObjectRef.getRef());
+
+    return getClient()
+        .target(uri)
+        .request(MediaType.APPLICATION_JSON_TYPE)
+        .get(QueueMappingDto.class);
+  }
+
   @Override
   public Collection<TaskDto> getTasks(RouterObjectRef routerObjectId)
       throws NotFoundException {
@@ -138,4 +172,26 @@ public class QueueServiceClient extends ServiceClientBase<QueueDto, ApiObjectRef
         .get(new GenericType<Collection<TaskDto>>(){});
   }
 
+  @Override
+  public PaginatedList<TaskDto> getTasks(RouterObjectRef routerObjectId, String token,
+      int perPage) throws NotFoundException {
+
+    UriBuilder uriBuilder = getApiUrl().clone()
+        .path("{resourceRef}")
+        .path("tasks")
+        .queryParam(PaginatedService.ITEMS_PER_PAGE_PARAM, perPage);
+
+    if (token != null) {
+      uriBuilder.queryParam(PaginatedService.TOKEN_PARAM, token);
+    }
+
+    Response response = getClient()
+        .target(uriBuilder.build(routerObjectId.getRouterRef(), routerObjectId.getRef()))
+        .request(MediaType.APPLICATION_JSON_TYPE)
+        .get();
+
+    List<TaskDto> list = response.readEntity(new GenericType<List<TaskDto>>(){});
+    return new PaginatedList<>(list, response.getHeaderString(PaginatedService.NEXT_TOKEN_HEADER));
+  }
+
 }
@@ -20,6 +20,7 @@ import com.softavail.commsrouter.api.dto.arg.CreateRouterArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateRouterArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
@@ -27,10 +28,12 @@ import com.softavail.commsrouter.api.exception.NotFoundException;
 import com.softavail.commsrouter.api.interfaces.PaginatedService;
 import com.softavail.commsrouter.api.interfaces.RouterService;
 
+import java.net.URI;
 import java.util.List;
 import javax.inject.Inject;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
 
 /**
@@ -88,6 +91,21 @@ public class RouterServiceClient extends ServiceClientBase<RouterDto, ApiObjectR
     return getItem(new ApiObjectRef(ref));
   }
 
+  @Override
+  public QueueStatisticsDto getStatistics(String ref)
+      throws NotFoundException {
+
+    URI uri = getApiUrl().clone()
+        .path("{resourceRef}")
+        .path("stats")
+        .build(ref);
+
+    return getClient()
+        .target(uri)
+        .request(MediaType.APPLICATION_JSON_TYPE)
+        .get(QueueStatisticsDto.class);
+  }
+
   @Override
   public PaginatedList<RouterDto> list(PagingRequest request) {
     return getList(request, new GenericType<List<RouterDto>>() {});
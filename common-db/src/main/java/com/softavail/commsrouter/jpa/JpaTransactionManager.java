@@ -20,82 +20,118 @@ import com.google.common.base.Throwables;
 
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ReferenceIntegrityViolationException;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.LockAcquisitionException;
 
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.LockTimeoutException;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceException;
+import javax.persistence.PessimisticLockException;
 
 /**
  * @author ikrustev
  */
 public class JpaTransactionManager {
 
+  private static final Logger LOGGER = LogManager.getLogger(JpaTransactionManager.class);
+
   private final EntityManagerFactory emf;
-  private final int lockRetryCount;
+  private final EntityManagerFactory replicaEmf;
+  private final LockRetryPolicy lockRetryPolicy;
+  private final boolean collectStatistics;
+  // By the class of the transaction logic, a lambda class stands for a single call site
+  private final ConcurrentMap<Class<?>, String> callers = new ConcurrentHashMap<>();
 
   public JpaTransactionManager(EntityManagerFactory emf, int lockRetryCount) {
+    this(emf, null, new LockRetryPolicy(lockRetryCount), false);
+  }
+
+  public JpaTransactionManager(EntityManagerFactory emf, EntityManagerFactory replicaEmf,
+      LockRetryPolicy lockRetryPolicy, boolean collectStatistics) {
     this.emf = emf;
-    this.lockRetryCount = lockRetryCount;
+    this.replicaEmf = replicaEmf;
+    this.lockRetryPolicy = lockRetryPolicy;
+    this.collectStatistics = collectStatistics;
   }
 
   public <RESULT> RESULT execute(int lockRetryCount, TransactionLogic<RESULT> transactionLogic)
       throws CommsRouterException {
 
-    EntityManager em = emf.createEntityManager();
-    try {
+    long lockWaitStarted = 0;
+    for (int attempt = 0; ; ++attempt) {
+      // A fresh persistence context for each attempt, the stale entities go with the old one
+      EntityManager em = emf.createEntityManager();
+      long started = System.nanoTime();
+      QueryStatistics outerStatistics = QueryStatistics.beginTransaction();
       EntityTransaction dbTransaction = em.getTransaction();
-      for (; ; ) {
-        try {
-          dbTransaction.begin();
-          RESULT result = transactionLogic.run(em);
-          dbTransaction.commit();
-          return result;
-        } catch (PersistenceException ex) {
-          if (dbTransaction.isActive()) {
-            dbTransaction.rollback();
-          }
+      try {
+        dbTransaction.begin();
+        RESULT result = transactionLogic.run(em);
+        dbTransaction.commit();
+        recordLockWait(transactionLogic, attempt, lockWaitStarted);
+        return result;
+      } catch (PersistenceException ex) {
+        if (dbTransaction.isActive()) {
+          dbTransaction.rollback();
+        }
 
-          if (OptimisticLockException.class.isInstance(ex.getCause()) && lockRetryCount > 0) {
-            --lockRetryCount;
+        String lockFailure = getLockFailure(ex);
+        if (lockFailure != null) {
+          if (attempt == 0) {
+            lockWaitStarted = started;
+          }
+          if (attempt < lockRetryCount && backOff(transactionLogic, attempt, lockFailure)) {
             continue;
           }
+          recordLockWait(transactionLogic, attempt + 1, lockWaitStarted);
+          throw ex;
+        }
 
-          // Hibernate does not follow JPA 2 specs and wraps ConstraintViolation in RollbackEx
-          Class<javax.validation.ConstraintViolationException> javaxConstraint =
-              javax.validation.ConstraintViolationException.class;
-          if (javaxConstraint.isInstance(ex.getCause())) {
-            throw javaxConstraint.cast(ex.getCause());
-          }
+        // Hibernate does not follow JPA 2 specs and wraps ConstraintViolation in RollbackEx
+        Class<javax.validation.ConstraintViolationException> javaxConstraint =
+            javax.validation.ConstraintViolationException.class;
+        if (javaxConstraint.isInstance(ex.getCause())) {
+          throw javaxConstraint.cast(ex.getCause());
+        }
 
-          // Find Integrity Constraint Violations like foreign key constraint
-          Class<org.hibernate.exception.ConstraintViolationException> hibernateConstraint =
-              org.hibernate.exception.ConstraintViolationException.class;
-          Optional<Throwable> throwable = Throwables.getCausalChain(ex).stream()
-              .filter((hibernateConstraint)::isInstance)
-              .findFirst();
-
-          if (throwable.isPresent()) {
-            org.hibernate.exception.ConstraintViolationException hibernateException =
-                (org.hibernate.exception.ConstraintViolationException) throwable.get();
-            ReferenceIntegrityViolationException newEx =
-                new ReferenceIntegrityViolationException(hibernateException);
-            newEx.setConstraintName(hibernateException.getConstraintName());
-            throw newEx;
-          }
+        // Find Integrity Constraint Violations like foreign key constraint
+        Class<org.hibernate.exception.ConstraintViolationException> hibernateConstraint =
+            org.hibernate.exception.ConstraintViolationException.class;
+        Optional<Throwable> throwable = Throwables.getCausalChain(ex).stream()
+            .filter((hibernateConstraint)::isInstance)
+            .findFirst();
 
-          throw ex;
-        } catch (Exception ex) {
-          if (dbTransaction.isActive()) {
-            dbTransaction.rollback();
-          }
-          throw ex;
+        if (throwable.isPresent()) {
+          org.hibernate.exception.ConstraintViolationException hibernateException =
+              (org.hibernate.exception.ConstraintViolationException) throwable.get();
+          ReferenceIntegrityViolationException newEx =
+              new ReferenceIntegrityViolationException(hibernateException);
+          newEx.setConstraintName(hibernateException.getConstraintName());
+          throw newEx;
         }
+
+        throw ex;
+      } catch (Exception ex) {
+        if (dbTransaction.isActive()) {
+          dbTransaction.rollback();
+        }
+        throw ex;
+      } finally {
+        closeEntityManager(transactionLogic, em, outerStatistics, started);
       }
-    } finally {
-      em.close();
     }
   }
 
@@ -108,7 +144,7 @@ public class JpaTransactionManager {
   public <RESULT> RESULT executeWithLockRetry(TransactionLogic<RESULT> transactionLogic)
       throws CommsRouterException {
 
-    return execute(lockRetryCount, transactionLogic);
+    return execute(lockRetryPolicy.getRetryCount(), transactionLogic);
   }
 
   public void executeVoid(VoidTransactionLogic voidTransactionLogic)
@@ -120,10 +156,148 @@ public class JpaTransactionManager {
   public void executeVoidWithLockRetry(VoidTransactionLogic voidTransactionLogic)
       throws CommsRouterException {
 
-    execute(lockRetryCount, voidTransactionLogic);
+    execute(lockRetryPolicy.getRetryCount(), voidTransactionLogic);
+  }
+
+  private static String getLockFailure(PersistenceException ex) {
+    for (Throwable cause : Throwables.getCausalChain(ex)) {
+      if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+        return "optimistic";
+      }
+      if (cause instanceof LockTimeoutException
+          || cause instanceof org.hibernate.exception.LockTimeoutException) {
+        return "timeout";
+      }
+      if (cause instanceof PessimisticLockException
+          || cause instanceof org.hibernate.PessimisticLockException
+          || cause instanceof LockAcquisitionException) {
+        return "deadlock";
+      }
+    }
+    return null;
+  }
+
+  private boolean backOff(Object transactionLogic, int attempt, String lockFailure) {
+    String caller = getCaller(transactionLogic);
+    Metrics.counter("jpa.lock.retries", "caller", caller, "cause", lockFailure).increment();
+    long delay = lockRetryPolicy.getDelayMillis(attempt);
+    LOGGER.debug("{}: {} lock failure, retry {} in {}ms", caller, lockFailure, attempt + 1, delay);
+    if (delay <= 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(delay);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void recordLockWait(Object transactionLogic, int failedAttempts, long lockWaitStarted) {
+    if (failedAttempts == 0) {
+      return;
+    }
+    Metrics.timer("jpa.lock.wait", "caller", getCaller(transactionLogic))
+        .record(System.nanoTime() - lockWaitStarted, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Runs the logic in a read-only session that is never flushed, so Hibernate keeps no snapshots
+   * for dirty checking. Inside a {@link ReplicaReadScope} the session is opened on the read
+   * replica, when one is configured.
+   */
+  public <RESULT> RESULT executeReadOnly(TransactionLogic<RESULT> transactionLogic)
+      throws CommsRouterException {
+
+    EntityManagerFactory factory =
+        replicaEmf != null && ReplicaReadScope.isActive() ? replicaEmf : emf;
+    EntityManager em = factory.createEntityManager();
+    long started = System.nanoTime();
+    QueryStatistics outerStatistics = QueryStatistics.beginTransaction();
+    try {
+      Session session = em.unwrap(Session.class);
+      session.setDefaultReadOnly(true);
+      session.setHibernateFlushMode(FlushMode.MANUAL);
+      EntityTransaction dbTransaction = em.getTransaction();
+      dbTransaction.begin();
+      try {
+        return transactionLogic.run(em);
+      } finally {
+        if (dbTransaction.isActive()) {
+          dbTransaction.rollback();
+        }
+      }
+    } finally {
+      closeEntityManager(transactionLogic, em, outerStatistics, started);
+    }
+  }
+
+  private void closeEntityManager(Object transactionLogic, EntityManager em,
+      QueryStatistics outerStatistics, long started) {
+    long entityCount = em.unwrap(Session.class).getStatistics().getEntityCount();
+    em.close();
+    QueryStatistics statistics = QueryStatistics.endTransaction(
+        outerStatistics, entityCount, System.nanoTime() - started);
+    if (collectStatistics) {
+      record(transactionLogic, statistics);
+    }
+  }
+
+  private void record(Object transactionLogic, QueryStatistics statistics) {
+    String caller = getCaller(transactionLogic);
+    Metrics.timer("jpa.transaction", "caller", caller)
+        .record(statistics.getElapsedNanos(), TimeUnit.NANOSECONDS);
+    Metrics.summary("jpa.transaction.statements", "caller", caller)
+        .record(statistics.getStatementCount());
+    Metrics.summary("jpa.transaction.entities", "caller", caller)
+        .record(statistics.getEntityCount());
+  }
+
+  /**
+   * The stack is walked once per transaction logic class, not on every transaction.
+   */
+  private String getCaller(Object transactionLogic) {
+    Class<?> logicClass = transactionLogic.getClass();
+    String caller = callers.get(logicClass);
+    if (caller == null) {
+      caller = findCaller();
+      callers.putIfAbsent(logicClass, caller);
+    }
+    return caller;
+  }
+
+  private static String findCaller() {
+    for (StackTraceElement element : new Throwable().getStackTrace()) {
+      String className = element.getClassName();
+      if (!className.equals(JpaTransactionManager.class.getName())) {
+        return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName();
+      }
+    }
+    return "unknown";
+  }
+
+  /**
+   * Runs the action once the transaction of the entity manager commits. Nothing is run when it
+   * rolls back, so an attempt that is retried after a lock failure leaves no trace.
+   */
+  public static void afterCommit(EntityManager em, Runnable action) {
+    em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((success, session) -> {
+      if (!success) {
+        return;
+      }
+      try {
+        action.run();
+      } catch (RuntimeException ex) {
+        LOGGER.error("After commit action failure: {}", ex, ex);
+      }
+    });
   }
 
   public void close() {
+    if (replicaEmf != null) {
+      replicaEmf.close();
+    }
     emf.close();
   }
 
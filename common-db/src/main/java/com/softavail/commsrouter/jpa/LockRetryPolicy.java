@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How many times and after what delay a transaction that failed on a lock is retried. The delay
+ * doubles with each attempt up to the maximum, and a random value between its half and its full
+ * length is used so the competing transactions do not collide again.
+ */
+public class LockRetryPolicy {
+
+  private final int retryCount;
+  private final long delayMillis;
+  private final long delayMaxMillis;
+
+  public LockRetryPolicy(int retryCount) {
+    this(retryCount, 0, 0);
+  }
+
+  public LockRetryPolicy(int retryCount, long delayMillis, long delayMaxMillis) {
+    this.retryCount = retryCount;
+    this.delayMillis = delayMillis;
+    this.delayMaxMillis = Math.max(delayMillis, delayMaxMillis);
+  }
+
+  public int getRetryCount() {
+    return retryCount;
+  }
+
+  public long getDelayMillis(int attempt) {
+    if (delayMillis <= 0) {
+      return 0;
+    }
+    long delay = delayMaxMillis;
+    if (attempt < Long.numberOfLeadingZeros(delayMillis) - 1) {
+      delay = Math.min(delayMaxMillis, delayMillis << attempt);
+    }
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the SQL statements, loaded entities and time spent in transactions on the current
+ * thread. The transaction manager keeps one instance per running transaction and, when a scope is
+ * opened with {@link #startScope()}, accumulates into it as well, so a web request or a test can
+ * see the total cost of everything it did.
+ */
+public class QueryStatistics {
+
+  private static final ThreadLocal<QueryStatistics> TRANSACTION = new ThreadLocal<>();
+  private static final ThreadLocal<QueryStatistics> SCOPE = new ThreadLocal<>();
+
+  private int transactionCount;
+  private long statementCount;
+  private long entityCount;
+  private long elapsedNanos;
+
+  public static QueryStatistics startScope() {
+    QueryStatistics statistics = new QueryStatistics();
+    SCOPE.set(statistics);
+    return statistics;
+  }
+
+  public static QueryStatistics endScope() {
+    QueryStatistics statistics = SCOPE.get();
+    SCOPE.remove();
+    return statistics;
+  }
+
+  public static QueryStatistics currentScope() {
+    return SCOPE.get();
+  }
+
+  static void onStatement() {
+    QueryStatistics transaction = TRANSACTION.get();
+    if (transaction != null) {
+      ++transaction.statementCount;
+    }
+    QueryStatistics scope = SCOPE.get();
+    if (scope != null) {
+      ++scope.statementCount;
+    }
+  }
+
+  static QueryStatistics beginTransaction() {
+    QueryStatistics outer = TRANSACTION.get();
+    TRANSACTION.set(new QueryStatistics());
+    return outer;
+  }
+
+  static QueryStatistics endTransaction(QueryStatistics outer, long entityCount,
+      long elapsedNanos) {
+
+    QueryStatistics transaction = TRANSACTION.get();
+    transaction.transactionCount = 1;
+    transaction.entityCount = entityCount;
+    transaction.elapsedNanos = elapsedNanos;
+    if (outer != null) {
+      TRANSACTION.set(outer);
+    } else {
+      TRANSACTION.remove();
+    }
+    QueryStatistics scope = SCOPE.get();
+    if (scope != null) {
+      ++scope.transactionCount;
+      scope.entityCount += entityCount;
+      scope.elapsedNanos += elapsedNanos;
+    }
+    return transaction;
+  }
+
+  public int getTransactionCount() {
+    return transactionCount;
+  }
+
+  public long getStatementCount() {
+    return statementCount;
+  }
+
+  public long getEntityCount() {
+    return entityCount;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "QueryStatistics{transactions=" + transactionCount + ", statements=" + statementCount
+        + ", entities=" + entityCount + ", elapsedMillis=" + getElapsedMillis() + '}';
+  }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa;
+
+/**
+ * Marks the current thread as one that can tolerate replication lag. Only then
+ * {@link JpaTransactionManager#executeReadOnly} goes to the read replica - a read that is followed
+ * by a write, or that must see a write that was just made, should stay on the primary.
+ */
+public class ReplicaReadScope {
+
+  private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+  private ReplicaReadScope() {
+  }
+
+  public static void begin() {
+    ACTIVE.set(Boolean.TRUE);
+  }
+
+  public static void end() {
+    ACTIVE.remove();
+  }
+
+  static boolean isActive() {
+    return ACTIVE.get() != null;
+  }
+
+}
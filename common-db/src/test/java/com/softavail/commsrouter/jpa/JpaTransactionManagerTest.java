@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import org.hibernate.Session;
+import org.hibernate.stat.SessionStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+import javax.persistence.RollbackException;
+
+public class JpaTransactionManagerTest {
+
+  private EntityManagerFactory emf;
+  private List<EntityManager> entityManagers;
+
+  @Before
+  public void setUp() {
+    emf = mock(EntityManagerFactory.class);
+    entityManagers = new ArrayList<>();
+    when(emf.createEntityManager()).then(invocation -> {
+      EntityManager em = mock(EntityManager.class);
+      Session session = mock(Session.class);
+      when(session.getStatistics()).thenReturn(mock(SessionStatistics.class));
+      when(em.unwrap(Session.class)).thenReturn(session);
+      when(em.getTransaction()).thenReturn(mock(EntityTransaction.class));
+      entityManagers.add(em);
+      return em;
+    });
+  }
+
+  @Test
+  public void retriesOptimisticLockInNewEntityManager() throws CommsRouterException {
+    JpaTransactionManager transactionManager =
+        new JpaTransactionManager(emf, null, new LockRetryPolicy(3, 1, 2), false);
+
+    List<EntityManager> used = new ArrayList<>();
+    String result = transactionManager.executeWithLockRetry(em -> {
+      used.add(em);
+      if (used.size() < 3) {
+        throw new RollbackException(new OptimisticLockException());
+      }
+      return "done";
+    });
+
+    assertEquals("done", result);
+    assertEquals(3, entityManagers.size());
+    assertNotSame(used.get(0), used.get(1));
+    for (EntityManager em : entityManagers) {
+      verify(em).close();
+    }
+  }
+
+  @Test
+  public void givesUpAfterRetryCount() {
+    JpaTransactionManager transactionManager =
+        new JpaTransactionManager(emf, null, new LockRetryPolicy(2, 1, 2), false);
+
+    try {
+      transactionManager.executeWithLockRetry(em -> {
+        throw new LockTimeoutException();
+      });
+      fail("expected lock timeout");
+    } catch (LockTimeoutException ex) {
+      assertEquals(3, entityManagers.size());
+    } catch (CommsRouterException ex) {
+      fail(ex.getMessage());
+    }
+  }
+
+  @Test
+  public void doesNotRetryWithoutLockRetry() {
+    JpaTransactionManager transactionManager =
+        new JpaTransactionManager(emf, null, new LockRetryPolicy(2, 1, 2), false);
+
+    try {
+      transactionManager.execute(em -> {
+        throw new PersistenceException(new OptimisticLockException());
+      });
+      fail("expected persistence exception");
+    } catch (PersistenceException ex) {
+      assertEquals(1, entityManagers.size());
+      verify(entityManagers.get(0), times(1)).close();
+    } catch (CommsRouterException ex) {
+      fail(ex.getMessage());
+    }
+  }
+
+  @Test
+  public void delayGrowsUpToMax() {
+    LockRetryPolicy policy = new LockRetryPolicy(100, 10, 500);
+    for (int attempt = 0; attempt < 100; ++attempt) {
+      long expected = Math.min(500, 10L << Math.min(attempt, 20));
+      long delay = policy.getDelayMillis(attempt);
+      assertTrue(attempt + ": " + delay, delay >= expected / 2 && delay <= expected);
+    }
+    assertEquals(0, new LockRetryPolicy(10).getDelayMillis(3));
+  }
+
+}
@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.domain.ApiObject;
 import org.apache.logging.log4j.LogManager;
@@ -36,6 +37,7 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -144,6 +146,36 @@ public class PaginationHelper {
     return Base64.getUrlEncoder().encodeToString(bytes).replaceAll("=", "");
   }
 
+  /**
+   * Parses a token made by {@link #getToken} back into the values of the last entity of the
+   * previous page, for queries that compare the whole sort key at once. The id of the entity is
+   * under "id".
+   */
+  public static Map<String, String> getTokenValues(Class classz, String token)
+      throws BadValueException {
+
+    String decodedToken;
+    try {
+      decodedToken = new String(Base64.getUrlDecoder().decode(token));
+    } catch (IllegalArgumentException e) {
+      throw new BadValueException("Invalid token: " + token, e);
+    }
+
+    Map<String, String> values = new HashMap<>();
+    Matcher matcher = TOKEN_PATTERN.matcher(decodedToken);
+    while (matcher.find()) {
+      String key = matcher.group(TOKEN_KEY);
+      if (key.equals(classz.getSimpleName())) {
+        key = ENTITY_ID_ATTR;
+      }
+      values.put(key, matcher.group(TOKEN_VALUE));
+    }
+    if (!values.containsKey(ENTITY_ID_ATTR)) {
+      throw new BadValueException("Invalid token: " + token);
+    }
+    return values;
+  }
+
   public static <T> List<Order> getSortOrder(CriteriaBuilder cb, Root<T> root, String sort)
       throws CommsRouterException {
 
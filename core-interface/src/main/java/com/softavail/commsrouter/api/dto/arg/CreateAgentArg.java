@@ -28,6 +28,7 @@ public class CreateAgentArg {
   private AttributeGroupDto capabilities;
   private String name;
   private String description;
+  private Integer capacity;
 
   public String getAddress() {
     return address;
@@ -61,6 +62,14 @@ public class CreateAgentArg {
     this.description = description;
   }
 
+  public Integer getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(Integer capacity) {
+    this.capacity = capacity;
+  }
+
   public static class Builder{
     private CreateAgentArg agentArg = new CreateAgentArg();
 
@@ -89,6 +98,11 @@ public class CreateAgentArg {
       return this;
     }
     
+    public Builder capacity(Integer capacity) {
+      agentArg.setCapacity(capacity);
+      return this;
+    }
+
     public CreateAgentArg build() {
       return agentArg;
     }
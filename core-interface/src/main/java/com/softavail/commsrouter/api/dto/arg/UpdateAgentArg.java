@@ -29,6 +29,7 @@ public class UpdateAgentArg {
   private AgentState state;
   private String name;
   private String description;
+  private Integer capacity;
 
   public String getAddress() {
     return address;
@@ -70,6 +71,14 @@ public class UpdateAgentArg {
     this.description = description;
   }
 
+  public Integer getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(Integer capacity) {
+    this.capacity = capacity;
+  }
+
   public static class Builder {
     private UpdateAgentArg arg = new UpdateAgentArg();
 
@@ -96,6 +105,11 @@ public class UpdateAgentArg {
       return this;
     }
       
+    public Builder capacity(Integer capacity) {
+      this.arg.setCapacity(capacity);
+      return this;
+    }
+
     public UpdateAgentArg build() {
       return this.arg;
     }
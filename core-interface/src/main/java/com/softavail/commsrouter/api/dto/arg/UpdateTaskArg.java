@@ -25,6 +25,7 @@ import com.softavail.commsrouter.api.dto.model.TaskState;
 public class UpdateTaskArg {
 
   private TaskState state;
+  private Boolean fetchNext;
 
   public TaskState getState() {
     return state;
@@ -34,6 +35,18 @@ public class UpdateTaskArg {
     this.state = state;
   }
 
+  /**
+   * When completing a task over the API, also assign the next task of the agent and return it in
+   * the response instead of sending it to the callback.
+   */
+  public Boolean getFetchNext() {
+    return fetchNext;
+  }
+
+  public void setFetchNext(Boolean fetchNext) {
+    this.fetchNext = fetchNext;
+  }
+
   public static class Builder {
     private UpdateTaskArg arg = new UpdateTaskArg();
 
@@ -46,6 +59,11 @@ public class UpdateTaskArg {
       return this;
     }
 
+    public Builder fetchNext(Boolean fetchNext) {
+      arg.setFetchNext(fetchNext);
+      return this;
+    }
+
     public UpdateTaskArg build() {
       return arg;
     }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.api.dto.misc;
+
+/**
+ * The agent mappings of a queue. A predicate change on a large router is mapped in the
+ * background, meanwhile the agents are matched with the previous predicate. The progress is known
+ * only by the node that runs the mapping, elsewhere the counters are null.
+ */
+public class QueueMappingDto {
+
+  private long mappingVersion;
+  private Long pendingMappingVersion;
+  private String pendingPredicate;
+  private Long totalAgents;
+  private Long evaluatedAgents;
+  private Long matchedAgents;
+
+  public long getMappingVersion() {
+    return mappingVersion;
+  }
+
+  public void setMappingVersion(long mappingVersion) {
+    this.mappingVersion = mappingVersion;
+  }
+
+  public Long getPendingMappingVersion() {
+    return pendingMappingVersion;
+  }
+
+  public void setPendingMappingVersion(Long pendingMappingVersion) {
+    this.pendingMappingVersion = pendingMappingVersion;
+  }
+
+  public String getPendingPredicate() {
+    return pendingPredicate;
+  }
+
+  public void setPendingPredicate(String pendingPredicate) {
+    this.pendingPredicate = pendingPredicate;
+  }
+
+  public Long getTotalAgents() {
+    return totalAgents;
+  }
+
+  public void setTotalAgents(Long totalAgents) {
+    this.totalAgents = totalAgents;
+  }
+
+  public Long getEvaluatedAgents() {
+    return evaluatedAgents;
+  }
+
+  public void setEvaluatedAgents(Long evaluatedAgents) {
+    this.evaluatedAgents = evaluatedAgents;
+  }
+
+  public Long getMatchedAgents() {
+    return matchedAgents;
+  }
+
+  public void setMatchedAgents(Long matchedAgents) {
+    this.matchedAgents = matchedAgents;
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.api.dto.misc;
+
+/**
+ * Aggregates over the sliding statistics window of a queue, or of all queues of a router. The
+ * averages and percentiles are null while there is nothing to compute them from.
+ */
+public class QueueStatisticsDto {
+
+  private long windowSeconds;
+  private long arrivals;
+  private long assigned;
+  private long abandoned;
+  private long completed;
+  private Double abandonRate;
+  private Long averageWaitMillis;
+  private Long averageHandleMillis;
+  private Long waitP50Millis;
+  private Long waitP95Millis;
+
+  public long getWindowSeconds() {
+    return windowSeconds;
+  }
+
+  public void setWindowSeconds(long windowSeconds) {
+    this.windowSeconds = windowSeconds;
+  }
+
+  public long getArrivals() {
+    return arrivals;
+  }
+
+  public void setArrivals(long arrivals) {
+    this.arrivals = arrivals;
+  }
+
+  public long getAssigned() {
+    return assigned;
+  }
+
+  public void setAssigned(long assigned) {
+    this.assigned = assigned;
+  }
+
+  public long getAbandoned() {
+    return abandoned;
+  }
+
+  public void setAbandoned(long abandoned) {
+    this.abandoned = abandoned;
+  }
+
+  public long getCompleted() {
+    return completed;
+  }
+
+  public void setCompleted(long completed) {
+    this.completed = completed;
+  }
+
+  public Double getAbandonRate() {
+    return abandonRate;
+  }
+
+  public void setAbandonRate(Double abandonRate) {
+    this.abandonRate = abandonRate;
+  }
+
+  public Long getAverageWaitMillis() {
+    return averageWaitMillis;
+  }
+
+  public void setAverageWaitMillis(Long averageWaitMillis) {
+    this.averageWaitMillis = averageWaitMillis;
+  }
+
+  public Long getAverageHandleMillis() {
+    return averageHandleMillis;
+  }
+
+  public void setAverageHandleMillis(Long averageHandleMillis) {
+    this.averageHandleMillis = averageHandleMillis;
+  }
+
+  public Long getWaitP50Millis() {
+    return waitP50Millis;
+  }
+
+  public void setWaitP50Millis(Long waitP50Millis) {
+    this.waitP50Millis = waitP50Millis;
+  }
+
+  public Long getWaitP95Millis() {
+    return waitP95Millis;
+  }
+
+  public void setWaitP95Millis(Long waitP95Millis) {
+    this.waitP95Millis = waitP95Millis;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.api.dto.misc;
+
+import java.util.Date;
+
+/**
+ * A state change of a task or an agent of a router, as delivered to the event stream subscribers.
+ */
+public class RouterEventDto {
+
+  public static final String TASK = "task";
+  public static final String AGENT = "agent";
+
+  private long id;
+  private String type;
+  private String routerRef;
+  private String ref;
+  private String state;
+  private String queueRef;
+  private String agentRef;
+  private Date date;
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public String getRouterRef() {
+    return routerRef;
+  }
+
+  public void setRouterRef(String routerRef) {
+    this.routerRef = routerRef;
+  }
+
+  public String getRef() {
+    return ref;
+  }
+
+  public void setRef(String ref) {
+    this.ref = ref;
+  }
+
+  public String getState() {
+    return state;
+  }
+
+  public void setState(String state) {
+    this.state = state;
+  }
+
+  public String getQueueRef() {
+    return queueRef;
+  }
+
+  public void setQueueRef(String queueRef) {
+    this.queueRef = queueRef;
+  }
+
+  public String getAgentRef() {
+    return agentRef;
+  }
+
+  public void setAgentRef(String agentRef) {
+    this.agentRef = agentRef;
+  }
+
+  public Date getDate() {
+    return date;
+  }
+
+  public void setDate(Date date) {
+    this.date = date;
+  }
+
+  @Override
+  public String toString() {
+    return "RouterEventDto{id=" + id + ", type=" + type + ", routerRef=" + routerRef + ", ref="
+        + ref + ", state=" + state + '}';
+  }
+
+}
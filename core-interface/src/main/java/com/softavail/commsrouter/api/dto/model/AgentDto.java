@@ -35,6 +35,8 @@ public class AgentDto extends RouterObjectRef {
   private String name;
   private String description;
   private AgentState state;
+  private Integer capacity;
+  private Integer occupiedSlots;
   private List<String> queueRefs;
   @JsonIgnore
   private Date lastTimeAtBusyState;
@@ -81,6 +83,23 @@ public class AgentDto extends RouterObjectRef {
     this.state = state;
   }
 
+  public Integer getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(Integer capacity) {
+    this.capacity = capacity;
+  }
+
+  @JsonProperty(access = Access.READ_ONLY)
+  public Integer getOccupiedSlots() {
+    return occupiedSlots;
+  }
+
+  public void setOccupiedSlots(Integer occupiedSlots) {
+    this.occupiedSlots = occupiedSlots;
+  }
+
   public List<String> getQueueRefs() {
     return queueRefs;
   }
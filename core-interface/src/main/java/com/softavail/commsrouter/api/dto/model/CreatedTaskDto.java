@@ -22,16 +22,26 @@ package com.softavail.commsrouter.api.dto.model;
 public class CreatedTaskDto extends ApiObjectRef {
 
   private Long queueTasks;
+  private Long estimatedWait; // in seconds, null when the queue has no recent assignments
 
   public CreatedTaskDto() {}
 
   public CreatedTaskDto(String taskRef, Long queueTasks) {
+    this(taskRef, queueTasks, null);
+  }
+
+  public CreatedTaskDto(String taskRef, Long queueTasks, Long estimatedWait) {
     super(taskRef);
     this.queueTasks = queueTasks;
+    this.estimatedWait = estimatedWait;
   }
 
   public Long getQueueTasks() {
     return queueTasks;
   }
 
+  public Long getEstimatedWait() {
+    return estimatedWait;
+  }
+
 }
@@ -18,6 +18,7 @@ package com.softavail.commsrouter.api.dto.model.attribute;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  *
@@ -39,4 +40,21 @@ public abstract class ArrayAttributeValueDto<ELEMENT> extends AttributeValueDto
   public void add(ELEMENT element) {
     value.add(element);
   }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (object == null || getClass() != object.getClass()) {
+      return false;
+    }
+    return Objects.equals(value, ((ArrayAttributeValueDto<?>) object).value);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(value);
+  }
+
 }
@@ -18,6 +18,8 @@ package com.softavail.commsrouter.api.dto.model.attribute;
 
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 
+import java.util.Objects;
+
 /**
  *
  * @author Ergyun Syuleyman
@@ -50,4 +52,20 @@ public class BooleanAttributeValueDto extends AttributeValueDto {
     visitor.handleBooleanValue(this);
   }
 
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (object == null || getClass() != object.getClass()) {
+      return false;
+    }
+    return Objects.equals(value, ((BooleanAttributeValueDto) object).value);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(value);
+  }
+
 }
@@ -49,4 +49,20 @@ public class DoubleAttributeValueDto extends AttributeValueDto {
     visitor.handleDoubleValue(this);
   }
 
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (object == null || getClass() != object.getClass()) {
+      return false;
+    }
+    return Double.compare(value, ((DoubleAttributeValueDto) object).value) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Double.hashCode(value);
+  }
+
 }
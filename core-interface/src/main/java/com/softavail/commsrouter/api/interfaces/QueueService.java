@@ -18,6 +18,9 @@ package com.softavail.commsrouter.api.interfaces;
 
 import com.softavail.commsrouter.api.dto.arg.CreateQueueArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateQueueArg;
+import com.softavail.commsrouter.api.dto.misc.PaginatedList;
+import com.softavail.commsrouter.api.dto.misc.QueueMappingDto;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.QueueDto;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
@@ -43,6 +46,15 @@ public interface QueueService extends RouterObjectService<QueueDto> {
   long getQueueSize(RouterObjectRef objectRef)
       throws CommsRouterException;
 
+  QueueStatisticsDto getStatistics(RouterObjectRef objectRef)
+      throws CommsRouterException;
+
+  QueueMappingDto getMapping(RouterObjectRef objectRef)
+      throws CommsRouterException;
+
   Collection<TaskDto> getTasks(RouterObjectRef objectRef)      throws CommsRouterException;
 
+  PaginatedList<TaskDto> getTasks(RouterObjectRef objectRef, String token, int perPage)
+      throws CommsRouterException;
+
 }
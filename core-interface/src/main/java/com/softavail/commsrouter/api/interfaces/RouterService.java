@@ -18,6 +18,7 @@ package com.softavail.commsrouter.api.interfaces;
 
 import com.softavail.commsrouter.api.dto.arg.CreateRouterArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateRouterArg;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
@@ -40,6 +41,9 @@ public interface RouterService
   RouterDto get(String ref)
       throws CommsRouterException;
 
+  QueueStatisticsDto getStatistics(String ref)
+      throws CommsRouterException;
+
   void delete(String ref)
       throws CommsRouterException;
 
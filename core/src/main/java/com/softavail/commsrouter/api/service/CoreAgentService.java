@@ -16,13 +16,16 @@
 
 package com.softavail.commsrouter.api.service;
 
+import com.softavail.commsrouter.api.dto.arg.BatchAgentArg;
 import com.softavail.commsrouter.api.dto.arg.CreateAgentArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateAgentArg;
 import com.softavail.commsrouter.api.dto.model.AgentDto;
 import com.softavail.commsrouter.api.dto.model.AgentState;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
+import com.softavail.commsrouter.api.dto.model.attribute.AttributeValueDto;
 import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.InternalErrorException;
@@ -30,17 +33,26 @@ import com.softavail.commsrouter.api.exception.InvalidStateException;
 import com.softavail.commsrouter.api.interfaces.AgentService;
 import com.softavail.commsrouter.app.AgentDispatchInfo;
 import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.app.AssignmentWaiters;
 import com.softavail.commsrouter.domain.Agent;
 import com.softavail.commsrouter.domain.AgentQueueMapping;
-import com.softavail.commsrouter.domain.AttributeGroup;
 import com.softavail.commsrouter.domain.Queue;
 import com.softavail.commsrouter.domain.Router;
+import com.softavail.commsrouter.domain.Task;
 import com.softavail.commsrouter.eval.CommsRouterEvaluator;
 import com.softavail.commsrouter.util.Fields;
 import com.softavail.commsrouter.util.Uuid;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import javax.persistence.EntityManager;
 
@@ -79,6 +91,9 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
           throw new InvalidStateException(
               "Replacing agent in state " + agent.getState() + " not allowed");
         }
+        if (agent.getOccupiedSlots() > 0) {
+          throw new InvalidStateException("Replacing agent with assigned tasks not allowed");
+        }
         em.remove(agent);
         em.flush();
       }
@@ -89,6 +104,7 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
   private ApiObjectRef doCreate(EntityManager em, CreateAgentArg createArg,
       RouterObjectRef objectRef) throws CommsRouterException {
 
+    validateCapacity(createArg.getCapacity());
     app.db.router.lockConfigByRef(em, objectRef.getRouterRef());
 
     // validate capabilities
@@ -102,38 +118,58 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
     agent.setName(createArg.getName());
     agent.setDescription(createArg.getDescription());
     agent.setCapabilities(app.entityMapper.attributes.fromDto(createArg.getCapabilities()));
+    if (createArg.getCapacity() != null) {
+      agent.setCapacity(createArg.getCapacity());
+    }
     agent.setState(AgentState.offline);
     em.persist(agent);
-    attachQueues(em, agent, true);
+    app.taskDispatcher.getEventBus().agentChanged(em, agent);
+    mapQueues(em, agent, null);
     return agent.cloneApiObjectRef();
   }
 
-  void attachQueues(EntityManager em, Agent agent, boolean isNewAgent) throws CommsRouterException {
+  /**
+   * Maps the agent to the queues its capabilities match. For an existing agent only the queues
+   * whose predicates read one of the changed attributes are evaluated again, and only the
+   * mappings that differ are inserted or removed. While a queue is mapped in the background the
+   * agent is mapped with both the current and the pending predicate of the queue.
+   *
+   * @param changedAttributes the capabilities that changed, null for a new agent
+   */
+  void mapQueues(EntityManager em, Agent agent, Set<String> changedAttributes)
+      throws CommsRouterException {
+
+    mapQueues(em, agent, changedAttributes, app.db.queue.list(em, agent.getRouter().getRef()),
+        new HashMap<>());
+  }
+
+  private void mapQueues(EntityManager em, Agent agent, Set<String> changedAttributes,
+      List<Queue> queues, Map<String, CommsRouterEvaluator> evaluators)
+      throws CommsRouterException {
 
-    LOGGER.info("Agent {}: attaching queues...", agent.getRef());
+    LOGGER.info("Agent {}: mapping queues...", agent.getRef());
 
-    final AttributeGroup capabilities = agent.getCapabilities();
+    Map<AgentQueueMapping, AgentQueueMapping> currentMappings = new HashMap<>();
+    agent.getAgentQueueMappings().forEach(mapping -> currentMappings.put(mapping, mapping));
 
     int attachedQueuesCount = 0;
-    CommsRouterEvaluator evaluator = app.evaluatorFactory.provide(null, null);
-    for (Queue queue : app.db.queue.list(em, agent.getRouter().getRef())) {
+    int detachedQueuesCount = 0;
+    String routerRef = agent.getRouter().getRef();
+    for (Queue queue : queues) {
       try {
-        CommsRouterEvaluator changeExpression =
-            evaluator.changeExpression(queue.getPredicate(), queue.getRouter().getRef());
-        if (changeExpression.evaluate(capabilities)) {
-
-          LOGGER.info("Queue {} <=> Agent {}", queue.getRef(), agent.getRef());
+        CommsRouterEvaluator evaluator =
+            getEvaluator(evaluators, queue.getPredicate(), routerRef);
+        int change = mapQueue(em, agent, queue, queue.getMappingVersion(), evaluator,
+            changedAttributes, currentMappings);
+        if (queue.getPendingMappingVersion() != null) {
+          evaluator = getEvaluator(evaluators, queue.getPendingPredicate(), routerRef);
+          mapQueue(em, agent, queue, queue.getPendingMappingVersion(), evaluator,
+              changedAttributes, currentMappings);
+        }
+        if (change > 0) {
           ++attachedQueuesCount;
-
-          AgentQueueMapping mapping = new AgentQueueMapping(agent, queue);
-          em.persist(mapping);
-
-          if (isNewAgent || !queue.getAgentQueueMappings().contains(mapping)) {
-            queue.getAgentQueueMappings().add(mapping);
-          }
-          agent.getAgentQueueMappings().add(mapping);
-        } else if (!isNewAgent) {
-          queue.getAgentQueueMappings().remove(new AgentQueueMapping(agent, queue));
+        } else if (change < 0) {
+          ++detachedQueuesCount;
         }
       } catch (CommsRouterException ex) {
         LOGGER.error("Agent {}: failure attaching queue {}: {}", agent.getRef(), queue.getRef(), ex,
@@ -141,7 +177,54 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
         throw ex;
       }
     }
-    LOGGER.info("Agent {}: queues attached: {}", agent.getRef(), attachedQueuesCount);
+    LOGGER.info("Agent {}: queues attached: {}, detached: {}", agent.getRef(),
+        attachedQueuesCount, detachedQueuesCount);
+  }
+
+  // The agents of a batch share the evaluators
+  private CommsRouterEvaluator getEvaluator(Map<String, CommsRouterEvaluator> evaluators,
+      String predicate, String routerRef) throws CommsRouterException {
+
+    CommsRouterEvaluator evaluator = evaluators.get(predicate);
+    if (evaluator == null) {
+      evaluator = app.evaluatorFactory.provide(predicate, routerRef);
+      evaluators.put(predicate, evaluator);
+    }
+    return evaluator;
+  }
+
+  /**
+   * @return 1 if the mapping was inserted, -1 if it was removed, 0 if it was kept
+   */
+  private int mapQueue(EntityManager em, Agent agent, Queue queue, long version,
+      CommsRouterEvaluator evaluator, Set<String> changedAttributes,
+      Map<AgentQueueMapping, AgentQueueMapping> currentMappings) throws CommsRouterException {
+
+    if (changedAttributes != null && !dependsOn(evaluator, changedAttributes)) {
+      return 0;
+    }
+    boolean matches = evaluator.evaluate(agent.getCapabilities());
+    AgentQueueMapping mapping = currentMappings.get(new AgentQueueMapping(agent, queue, version));
+    if (matches && mapping == null) {
+      LOGGER.info("Queue {} <=> Agent {}", queue.getRef(), agent.getRef());
+      mapping = new AgentQueueMapping(agent, queue, version);
+      em.persist(mapping);
+      queue.getAgentQueueMappings().add(mapping);
+      agent.getAgentQueueMappings().add(mapping);
+      return 1;
+    }
+    if (!matches && mapping != null) {
+      LOGGER.info("Queue {} <!> Agent {}", queue.getRef(), agent.getRef());
+      queue.getAgentQueueMappings().remove(mapping);
+      agent.getAgentQueueMappings().remove(mapping);
+      return -1;
+    }
+    return 0;
+  }
+
+  private static boolean dependsOn(CommsRouterEvaluator evaluator, Set<String> attributes) {
+    Set<String> names = evaluator.getAttributeNames();
+    return names == null || !Collections.disjoint(names, attributes);
   }
 
   @Override
@@ -155,27 +238,185 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
 
   }
 
-  private Boolean capabilitiesAreEqual(AttributeGroupDto newAttributes,
-      AttributeGroupDto oldAttributes) {
-    if (newAttributes == null && oldAttributes != null) {
-      return false;
+  /**
+   * Creates or updates the agents in a single transaction. The router config is locked and the
+   * queues are loaded once for the whole batch, and instead of a dispatch per agent that became
+   * ready each queue of these agents is dispatched once after the commit.
+   *
+   * @return the refs of the agents, in the order of the arguments
+   */
+  public List<ApiObjectRef> batch(List<BatchAgentArg> args, String routerRef)
+      throws CommsRouterException {
+
+    Set<String> refs = new HashSet<>();
+    for (BatchAgentArg arg : args) {
+      if (arg.getRef() == null || arg.getRef().isEmpty()) {
+        throw new BadValueException("Missing agent ref");
+      }
+      if (!refs.add(arg.getRef())) {
+        throw new BadValueException("Duplicate agent ref: " + arg.getRef());
+      }
+      if (arg.getState() == AgentState.busy || arg.getState() == AgentState.unavailable) {
+        throw new BadValueException(
+            "Setting agent state to '" + arg.getState() + "' not allowed");
+      }
+      validateCapacity(arg.getCapacity());
+      if (arg.getCapabilities() != null) {
+        app.validators.agentCapabilitiesValidator.validate(arg.getCapabilities(), routerRef);
+      }
     }
-    if (newAttributes != null && oldAttributes == null) {
-      return false;
+    if (args.isEmpty()) {
+      return Collections.emptyList();
     }
-    if (newAttributes == null && oldAttributes == null) {
-      return true;
+
+    BatchResult result = app.db.transactionManager.execute((em) -> {
+      app.db.router.lockConfigByRef(em, routerRef);
+      Router router = app.db.router.getByRef(em, routerRef);
+      List<Queue> queues = app.db.queue.list(em, routerRef);
+      Map<String, CommsRouterEvaluator> evaluators = new HashMap<>();
+      Map<String, Agent> existing = new HashMap<>();
+      app.db.agent.listByRefs(em, router.getId(), refs)
+          .forEach(agent -> existing.put(agent.getRef(), agent));
+
+      BatchResult batch = new BatchResult();
+      batch.routerId = router.getId();
+      List<Agent> agents = new ArrayList<>(args.size());
+      for (BatchAgentArg arg : args) {
+        Agent agent = existing.get(arg.getRef());
+        AgentState oldState = null;
+        if (agent == null) {
+          agent = new Agent(new RouterObjectRef(arg.getRef(), routerRef));
+          agent.setRouter(router);
+          agent.setAddress(arg.getAddress());
+          agent.setName(arg.getName());
+          agent.setDescription(arg.getDescription());
+          agent.setCapabilities(app.entityMapper.attributes.fromDto(arg.getCapabilities()));
+          if (arg.getCapacity() != null) {
+            agent.setCapacity(arg.getCapacity());
+          }
+          agent.setState(AgentState.offline);
+          em.persist(agent);
+          mapQueues(em, agent, null, queues, evaluators);
+        } else {
+          oldState = agent.getState();
+          if (arg.getCapabilities() != null) {
+            Set<String> changedAttributes = changedAttributes(arg.getCapabilities(),
+                app.entityMapper.attributes.toDto(agent.getCapabilities()));
+            if (!changedAttributes.isEmpty()) {
+              agent.setCapabilities(app.entityMapper.attributes.fromDto(arg.getCapabilities()));
+              mapQueues(em, agent, changedAttributes, queues, evaluators);
+            }
+          }
+          Fields.update(agent::setAddress, agent.getAddress(), arg.getAddress());
+          Fields.update(agent::setName, agent.getName(), arg.getName());
+          Fields.update(agent::setDescription, agent.getDescription(), arg.getDescription());
+        }
+        boolean agentBecameAvailable = updateCapacity(agent, arg.getCapacity());
+        agentBecameAvailable |= updateState(agent, arg.getState());
+        if (agent.getState() != oldState) {
+          app.taskDispatcher.getEventBus().agentChanged(em, agent);
+        }
+        if (agentBecameAvailable) {
+          agent.getAgentQueueMappings().stream()
+              .filter(mapping -> mapping.getVersion() == mapping.getQueue().getMappingVersion())
+              .forEach(mapping -> batch.queueIds.add(mapping.getQueue().getId()));
+        }
+        agents.add(agent);
+      }
+      // The refs carry the versions after the update
+      em.flush();
+      agents.forEach(agent -> batch.refs.add(agent.cloneApiObjectRef()));
+      return batch;
+    });
+
+    LOGGER.info("Router {}: {} agents upserted, dispatching {} queues", routerRef,
+        result.refs.size(), result.queueIds.size());
+    result.queueIds.forEach(
+        queueId -> app.taskDispatcher.dispatchQueue(result.routerId, queueId));
+    return result.refs;
+  }
+
+  /**
+   * Parks the waiter for the next task assigned to the agent and makes the agent ready if it is
+   * offline or unavailable. A busy agent gets its most recent assignment instead, so a poll whose
+   * response was lost can simply be repeated. An agent with more than one slot is parked as long
+   * as it has a free one, the tasks it already handles are not returned again and an assignment
+   * whose response was lost is recovered only once the agent is full.
+   *
+   * @return the most recent assignment of a busy agent, or null if the waiter was parked
+   */
+  public TaskAssignmentDto awaitAssignment(RouterObjectRef objectRef,
+      AssignmentWaiters.Waiter waiter) throws CommsRouterException {
+
+    AssignmentWaiters waiters = app.taskDispatcher.getAssignmentWaiters();
+    // Park before reading the agent, an assignment committed meanwhile must find the waiter
+    waiters.register(objectRef, waiter);
+
+    NextAssignment next;
+    try {
+      next = app.db.transactionManager.execute((em) -> {
+        Agent agent = app.db.agent.get(em, objectRef);
+        NextAssignment result = new NextAssignment();
+        if (agent.getState() == AgentState.busy) {
+          Task task = app.db.task.findAssignedToAgent(em, agent.getId());
+          if (task != null) {
+            result.current = new TaskAssignmentDto(
+                app.entityMapper.task.toDto(task), app.entityMapper.agent.toDto(agent));
+          }
+          return result;
+        }
+        if (updateState(agent, AgentState.ready)) {
+          app.taskDispatcher.getEventBus().agentChanged(em, agent);
+          result.dispatchInfo = new AgentDispatchInfo();
+          result.dispatchInfo.setAgentId(agent.getId());
+          result.dispatchInfo.setRouterId(agent.getRouter().getId());
+        }
+        return result;
+      });
+    } catch (CommsRouterException | RuntimeException e) {
+      waiters.remove(objectRef, waiter);
+      throw e;
     }
-    if (newAttributes.size() != oldAttributes.size()) {
-      return false;
+
+    if (next.current != null) {
+      // If the waiter is already taken, an assignment is being handed to it
+      return waiters.remove(objectRef, waiter) ? next.current : null;
     }
-    Set<String> keys = newAttributes.keySet();
-    for (String key : keys) {
-      if (!oldAttributes.containsKey(key)) {
-        return false;
-      }
+    if (next.dispatchInfo != null) {
+      app.taskDispatcher.dispatchAgent(next.dispatchInfo);
     }
-    return false; // !keys.isEmpty();
+    return null;
+  }
+
+  /**
+   * Keeps a ready agent from going offline for the heartbeat TTL. Only the first heartbeat of an
+   * agent reads the database, to check that it exists.
+   */
+  public void heartbeat(RouterObjectRef objectRef) throws CommsRouterException {
+    app.agentPresence.heartbeat(objectRef);
+  }
+
+  public void cancelAwaitAssignment(RouterObjectRef objectRef, AssignmentWaiters.Waiter waiter) {
+    app.taskDispatcher.getAssignmentWaiters().remove(objectRef, waiter);
+  }
+
+  static Set<String> changedAttributes(AttributeGroupDto newAttributes,
+      AttributeGroupDto oldAttributes) {
+
+    Map<String, AttributeValueDto> newValues =
+        newAttributes != null ? newAttributes : Collections.emptyMap();
+    Map<String, AttributeValueDto> oldValues =
+        oldAttributes != null ? oldAttributes : Collections.emptyMap();
+    Set<String> changed = new HashSet<>();
+    newValues.forEach((name, value) -> {
+      if (!Objects.equals(value, oldValues.get(name))) {
+        changed.add(name);
+      }
+    });
+    oldValues.keySet().stream()
+        .filter(name -> !newValues.containsKey(name))
+        .forEach(changed::add);
+    return changed;
   }
 
   private AgentDispatchInfo updateAgent(UpdateAgentArg updateArg, RouterObjectRef objectRef)
@@ -185,6 +426,7 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
       throw new BadValueException(
           "Setting agent state to '" + updateArg.getState() + "' not allowed");
     }
+    validateCapacity(updateArg.getCapacity());
 
     return app.db.transactionManager.execute((em) -> {
 
@@ -208,7 +450,12 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
       Fields.update(agent::setAddress, agent.getAddress(), updateArg.getAddress());
       Fields.update(agent::setName, agent.getName(), updateArg.getName());
       Fields.update(agent::setDescription, agent.getDescription(), updateArg.getDescription());
-      boolean agentBecameAvailable = updateState(agent, updateArg.getState());
+      AgentState oldState = agent.getState();
+      boolean agentBecameAvailable = updateCapacity(agent, updateArg.getCapacity());
+      agentBecameAvailable |= updateState(agent, updateArg.getState());
+      if (agent.getState() != oldState) {
+        app.taskDispatcher.getEventBus().agentChanged(em, agent);
+      }
       if (!agentBecameAvailable) {
         return null;
       }
@@ -246,22 +493,55 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
         throw new InternalErrorException("Unexpected agent state: " + oldState);
     }
     agent.setState(newState);
+    if (agentBecameAvailable && !agent.hasFreeSlot()) {
+      // Went away while handling tasks and its capacity was lowered meanwhile
+      agent.setState(AgentState.busy);
+      return false;
+    }
     return agentBecameAvailable;
   }
 
+  private static void validateCapacity(Integer capacity) throws BadValueException {
+    if (capacity != null && capacity < 1) {
+      throw new BadValueException("Agent capacity must be at least 1: " + capacity);
+    }
+  }
+
+  /**
+   * A busy agent becomes ready when its capacity is raised above the occupied slots, and a ready
+   * agent becomes busy when it is lowered to them. The tasks already assigned are kept.
+   *
+   * @return true if the agent became available for new tasks
+   */
+  private static boolean updateCapacity(Agent agent, Integer capacity) {
+    if (capacity == null || capacity == agent.getCapacity()) {
+      return false;
+    }
+    agent.setCapacity(capacity);
+    if (agent.getState() == AgentState.busy && agent.hasFreeSlot()) {
+      agent.setState(AgentState.ready);
+      return true;
+    }
+    if (agent.getState() == AgentState.ready && !agent.hasFreeSlot()) {
+      agent.setState(AgentState.busy);
+    }
+    return false;
+  }
+
   private void updateCapabilities(EntityManager em, Agent agent, AttributeGroupDto newCapabilities)
       throws CommsRouterException {
 
-    if (capabilitiesAreEqual(newCapabilities,
-        app.entityMapper.attributes.toDto(agent.getCapabilities()))) {
+    Set<String> changedAttributes = changedAttributes(newCapabilities,
+        app.entityMapper.attributes.toDto(agent.getCapabilities()));
+    if (changedAttributes.isEmpty()) {
       LOGGER.info("Agent {}: no capabilities change - will keep current queues", agent.getRef());
       return;
     }
-    LOGGER.info("Agent {}: detaching all queues due to capabilities change", agent.getRef());
+    LOGGER.info("Agent {}: capabilities {} changed - remapping the queues that depend on them",
+        agent.getRef(), changedAttributes);
 
     agent.setCapabilities(app.entityMapper.attributes.fromDto(newCapabilities));
-    agent.getAgentQueueMappings().clear();
-    attachQueues(em, agent, false);
+    mapQueues(em, agent, changedAttributes);
   }
 
   @Override
@@ -273,8 +553,22 @@ public class CoreAgentService extends CoreRouterObjectService<AgentDto, Agent>
         throw new InvalidStateException(
             "Deleting agent in state " + agent.getState() + " not allowed");
       }
+      if (agent.getOccupiedSlots() > 0) {
+        throw new InvalidStateException("Deleting agent with assigned tasks not allowed");
+      }
       em.remove(agent);
     });
   }
 
+  private static class NextAssignment {
+    TaskAssignmentDto current;
+    AgentDispatchInfo dispatchInfo;
+  }
+
+  private static class BatchResult {
+    Long routerId;
+    List<ApiObjectRef> refs = new ArrayList<>();
+    Set<Long> queueIds = new LinkedHashSet<>();
+  }
+
 }
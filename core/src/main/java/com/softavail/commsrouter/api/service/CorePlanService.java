@@ -28,6 +28,7 @@ import com.softavail.commsrouter.api.interfaces.PlanService;
 import com.softavail.commsrouter.app.AppContext;
 import com.softavail.commsrouter.domain.Plan;
 import com.softavail.commsrouter.domain.Router;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
 import com.softavail.commsrouter.util.Fields;
 import com.softavail.commsrouter.util.Uuid;
 
@@ -62,6 +63,7 @@ public class CorePlanService extends CoreRouterObjectService<PlanDto, Plan> impl
     return app.db.transactionManager.execute((em) -> {
       Plan oldPlan = app.db.plan.delete(em, objectRef);
       int revision = calculateNextRevision(oldPlan);
+      invalidateSnapshot(em, objectRef);
       em.flush();
       return doCreate(em, createArg, objectRef, revision);
     });
@@ -80,6 +82,7 @@ public class CorePlanService extends CoreRouterObjectService<PlanDto, Plan> impl
         Plan plan = app.db.plan.get(em, objectRef);
         checkResourceVersion(plan, objectRef);
         Fields.update(plan::setDescription, plan.getDescription(), updateArg.getDescription());
+        invalidateSnapshot(em, objectRef);
       });
       return;
     }
@@ -89,15 +92,30 @@ public class CorePlanService extends CoreRouterObjectService<PlanDto, Plan> impl
     app.db.transactionManager.executeVoid((em) -> {
       Plan oldPlan = app.db.plan.get(em, objectRef);
       checkResourceVersion(oldPlan, objectRef);
-      int revision = calculateNextRevision(oldPlan);
+      invalidateSnapshot(em, objectRef);
       PlanDto oldDto = app.entityMapper.plan.toDto(oldPlan);
       CreatePlanArg createArg = prepareCreateCopyArg(oldDto, updateArg);
       oldPlan.markBackup(updateArg.getDescription());
       em.flush();
+      int revision = calculateNextRevision(oldPlan);
       doCreate(em, createArg, objectRef, revision);
     });
   }
 
+  @Override
+  public void delete(RouterObjectRef routerObjectRef) throws CommsRouterException {
+    app.db.transactionManager.executeVoid((em) -> {
+      app.db.plan.delete(em, routerObjectRef);
+      invalidateSnapshot(em, routerObjectRef);
+    });
+  }
+
+  // After the commit, or a task created meanwhile could cache the old plan again
+  private void invalidateSnapshot(EntityManager em, RouterObjectRef objectRef) {
+    JpaTransactionManager.afterCommit(em, () -> app.taskDispatcher.getPlanSnapshots()
+        .invalidate(objectRef.getRouterRef(), objectRef.getRef()));
+  }
+
   private <T> T getFirstNonNull(T first, T second) {
     return first != null ? first : second;
   }
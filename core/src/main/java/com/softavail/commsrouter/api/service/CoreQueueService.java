@@ -18,15 +18,20 @@ package com.softavail.commsrouter.api.service;
 
 import com.softavail.commsrouter.api.dto.arg.CreateQueueArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateQueueArg;
+import com.softavail.commsrouter.api.dto.misc.PaginatedList;
+import com.softavail.commsrouter.api.dto.misc.QueueMappingDto;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.QueueDto;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.dto.model.TaskState;
+import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExpressionException;
 import com.softavail.commsrouter.api.interfaces.QueueService;
 import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.app.QueueMappingBuilder;
 import com.softavail.commsrouter.domain.Agent;
 import com.softavail.commsrouter.domain.AgentQueueMapping;
 import com.softavail.commsrouter.domain.Queue;
@@ -41,8 +46,10 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
 /**
  * Created by @author mapuo on 04.09.17.
@@ -52,6 +59,9 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
 
   private static final Logger LOGGER = LogManager.getLogger(CoreQueueService.class);
 
+  // The order in which the tasks are assigned, the id is always added last
+  private static final String TASKS_SORT = "-priority";
+
   public CoreQueueService(AppContext app) {
     super(app, app.db.queue, app.entityMapper.queue);
   }
@@ -93,11 +103,25 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
     queue.setRouter(router);
     queue.setDescription(createArg.getDescription());
     queue.setPredicate(createArg.getPredicate());
-    em.persist(queue);
-    attachAgents(em, queue, evaluator, true);
+    if (isMappedInBackground(em, router)) {
+      queue.setPendingPredicate(createArg.getPredicate());
+      queue.setPendingMappingVersion(queue.getMappingVersion() + 1);
+      em.persist(queue);
+      app.queueMappingBuilder.startAfterCommit(em, queue);
+    } else {
+      em.persist(queue);
+      attachAgents(em, queue, evaluator, true);
+    }
     return queue.cloneApiObjectRef();
   }
 
+  // On large routers the request would hold the router config lock for too long
+  private boolean isMappedInBackground(EntityManager em, Router router) {
+    Integer threshold = app.coreConfiguration.getQueueMappingAsyncThreshold();
+    return threshold != null && threshold >= 0
+        && app.db.agent.countByRouterId(em, router.getId()) >= threshold;
+  }
+
   private void attachAgents(EntityManager em, Queue queue, CommsRouterEvaluator evaluator,
       boolean isNewQueue) throws CommsRouterException {
 
@@ -108,6 +132,12 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
     List<Agent> agents = app.db.agent.list(em, queue.getRouter().getRef());
     for (Agent agent : agents) {
       try {
+        if (!isNewQueue) {
+          // The mappings of the previous versions were removed from the queue
+          agent.getAgentQueueMappings().removeIf(mapping ->
+              mapping.getQueue().getId().equals(queue.getId())
+              && mapping.getVersion() != queue.getMappingVersion());
+        }
         if (evaluator.evaluate(agent.getCapabilities())) {
 
           LOGGER.info("Queue {} <=> Agent {}", queue.getRef(), agent.getRef());
@@ -115,13 +145,8 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
 
           AgentQueueMapping mapping = new AgentQueueMapping(agent, queue);
           em.persist(mapping);
-
-          if (isNewQueue || !agent.getAgentQueueMappings().contains(mapping)) {
-            agent.getAgentQueueMappings().add(mapping);
-          }
+          agent.getAgentQueueMappings().add(mapping);
           queue.getAgentQueueMappings().add(mapping);
-        } else if (!isNewQueue) {
-          agent.getAgentQueueMappings().remove(new AgentQueueMapping(agent, queue));
         }
       } catch (CommsRouterException | RuntimeException ex) {
         LOGGER.error("Queue {}: failure attaching agent {}: {}", queue.getRef(), agent.getRef(), ex,
@@ -160,15 +185,42 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
 
     if (Objects.equals(queue.getPredicate(), predicate)) {
       LOGGER.info("Queue {}: no predicate change - will keep current agents", queue.getRef());
+      if (queue.getPendingMappingVersion() != null) {
+        // The running mapping is abandoned when it sees the pending version gone
+        queue.setPendingPredicate(null);
+        queue.setPendingMappingVersion(null);
+        queue.getAgentQueueMappings()
+            .removeIf(mapping -> mapping.getVersion() != queue.getMappingVersion());
+      }
+      return;
+    }
+    if (Objects.equals(queue.getPendingPredicate(), predicate)) {
+      LOGGER.info("Queue {}: the predicate is already being mapped", queue.getRef());
       return;
     }
-    LOGGER.info("Queue {}: detaching all agents due to predicate change", queue.getRef());
 
     CommsRouterEvaluator evaluator =
         app.evaluatorFactory.provide(predicate, queue.getRouter().getRef());
     evaluator.validate();
 
+    long version = queue.getMappingVersion() + 1;
+    if (queue.getPendingMappingVersion() != null) {
+      version = Math.max(version, queue.getPendingMappingVersion() + 1);
+    }
+    if (isMappedInBackground(em, queue.getRouter())) {
+      LOGGER.info("Queue {}: mapping the agents to version {} in the background", queue.getRef(),
+          version);
+      queue.setPendingPredicate(predicate);
+      queue.setPendingMappingVersion(version);
+      app.queueMappingBuilder.startAfterCommit(em, queue);
+      return;
+    }
+    LOGGER.info("Queue {}: detaching all agents due to predicate change", queue.getRef());
+
     queue.setPredicate(predicate);
+    queue.setMappingVersion(version);
+    queue.setPendingPredicate(null);
+    queue.setPendingMappingVersion(null);
     queue.getAgentQueueMappings().clear();
     attachAgents(em, queue, evaluator, false);
   }
@@ -176,18 +228,49 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
   @Override
   public long getQueueSize(RouterObjectRef routerObjectRef) throws CommsRouterException {
 
-    return app.db.transactionManager.execute((em) -> {
+    return app.db.transactionManager.executeReadOnly((em) -> {
       app.db.queue.get(em, routerObjectRef); // Check that queue exists
 
       return app.db.queue.getQueueSize(em, routerObjectRef);
     });
   }
 
+  @Override
+  public QueueStatisticsDto getStatistics(RouterObjectRef routerObjectRef)
+      throws CommsRouterException {
+
+    Long queueId = app.db.transactionManager.executeReadOnly(
+        em -> app.db.queue.get(em, routerObjectRef).getId());
+    return app.taskDispatcher.getQueueStatistics().getQueue(queueId);
+  }
+
+  @Override
+  public QueueMappingDto getMapping(RouterObjectRef routerObjectRef)
+      throws CommsRouterException {
+
+    QueueMappingDto dto = new QueueMappingDto();
+    Long queueId = app.db.transactionManager.executeReadOnly(em -> {
+      Queue queue = app.db.queue.get(em, routerObjectRef);
+      dto.setMappingVersion(queue.getMappingVersion());
+      dto.setPendingMappingVersion(queue.getPendingMappingVersion());
+      dto.setPendingPredicate(queue.getPendingPredicate());
+      return queue.getId();
+    });
+    QueueMappingBuilder.Progress progress = app.queueMappingBuilder.getProgress(queueId);
+    if (progress != null
+        && Long.valueOf(progress.getVersion()).equals(dto.getPendingMappingVersion())) {
+      dto.setTotalAgents(progress.getTotalAgents());
+      dto.setEvaluatedAgents(progress.getEvaluatedAgents());
+      dto.setMatchedAgents(progress.getMatchedAgents());
+    }
+    return dto;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public Collection<TaskDto> getTasks(RouterObjectRef routerObjectRef) throws CommsRouterException {
 
-    return app.db.transactionManager.execute((em) -> {
+    return app.db.transactionManager.executeReadOnly((em) -> {
       app.db.queue.get(em, routerObjectRef); // Check that queue exists
 
       String qlString = "SELECT t FROM Task t JOIN t.queue q JOIN q.router r "
@@ -203,6 +286,51 @@ public class CoreQueueService extends CoreRouterObjectService<QueueDto, Queue>
     });
   }
 
+  @Override
+  public PaginatedList<TaskDto> getTasks(RouterObjectRef routerObjectRef, String token,
+      int perPage) throws CommsRouterException {
+
+    Long lastPriority = null;
+    Long lastId = null;
+    if (token != null) {
+      Map<String, String> last = PaginationHelper.getTokenValues(Task.class, token);
+      try {
+        lastPriority = Long.valueOf(last.get("priority"));
+        lastId = Long.valueOf(last.get("id"));
+      } catch (NumberFormatException e) {
+        throw new BadValueException("Invalid token: " + token, e);
+      }
+    }
+    Long priority = lastPriority;
+    Long id = lastId;
+
+    return app.db.transactionManager.executeReadOnly((em) -> {
+      Queue queue = app.db.queue.get(em, routerObjectRef);
+
+      // Seeks on idx_task_queue_state_priority instead of skipping the previous pages
+      String qlString = "SELECT t FROM Task t WHERE t.queue = :queue AND t.state = :state";
+      if (id != null) {
+        qlString += " AND (t.priority < :priority OR (t.priority = :priority AND t.id > :id))";
+      }
+      qlString += " ORDER BY t.priority DESC, t.id";
+
+      TypedQuery<Task> query = em.createQuery(qlString, Task.class)
+          .setParameter("queue", queue)
+          .setParameter("state", TaskState.waiting)
+          .setMaxResults(perPage);
+      if (id != null) {
+        query.setParameter("priority", priority).setParameter("id", id);
+      }
+      List<Task> list = query.getResultList();
+
+      String nextToken = null;
+      if (list.size() == perPage) {
+        nextToken = PaginationHelper.getToken(list.get(list.size() - 1), TASKS_SORT);
+      }
+      return new PaginatedList<>(app.entityMapper.task.toDto(list), nextToken);
+    });
+  }
+
   @Override
   public void delete(RouterObjectRef routerObjectRef) throws CommsRouterException {
     app.db.transactionManager.executeVoid((em) -> {
@@ -30,12 +30,10 @@ import com.softavail.commsrouter.domain.Router;
 import com.softavail.commsrouter.domain.RouterObject;
 import com.softavail.commsrouter.domain.dto.mappers.EntityMapper;
 import com.softavail.commsrouter.jpa.RouterObjectRepository;
-import org.hibernate.query.Query;
 
 import java.util.List;
 import java.util.Optional;
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
@@ -67,7 +65,7 @@ public class CoreRouterObjectService<DTOT extends RouterObjectRef, ENTITYT exten
   public DTOT get(RouterObjectRef routerObjectRef)
       throws CommsRouterException {
 
-    return app.db.transactionManager.execute((em) -> {
+    return app.db.transactionManager.executeReadOnly((em) -> {
       ENTITYT entity = repository.get(em, routerObjectRef);
       return entityMapper.toDto(entity);
     });
@@ -78,7 +76,7 @@ public class CoreRouterObjectService<DTOT extends RouterObjectRef, ENTITYT exten
   public PaginatedList<DTOT> list(PagingRequest request)
       throws CommsRouterException {
 
-    return app.db.transactionManager.execute(em -> {
+    return app.db.transactionManager.executeReadOnly(em -> {
 
       CriteriaBuilder cb = em.getCriteriaBuilder();
       CriteriaQuery<ENTITYT> query = cb.createQuery(entityClass);
@@ -104,11 +102,7 @@ public class CoreRouterObjectService<DTOT extends RouterObjectRef, ENTITYT exten
       List<Order> sortOrder = PaginationHelper.getSortOrder(cb, root, request.getSort());
       query.orderBy(sortOrder);
 
-      TypedQuery<ENTITYT> typedQuery = em.createQuery(query);
-
-      System.out.println(typedQuery.unwrap(Query.class).getQueryString());
-
-      List<ENTITYT> jpaResult = typedQuery
+      List<ENTITYT> jpaResult = em.createQuery(query)
           .setMaxResults(request.getPerPage())
           .getResultList();
 
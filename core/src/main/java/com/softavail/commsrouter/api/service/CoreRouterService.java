@@ -23,13 +23,17 @@ import com.softavail.commsrouter.api.dto.arg.CreateRouterArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateRouterArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.interfaces.RouterService;
+import com.softavail.commsrouter.app.AdmissionControl;
 import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.app.TaskDispatcher;
 import com.softavail.commsrouter.domain.Router;
 import com.softavail.commsrouter.domain.RouterConfig;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
 import com.softavail.commsrouter.jpa.RouterRepository;
 import com.softavail.commsrouter.util.Fields;
 import com.softavail.commsrouter.util.Uuid;
@@ -51,10 +55,14 @@ public class CoreRouterService
     implements RouterService {
 
   private final RouterRepository routerRepository;
+  private final TaskDispatcher taskDispatcher;
+  private final AdmissionControl admissionControl;
 
   public CoreRouterService(AppContext app) {
     super(app.db.transactionManager, app.entityMapper.router);
     routerRepository = app.db.router;
+    taskDispatcher = app.taskDispatcher;
+    admissionControl = app.admissionControl;
   }
 
   @Override
@@ -72,7 +80,9 @@ public class CoreRouterService
       throws CommsRouterException {
 
     return transactionManager.execute((em) -> {
-      routerRepository.deleteByRef(em, ref);
+      Long routerId = routerRepository.deleteByRef(em, ref);
+      invalidatePlans(em, ref);
+      forgetRouter(em, routerId, ref);
       em.flush();
       return doCreate(em, createArg, new ApiObjectRef(ref));
     });
@@ -110,18 +120,27 @@ public class CoreRouterService
   public RouterDto get(String ref)
       throws CommsRouterException {
 
-    return transactionManager.execute((em) -> {
+    return transactionManager.executeReadOnly((em) -> {
       RouterDto dto = entityMapper.toDto(routerRepository.getByRef(em, ref));
       return dto;
     });
   }
 
+  @Override
+  public QueueStatisticsDto getStatistics(String ref)
+      throws CommsRouterException {
+
+    Long routerId = transactionManager.executeReadOnly(
+        em -> routerRepository.getByRef(em, ref).getId());
+    return taskDispatcher.getQueueStatistics().getRouter(routerId);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public PaginatedList<RouterDto> list(PagingRequest request)
       throws CommsRouterException {
 
-    return transactionManager.execute(em -> {
+    return transactionManager.executeReadOnly(em -> {
 
 
       CriteriaBuilder cb = em.getCriteriaBuilder();
@@ -166,8 +185,25 @@ public class CoreRouterService
       throws CommsRouterException {
 
     transactionManager.executeVoid((em) -> {
-      routerRepository.deleteByRef(em, ref);
+      Long routerId = routerRepository.deleteByRef(em, ref);
+      invalidatePlans(em, ref);
+      forgetRouter(em, routerId, ref);
     });
   }
 
+  private void forgetRouter(EntityManager em, Long routerId, String ref) {
+    if (routerId == null) {
+      return;
+    }
+    JpaTransactionManager.afterCommit(em, () -> {
+      admissionControl.forget(ref);
+      taskDispatcher.routerDeleted(routerId, ref);
+    });
+  }
+
+  private void invalidatePlans(EntityManager em, String ref) {
+    JpaTransactionManager.afterCommit(em,
+        () -> taskDispatcher.getPlanSnapshots().invalidateRouter(ref));
+  }
+
 }
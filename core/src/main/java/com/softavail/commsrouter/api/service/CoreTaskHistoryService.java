@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.api.service;
+
+import com.softavail.commsrouter.api.dto.model.TaskDto;
+import com.softavail.commsrouter.api.interfaces.TaskHistoryService;
+import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.domain.TaskHistory;
+
+public class CoreTaskHistoryService extends CoreRouterObjectService<TaskDto, TaskHistory>
+    implements TaskHistoryService {
+
+  public CoreTaskHistoryService(AppContext app) {
+    super(app, app.db.taskHistory, app.entityMapper.taskHistory);
+  }
+
+}
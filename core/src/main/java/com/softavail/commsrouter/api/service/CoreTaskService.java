@@ -22,6 +22,7 @@ import com.softavail.commsrouter.api.dto.arg.UpdateTaskContext;
 import com.softavail.commsrouter.api.dto.model.AgentState;
 import com.softavail.commsrouter.api.dto.model.CreatedTaskDto;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.dto.model.TaskState;
 import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
@@ -33,6 +34,8 @@ import com.softavail.commsrouter.api.exception.NotFoundException;
 import com.softavail.commsrouter.api.interfaces.TaskService;
 import com.softavail.commsrouter.app.AgentDispatchInfo;
 import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.app.PlanSnapshot;
+import com.softavail.commsrouter.app.PlanSnapshots;
 import com.softavail.commsrouter.app.TaskDispatchInfo;
 import com.softavail.commsrouter.domain.Agent;
 import com.softavail.commsrouter.domain.AttributeGroup;
@@ -42,9 +45,11 @@ import com.softavail.commsrouter.domain.Route;
 import com.softavail.commsrouter.domain.Router;
 import com.softavail.commsrouter.domain.Rule;
 import com.softavail.commsrouter.domain.Task;
-import com.softavail.commsrouter.eval.CommsRouterEvaluator;
+import com.softavail.commsrouter.jfr.RoutingEvents;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
 import com.softavail.commsrouter.util.Uuid;
 
+import io.micrometer.core.instrument.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -70,24 +75,35 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
       throws CommsRouterException {
 
     validate(createArg);
+    app.admissionControl.admitRate(routerId);
 
     RouterObjectRef routerObjectId =
         RouterObjectRef.builder().setRef(Uuid.get()).setRouterRef(routerId)
             .build();
 
+    long planGeneration = app.taskDispatcher.getPlanSnapshots().getGeneration();
     TaskDispatchInfo dispatchInfo = app.db.transactionManager
-        .execute(em -> doCreate(em, createArg, routerObjectId));
+        .execute(em -> doCreate(em, createArg, routerObjectId, planGeneration));
 
     app.taskDispatcher.dispatchTask(dispatchInfo);
+    RoutingEvents.taskCreated(routerId, dispatchInfo.getTaskRef(), dispatchInfo.getQueueId(),
+        dispatchInfo.getQueuePosition());
 
-    return new CreatedTaskDto(dispatchInfo.getTaskRef(), dispatchInfo.getQueuePosition());
+    return toCreatedTask(dispatchInfo);
+  }
+
+  private CreatedTaskDto toCreatedTask(TaskDispatchInfo dispatchInfo) {
+    Long estimatedWait = app.taskDispatcher.getQueueStatistics()
+        .estimateWait(dispatchInfo.getQueueId(), dispatchInfo.getQueuePosition());
+    return new CreatedTaskDto(dispatchInfo.getTaskRef(), dispatchInfo.getQueuePosition(),
+        estimatedWait);
   }
 
   @Override
   public TaskDto getByTag(String routerId, String tag)
       throws CommsRouterException {
 
-    return app.db.transactionManager.execute((em) -> {
+    return app.db.transactionManager.executeReadOnly((em) -> {
       Task entity = app.db.task.getByTag(em, routerId, tag);
       return entityMapper.toDto(entity);
     });
@@ -99,7 +115,9 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
       throws CommsRouterException {
 
     validate(createArg);
+    app.admissionControl.admitRate(objectId.getRouterRef());
 
+    long planGeneration = app.taskDispatcher.getPlanSnapshots().getGeneration();
     TaskDispatchInfo dispatchInfo = app.db.transactionManager.execute(em -> {
 
       Task task = repository.getNoThrow(em, objectId);
@@ -111,12 +129,14 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
         em.remove(task);
         em.flush();
       }
-      return doCreate(em, createArg, objectId);
+      return doCreate(em, createArg, objectId, planGeneration);
     });
 
     app.taskDispatcher.dispatchTask(dispatchInfo);
+    RoutingEvents.taskCreated(objectId.getRouterRef(), dispatchInfo.getTaskRef(),
+        dispatchInfo.getQueueId(), dispatchInfo.getQueuePosition());
 
-    return new CreatedTaskDto(dispatchInfo.getTaskRef(), dispatchInfo.getQueuePosition());
+    return toCreatedTask(dispatchInfo);
   }
 
   @Override
@@ -149,6 +169,33 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
     });
   }
 
+  /**
+   * Completes the task and, in the same transaction, assigns the next waiting task the agent can
+   * take. The assignment is returned to the caller instead of being sent to the callback of the
+   * task, which saves the dispatch transaction and the callback round trip per handled task.
+   *
+   * @return the next assignment of the agent, or null if no task is waiting for it
+   */
+  public TaskAssignmentDto updateAndFetchNext(UpdateTaskArg updateArg, RouterObjectRef objectRef)
+      throws CommsRouterException {
+
+    if (updateArg.getState() != TaskState.completed) {
+      throw new BadValueException("Fetching the next task requires state: completed");
+    }
+    TaskAssignmentDto next = app.db.transactionManager.executeWithLockRetry(em -> {
+      // The same lock order as the dispatcher
+      app.db.router.lock(em, app.db.router.getIdByRef(em, objectRef.getRouterRef()));
+      AgentDispatchInfo dispatchInfo = completeTask(em, objectRef);
+      return app.db.queue.findAssignmentForAgent(em, dispatchInfo.getAgentId())
+          .map(matchResult -> app.taskDispatcher.assignTask(em, matchResult))
+          .orElse(null);
+    });
+    if (next != null) {
+      Metrics.counter("router.assignment.fetched").increment();
+    }
+    return next;
+  }
+
   @Override
   public void updateContext(UpdateTaskContext taskContext, RouterObjectRef objectRef)
       throws CommsRouterException {
@@ -170,8 +217,8 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
     });
   }
 
-  private Route getMatchedRoute(
-      String taskId, AttributeGroup attributesGroup, Rule rule, CommsRouterEvaluator evaluator)
+  private PlanSnapshot.CompiledRoute getMatchedRoute(String taskId,
+      AttributeGroup attributesGroup, PlanSnapshot.CompiledRule rule, String routerRef)
       throws CommsRouterException {
     if (rule != null) {
       if (rule.getRoutes().isEmpty()) {
@@ -179,7 +226,11 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
       }
 
       try {
-        if (evaluator.evaluate(attributesGroup)) {
+        long started = System.nanoTime();
+        boolean matched = rule.matches(attributesGroup, app.evaluatorFactory, routerRef);
+        RoutingEvents.ruleEvaluated(taskId, rule.getId(), rule.getTag(), matched,
+            System.nanoTime() - started);
+        if (matched) {
           LOGGER.info("Task {}: matched rule {} tag {}", taskId, rule.getId(), rule.getTag());
           return rule.getRoutes().get(0);
         }
@@ -189,20 +240,23 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
         throw ex;
       }
 
-      LOGGER.debug("Did not found any route info in the current rule: {}", rule);
+      LOGGER.debug("Did not found any route info in the current rule: {}", rule.getId());
     }
 
     return null;
   }
 
-  private TaskDispatchInfo doCreate(EntityManager em, CreateTaskArg createArg, RouterObjectRef obj)
-      throws CommsRouterException {
+  private TaskDispatchInfo doCreate(EntityManager em, CreateTaskArg createArg, RouterObjectRef obj,
+      long planGeneration) throws CommsRouterException {
 
     // validate requirements
     app.validators.taskRequirementsValidator
         .validate(createArg.getRequirements(), obj.getRouterRef());
 
-    Task task = fromPlan(em, createArg, obj);
+    Task task = fromPlan(em, createArg, obj, planGeneration);
+    Long routerId = task.getRouter().getId();
+    app.admissionControl.trackRate(obj.getRouterRef());
+    app.admissionControl.admitDispatch(routerId);
     task.setState(TaskState.waiting);
     task.setCallbackUrl(createArg.getCallbackUrl().toString());
     task.setUserContext(app.entityMapper.attributes.fromDto(createArg.getUserContext()));
@@ -210,15 +264,21 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
 
     em.persist(task);
 
+    // The count includes the new task, a full queue rolls it back
     Long queueId = task.getQueue().getId();
+    long queuePosition = app.db.queue.getQueueSize(em, queueId) - 1;
+    app.admissionControl.admitQueued(queuePosition);
+    JpaTransactionManager.afterCommit(em,
+        () -> app.taskDispatcher.getQueueStatistics().taskCreated(routerId, queueId));
+    app.taskDispatcher.getEventBus().taskChanged(em, task);
 
     TaskDispatchInfo result = app.entityMapper.task.toDispatchInfo(task);
-    result.setQueuePosition(app.db.queue.getQueueSize(em, queueId) - 1);
+    result.setQueuePosition(queuePosition);
     return result;
   }
 
-  private Task fromPlan(EntityManager em, CreateTaskArg createArg, RouterObjectRef objectId)
-      throws NotFoundException, CommsRouterException {
+  private Task fromPlan(EntityManager em, CreateTaskArg createArg, RouterObjectRef objectId,
+      long planGeneration) throws NotFoundException, CommsRouterException {
 
     Router router = getRouter(em, objectId);
     Task task = new Task(objectId);
@@ -227,16 +287,13 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
 
     if (createArg.getPlanRef() != null) {
 
-      Plan plan = app.db.plan.get(em, RouterObjectRef.builder().setRef(createArg.getPlanRef())
-          .setRouterRef(objectId.getRouterRef()).build());
-      Route matchedRoute = null;
-      CommsRouterEvaluator evaluator = app.evaluatorFactory.provide(null, null);
-      List<Rule> rules = plan.getRules();
-      for (Rule rule : rules) {
-        evaluator = evaluator.changeExpression(rule.getPredicate(), objectId.getRouterRef());
-        matchedRoute = getMatchedRoute(task.getRef(), task.getRequirements(), rule, evaluator);
+      PlanSnapshot plan = getPlanSnapshot(em, router, createArg.getPlanRef(), planGeneration);
+      PlanSnapshot.CompiledRoute matchedRoute = null;
+      for (PlanSnapshot.CompiledRule rule : plan.getCandidateRules(task.getRequirements())) {
+        matchedRoute =
+            getMatchedRoute(task.getRef(), task.getRequirements(), rule, router.getRef());
         if (matchedRoute != null) {
-          task.setRule(rule);
+          task.setRule(em.getReference(Rule.class, rule.getId()));
           break;
         }
       }
@@ -249,12 +306,12 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
         throw new NotFoundException("Route task '{}' not found" + createArg);
       }
 
-      if (matchedRoute.getQueue() == null) {
+      if (matchedRoute.getQueueId() == null) {
         throw new NotFoundException(
             "Evaluator didn't match task to any queues using the plan rules.");
       }
 
-      task.setQueue(matchedRoute.getQueue());
+      task.setQueue(em.getReference(Queue.class, matchedRoute.getQueueId()));
       task.setPriority(matchedRoute.getPriority());
       task.setQueuedTimeout(matchedRoute.getTimeout());
 
@@ -263,7 +320,7 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
             System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(task.getQueuedTimeout())));
       }
 
-      task.setCurrentRoute(matchedRoute);
+      task.setCurrentRoute(em.getReference(Route.class, matchedRoute.getId()));
 
     } else {
 
@@ -275,6 +332,38 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
     return task;
   }
 
+  /**
+   * @param planGeneration the generation of the snapshots read before the transaction started, a
+   *     plan changed after that may not be visible to it
+   */
+  private PlanSnapshot getPlanSnapshot(EntityManager em, Router router, String planRef,
+      long planGeneration) throws CommsRouterException {
+
+    PlanSnapshots snapshots = app.taskDispatcher.getPlanSnapshots();
+    PlanSnapshot snapshot = snapshots.get(router.getRef(), planRef);
+    if (snapshot != null && snapshot.getRouterId().equals(router.getId())
+        && isCurrent(em, snapshot, router.getRef(), planRef)) {
+      return snapshot;
+    }
+
+    Plan plan = app.db.plan.get(em,
+        RouterObjectRef.builder().setRef(planRef).setRouterRef(router.getRef()).build());
+    snapshot = PlanSnapshot.compile(plan, app.evaluatorFactory);
+    snapshots.put(router.getRef(), planRef, snapshot, planGeneration);
+    return snapshot;
+  }
+
+  private boolean isCurrent(EntityManager em, PlanSnapshot snapshot, String routerRef,
+      String planRef) {
+
+    // Only the changes made through this node invalidate the snapshots
+    if (!Boolean.TRUE.equals(app.coreConfiguration.getClusterEnabled())) {
+      return true;
+    }
+    return app.db.plan.isVersion(em, routerRef, planRef, snapshot.getPlanId(),
+        snapshot.getVersion());
+  }
+
   private void validate(CreateTaskArg createArg) {
 
     // TODO Do it with javax.validation?!
@@ -313,13 +402,16 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
     Agent agent = task.getAgent();
     assert agent != null : "Rejected task with no agent: " + task.getRef();
 
-    if (agent.getState() != AgentState.busy) {
-      throw new InternalErrorException("Unexpected agent state: " + agent.getState());
+    if (agent.getOccupiedSlots() <= 0) {
+      throw new InternalErrorException("Agent " + agent.getRef() + " has no occupied slots");
     }
+    agent.releaseSlot();
     agent.setState(AgentState.unavailable);
 
     task.setState(TaskState.waiting);
     task.setAgent(null);
+    app.taskDispatcher.getEventBus().taskChanged(em, task);
+    app.taskDispatcher.getEventBus().agentChanged(em, agent);
 
     return app.entityMapper.task.toDispatchInfo(task);
   }
@@ -357,12 +449,20 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
 
     assert agent != null : "Completed task with no agent: " + task.getRef();
 
+    // The task was last updated when it got assigned
+    long handleMillis = millisSince(task.getUpdateDate());
+    Long routerId = task.getRouter().getId();
+    Long queueId = task.getQueue().getId();
+    JpaTransactionManager.afterCommit(em, () -> app.taskDispatcher.getQueueStatistics()
+        .taskCompleted(routerId, queueId, handleMillis));
+    app.taskDispatcher.getEventBus().taskFinished(em, task, TaskState.completed);
     task.makeCompleted();
 
-    if (agent.getState() != AgentState.busy) {
-      throw new InternalErrorException("Unexpected agent state: " + agent.getState());
+    if (agent.getOccupiedSlots() <= 0) {
+      throw new InternalErrorException("Agent " + agent.getRef() + " has no occupied slots");
     }
-    agent.setState(AgentState.ready);
+    agent.releaseSlot();
+    app.taskDispatcher.getEventBus().agentChanged(em, agent);
     AgentDispatchInfo dispatchInfo = new AgentDispatchInfo();
     dispatchInfo.setAgentId(agent.getId());
     dispatchInfo.setRouterId(agent.getRouter().getId());
@@ -378,6 +478,12 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
       case waiting:
         assert task.getAgent() == null : "Waiting task " + task.getRef() + " has assigned agent: "
             + task.getAgent().getRef();
+        long waitMillis = millisSince(task.getCreateDate());
+        Long routerId = task.getRouter().getId();
+        Long queueId = task.getQueue().getId();
+        JpaTransactionManager.afterCommit(em, () -> app.taskDispatcher.getQueueStatistics()
+            .taskAbandoned(routerId, queueId, waitMillis));
+        app.taskDispatcher.getEventBus().taskFinished(em, task, TaskState.canceled);
         task.makeCanceled();
         return;
       case canceled:
@@ -390,6 +496,10 @@ public class CoreTaskService extends CoreRouterObjectService<TaskDto, Task> impl
     }
   }
 
+  private static long millisSince(Date date) {
+    return date == null ? 0 : System.currentTimeMillis() - date.getTime();
+  }
+
   @Override
   public void delete(RouterObjectRef routerObjectRef) throws CommsRouterException {
     app.db.transactionManager.executeVoid((em) -> {
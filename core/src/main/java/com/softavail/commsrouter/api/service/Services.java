@@ -25,6 +25,7 @@ import com.softavail.commsrouter.app.AppContext;
 public class Services {
 
   public final CoreTaskService task;
+  public final CoreTaskHistoryService taskHistory;
   public final CorePlanService plan;
   public final CoreQueueService queue;
   public final CoreAgentService agent;
@@ -33,6 +34,7 @@ public class Services {
 
   public Services(AppContext context) {
     this.task = new CoreTaskService(context);
+    this.taskHistory = new CoreTaskHistoryService(context);
     this.plan = new CorePlanService(context);
     this.queue = new CoreQueueService(context);
     this.agent = new CoreAgentService(context);
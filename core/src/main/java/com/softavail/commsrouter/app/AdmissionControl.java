@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.exception.ServiceUnavailableException;
+import com.softavail.commsrouter.api.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a new task is accepted, so that an overloaded router refuses work instead of
+ * growing the database and the dispatcher queues without a bound. A refused request is told when
+ * to retry. All the limits are per instance and are checked in memory, except the size of the
+ * queue which is counted when the task is inserted anyway.
+ */
+public class AdmissionControl {
+
+  private static class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long updatedNanos;
+
+    TokenBucket(int ratePerSecond, long nowNanos) {
+      this.tokensPerNano = ratePerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+      this.capacity = ratePerSecond;
+      this.tokens = capacity;
+      this.updatedNanos = nowNanos;
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the nanos until the next token
+     */
+    synchronized long tryTake(long nowNanos) {
+      tokens = Math.min(capacity, tokens + (nowNanos - updatedNanos) * tokensPerNano);
+      updatedNanos = nowNanos;
+      if (tokens >= 1) {
+        tokens -= 1;
+        return 0;
+      }
+      return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+  }
+
+  private final CoreConfiguration configuration;
+  private final TaskDispatcher taskDispatcher;
+  private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+  public AdmissionControl(CoreConfiguration configuration, TaskDispatcher taskDispatcher) {
+    this.configuration = configuration;
+    this.taskDispatcher = taskDispatcher;
+  }
+
+  /**
+   * Takes a token from the bucket of the router. Checked before the task touches the database, so
+   * only routers that were already seen by {@link #trackRate(String)} are limited here.
+   */
+  public void admitRate(String routerRef) throws TooManyRequestsException {
+    admitRate(routerRef, System.nanoTime());
+  }
+
+  void admitRate(String routerRef, long nowNanos) throws TooManyRequestsException {
+    int rate = positive(configuration.getTaskAdmissionRouterRate());
+    if (rate == 0) {
+      return;
+    }
+    TokenBucket bucket = buckets.get(routerRef);
+    if (bucket == null) {
+      return;
+    }
+    long waitNanos = bucket.tryTake(nowNanos);
+    if (waitNanos > 0) {
+      reject("rate");
+      throw new TooManyRequestsException("Router " + routerRef + " accepts up to " + rate
+          + " tasks per second", toRetryAfterSeconds(waitNanos));
+    }
+  }
+
+  /**
+   * Starts limiting the rate of the router. Called once the router is known to exist, so a bogus
+   * ref sent by a client never gets a bucket.
+   */
+  public void trackRate(String routerRef) {
+    trackRate(routerRef, System.nanoTime());
+  }
+
+  void trackRate(String routerRef, long nowNanos) {
+    int rate = positive(configuration.getTaskAdmissionRouterRate());
+    if (rate > 0 && !buckets.containsKey(routerRef)) {
+      buckets.putIfAbsent(routerRef, new TokenBucket(rate, nowNanos));
+    }
+  }
+
+  public void forget(String routerRef) {
+    buckets.remove(routerRef);
+  }
+
+  int size() {
+    return buckets.size();
+  }
+
+  /**
+   * Refuses the task while the dispatcher work of the router waits for its bulkhead, the tasks
+   * would only wait longer and add to the backlog.
+   */
+  public void admitDispatch(Long routerId) throws ServiceUnavailableException {
+    int maxBacklog = positive(configuration.getTaskAdmissionMaxBacklog());
+    if (maxBacklog == 0) {
+      return;
+    }
+    int backlog = taskDispatcher.getBulkhead(routerId).getQueueDepth();
+    if (backlog > maxBacklog) {
+      reject("backlog");
+      throw new ServiceUnavailableException("Dispatcher backlog of " + backlog
+          + " exceeds " + maxBacklog, retryAfterSeconds());
+    }
+  }
+
+  /**
+   * @param waitingTasks the number of waiting tasks in the queue, not counting the new one
+   */
+  public void admitQueued(long waitingTasks) throws TooManyRequestsException {
+    int maxWaiting = positive(configuration.getTaskAdmissionMaxWaiting());
+    if (maxWaiting == 0 || waitingTasks < maxWaiting) {
+      return;
+    }
+    reject("queue");
+    throw new TooManyRequestsException("The queue is full with " + waitingTasks
+        + " waiting tasks", retryAfterSeconds());
+  }
+
+  private long retryAfterSeconds() {
+    return Math.max(1, positive(configuration.getTaskAdmissionRetryAfter()));
+  }
+
+  private static long toRetryAfterSeconds(long waitNanos) {
+    long nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+    return Math.max(1, (waitNanos + nanosPerSecond - 1) / nanosPerSecond);
+  }
+
+  private static int positive(Integer value) {
+    return value == null || value < 0 ? 0 : value;
+  }
+
+  private static void reject(String reason) {
+    Metrics.counter("router.task.rejected", "reason", reason).increment();
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.dto.model.AgentState;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.NotFoundException;
+import com.softavail.commsrouter.domain.Agent;
+import com.softavail.commsrouter.domain.Router;
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the heartbeats of the agents in memory. A heartbeat only moves the deadline of the agent,
+ * the database is written only when a deadline passes and the agent is still ready - then it is
+ * made offline, so that no more tasks are assigned to a crashed desktop. Agents that never sent a
+ * heartbeat are not tracked. The first heartbeat of an agent that is not tracked checks that it
+ * exists, so unknown refs do not grow the deadlines.
+ *
+ * <p>The deadlines are kept by the node that received the heartbeats, behind a load balancer the
+ * heartbeats of an agent must stick to one node.
+ */
+public class AgentPresence {
+
+  private static final Logger LOGGER = LogManager.getLogger(AgentPresence.class);
+
+  private static final long SWEEP_PERIOD_MILLIS = 1000;
+
+  private static class Key {
+
+    private final String routerRef;
+    private final String ref;
+
+    Key(String routerRef, String ref) {
+      this.routerRef = routerRef;
+      this.ref = ref;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (object == null || getClass() != object.getClass()) {
+        return false;
+      }
+      Key key = (Key) object;
+      return routerRef.equals(key.routerRef) && ref.equals(key.ref);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(routerRef, ref);
+    }
+
+  }
+
+  private final AppContext app;
+  private final ScheduledThreadPoolExecutor threadPool;
+  private final ConcurrentMap<Key, Long> deadlines = new ConcurrentHashMap<>();
+
+  public AgentPresence(AppContext app) {
+    this.app = app;
+    this.threadPool = new ScheduledThreadPoolExecutor(1);
+    this.threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  public void start() {
+    Integer ttl = app.coreConfiguration.getAgentHeartbeatTtl();
+    if (ttl == null || ttl <= 0) {
+      LOGGER.info("Agent heartbeats are disabled");
+      return;
+    }
+    threadPool.scheduleWithFixedDelay(this::sweep, SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void close() {
+    ThreadPoolKiller.shutdown(threadPool, "AgentPresence");
+  }
+
+  /**
+   * @throws NotFoundException if the agent is not tracked yet and does not exist
+   */
+  public void heartbeat(RouterObjectRef objectRef) throws CommsRouterException {
+    Integer ttl = app.coreConfiguration.getAgentHeartbeatTtl();
+    if (ttl == null || ttl <= 0) {
+      return;
+    }
+    Key key = new Key(objectRef.getRouterRef(), objectRef.getRef());
+    if (!deadlines.containsKey(key)) {
+      app.db.transactionManager.executeReadOnly(em -> app.db.agent.get(em, objectRef));
+    }
+    deadlines.put(key, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl));
+  }
+
+  public int size() {
+    return deadlines.size();
+  }
+
+  private void sweep() {
+    try {
+      expire(System.currentTimeMillis());
+    } catch (RuntimeException ex) {
+      LOGGER.error("Expiring agent heartbeats failed: {}", ex, ex);
+    }
+  }
+
+  /**
+   * Makes offline the ready agents whose deadlines passed before the given time.
+   *
+   * @return the number of agents made offline
+   */
+  public int expire(long nowMillis) {
+    Map<String, List<String>> expired = new HashMap<>();
+    deadlines.forEach((key, deadline) -> {
+      // A heartbeat that just moved the deadline keeps the agent
+      if (deadline <= nowMillis && deadlines.remove(key, deadline)) {
+        expired.computeIfAbsent(key.routerRef, routerRef -> new ArrayList<>()).add(key.ref);
+      }
+    });
+    int count = 0;
+    for (Map.Entry<String, List<String>> entry : expired.entrySet()) {
+      try {
+        count += makeOffline(entry.getKey(), entry.getValue());
+      } catch (CommsRouterException | RuntimeException ex) {
+        LOGGER.error("Router {}: failure making agents {} offline: {}", entry.getKey(),
+            entry.getValue(), ex, ex);
+      }
+    }
+    return count;
+  }
+
+  private int makeOffline(String routerRef, List<String> refs) throws CommsRouterException {
+    int count = app.db.transactionManager.executeWithLockRetry(em -> {
+      Router router = app.db.router.getByRefNoThrow(em, routerRef);
+      if (router == null) {
+        return 0;
+      }
+      // Serializes with the dispatcher, which may be making the agents busy
+      app.db.router.lock(em, router.getId());
+      int offline = 0;
+      for (Agent agent : app.db.agent.listByRefs(em, router.getId(), refs)) {
+        if (agent.getState() == AgentState.ready) {
+          LOGGER.info("Agent {}: missed its heartbeats - going offline", agent.getRef());
+          agent.setState(AgentState.offline);
+          app.taskDispatcher.getEventBus().agentChanged(em, agent);
+          ++offline;
+        }
+      }
+      return offline;
+    });
+    Metrics.counter("router.agent.heartbeat.expired").increment(count);
+    return count;
+  }
+
+}
@@ -35,6 +35,9 @@ public class AppContext {
   public final CoreConfiguration coreConfiguration;
   public final Services svc;
   public final Validators validators;
+  public final QueueMappingBuilder queueMappingBuilder;
+  public final AgentPresence agentPresence;
+  public final AdmissionControl admissionControl;
 
   public AppContext(JpaDbFacade db, CommsRouterEvaluatorFactory evaluatorFactory,
       TaskDispatcher taskDispatcher, EntityMappers dtoMappers,
@@ -46,6 +49,9 @@ public class AppContext {
     this.coreConfiguration = coreConfiguration;
     this.svc = new Services(this);
     this.validators = new Validators(this);
+    this.queueMappingBuilder = new QueueMappingBuilder(this);
+    this.agentPresence = new AgentPresence(this);
+    this.admissionControl = new AdmissionControl(coreConfiguration, taskDispatcher);
   }
 
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The agents parked in a long poll for their next task. An assignment for a waiting agent is
+ * handed to the waiter instead of being posted to the callback of the task. At most one waiter is
+ * kept per agent - registering a new one replaces the previous.
+ *
+ * <p>
+ * Only the assignments made by this node reach its waiters. An assignment that misses the waiter
+ * goes to the callback and the agent gets it with its next poll.
+ */
+public class AssignmentWaiters {
+
+  public interface Waiter {
+
+    /**
+     * @return false if the waiter is gone and the assignment must be delivered by other means
+     */
+    boolean deliver(TaskAssignmentDto assignment);
+
+    /**
+     * Called when a newer poll of the same agent takes the place of this one.
+     */
+    void replaced();
+
+  }
+
+  private final ConcurrentMap<Key, Waiter> waiters = new ConcurrentHashMap<>();
+
+  public void register(RouterObjectRef agentRef, Waiter waiter) {
+    Waiter previous = waiters.put(new Key(agentRef), waiter);
+    if (previous != null && previous != waiter) {
+      previous.replaced();
+    }
+  }
+
+  /**
+   * @return true if the waiter was still registered, false if it was replaced or already got an
+   *         assignment
+   */
+  public boolean remove(RouterObjectRef agentRef, Waiter waiter) {
+    return waiters.remove(new Key(agentRef), waiter);
+  }
+
+  /**
+   * @return true if a waiter of the agent took the assignment
+   */
+  public boolean deliver(TaskAssignmentDto assignment) {
+    Waiter waiter = waiters.remove(new Key(assignment.getAgent()));
+    return waiter != null && waiter.deliver(assignment);
+  }
+
+  public int size() {
+    return waiters.size();
+  }
+
+  private static class Key {
+
+    private final String routerRef;
+    private final String ref;
+
+    Key(RouterObjectRef objectRef) {
+      this.routerRef = objectRef.getRouterRef();
+      this.ref = objectRef.getRef();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) object;
+      return Objects.equals(routerRef, key.routerRef) && Objects.equals(ref, key.ref);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(routerRef, ref);
+    }
+
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import net.jodah.failsafe.util.concurrent.Scheduler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lane over the shared {@link DispatcherExecutor}. At most maxConcurrency tasks of a bulkhead
+ * are handed to the executor at a time, the rest wait in the bulkhead's own queue. Each finished
+ * task passes its slot to the next waiting one by submitting it at the end of the executor queue,
+ * so busy bulkheads take turns with the other ones instead of filling the pool.
+ */
+public class Bulkhead implements Executor {
+
+  private static final Logger LOGGER = LogManager.getLogger(Bulkhead.class);
+
+  private final String name;
+  private final int maxConcurrency;
+  private final DispatcherExecutor executor;
+  private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  public Bulkhead(String name, int maxConcurrency, DispatcherExecutor executor) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("Bulkhead concurrency must be positive");
+    }
+    this.name = name;
+    this.maxConcurrency = maxConcurrency;
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("Bulkhead " + name + " is shut down");
+    }
+    pending.add(task);
+    queueDepth.incrementAndGet();
+    drain();
+  }
+
+  /**
+   * Runs the task in this bulkhead after the delay. Only the timer is kept by the executor, the
+   * task itself waits for a free slot like any other.
+   */
+  public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    return executor.schedule(() -> execute(task), delay, unit);
+  }
+
+  public Scheduler asScheduler() {
+    return (callable, delay, unit) -> schedule(() -> {
+      try {
+        callable.call();
+      } catch (Exception e) {
+        // Failsafe handles the failures in the callable it passes, nothing should get here
+        LOGGER.error("Bulkhead {}: unexpected failure: {}", name, e, e);
+      }
+    }, delay, unit);
+  }
+
+  private void drain() {
+    while (!pending.isEmpty()) {
+      int active = activeCount.get();
+      if (active >= maxConcurrency) {
+        // The running tasks will drain the queue when they finish
+        return;
+      }
+      if (!activeCount.compareAndSet(active, active + 1)) {
+        continue;
+      }
+      Runnable task = pending.poll();
+      if (task == null) {
+        // Someone else took it, give the slot back and look again
+        activeCount.decrementAndGet();
+        continue;
+      }
+      queueDepth.decrementAndGet();
+      try {
+        executor.execute(() -> run(task));
+      } catch (RejectedExecutionException e) {
+        activeCount.decrementAndGet();
+        throw e;
+      }
+    }
+  }
+
+  private void run(Runnable task) {
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      LOGGER.error("Bulkhead {}: task failure: {}", name, e, e);
+    } finally {
+      activeCount.decrementAndGet();
+      if (!executor.isShutdown()) {
+        drain();
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public int getActiveCount() {
+    return activeCount.get();
+  }
+
+  /**
+   * The share of the bulkhead slots in use, from 0 to 1. A bulkhead that stays at 1 with a growing
+   * queue depth needs more concurrency or has a slow dependency.
+   */
+  public double getSaturation() {
+    return (double) activeCount.get() / maxConcurrency;
+  }
+
+  @Override
+  public String toString() {
+    return "Bulkhead{name=" + name + ", active=" + getActiveCount() + "/" + maxConcurrency
+        + ", queueDepth=" + getQueueDepth() + '}';
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives every router, or every group of routers when groups are configured, its own
+ * {@link Bulkhead} over the shared dispatcher executor. A router with a slow callback endpoint or
+ * a huge backlog then only fills its own bulkhead. The bulkhead of a router is dropped when the
+ * router is deleted; the metrics are exported from {@link #list()}, so they go with it.
+ */
+public class BulkheadManager {
+
+  private final ConcurrentMap<Long, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+  private final DispatcherExecutor executor;
+  private final int maxConcurrency;
+  private final int groups;
+
+  public BulkheadManager(DispatcherExecutor executor, CoreConfiguration configuration) {
+    this.executor = executor;
+    this.maxConcurrency = configuration.getDispatcherBulkheadConcurrency();
+    this.groups = configuration.getDispatcherBulkheadGroups();
+  }
+
+  public Bulkhead get(Long routerId) {
+    if (groups > 0) {
+      long group = Math.floorMod(routerId, (long) groups);
+      return bulkheads.computeIfAbsent(group,
+          key -> createBulkhead("group-" + key));
+    }
+    return bulkheads.computeIfAbsent(routerId,
+        key -> createBulkhead("router-" + key));
+  }
+
+  private Bulkhead createBulkhead(String name) {
+    return new Bulkhead(name, maxConcurrency, executor);
+  }
+
+  /**
+   * Drops the bulkhead of a deleted router. A group bulkhead is shared and stays. The jobs that
+   * are still queued in it run to completion.
+   */
+  public void remove(Long routerId) {
+    if (groups <= 0) {
+      bulkheads.remove(routerId);
+    }
+  }
+
+  public List<Bulkhead> list() {
+    return new ArrayList<>(bulkheads.values());
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+/**
+ * Decides which node processes a queue and forwards wake-ups to it. Each queue is processed by
+ * its owner only, so the nodes do not contend for the same router lock.
+ */
+public interface ClusterMembership {
+
+  void start();
+
+  boolean isOwner(Long queueId);
+
+  void wakeUp(Long routerId, Long queueId);
+
+  void close();
+
+}
@@ -62,6 +62,141 @@ public interface CoreConfiguration {
       return 10;
     }
 
+    @Override
+    public Integer getJpaLockRetryDelay() {
+      return 10;
+    }
+
+    @Override
+    public Integer getJpaLockRetryDelayMax() {
+      return 500;
+    }
+
+    @Override
+    public Boolean getJpaQueryStatisticsEnabled() {
+      return false;
+    }
+
+    @Override
+    public String getJpaReadReplicaDataSource() {
+      return "";
+    }
+
+    @Override
+    public Integer getJpaBatchSize() {
+      return 50;
+    }
+
+    @Override
+    public Integer getTaskArchiveAge() {
+      return 0;
+    }
+
+    @Override
+    public Integer getTaskArchiveBatchSize() {
+      return 100;
+    }
+
+    @Override
+    public Integer getTaskArchivePeriod() {
+      return 300;
+    }
+
+    @Override
+    public Boolean getClusterEnabled() {
+      return false;
+    }
+
+    @Override
+    public String getClusterNodeId() {
+      return "";
+    }
+
+    @Override
+    public Integer getClusterHeartbeatInterval() {
+      return 5;
+    }
+
+    @Override
+    public Integer getClusterNodeTimeout() {
+      return 15;
+    }
+
+    @Override
+    public Integer getClusterSignalPollInterval() {
+      return 200;
+    }
+
+    @Override
+    public Integer getDispatcherBulkheadConcurrency() {
+      return 4;
+    }
+
+    @Override
+    public Integer getDispatcherBulkheadGroups() {
+      return 0;
+    }
+
+    @Override
+    public String getDispatcherExecutor() {
+      return "platform";
+    }
+
+    @Override
+    public Integer getDispatcherCoalesceInterval() {
+      return 5;
+    }
+
+    @Override
+    public Integer getQueueMetricsPeriod() {
+      return 15;
+    }
+
+    @Override
+    public Integer getQueueStatisticsWindow() {
+      return 300;
+    }
+
+    @Override
+    public Integer getEventBufferSize() {
+      return 256;
+    }
+
+    @Override
+    public Integer getQueueMappingAsyncThreshold() {
+      return 1000;
+    }
+
+    @Override
+    public Integer getQueueMappingBatchSize() {
+      return 500;
+    }
+
+    @Override
+    public Integer getAgentHeartbeatTtl() {
+      return 30;
+    }
+
+    @Override
+    public Integer getTaskAdmissionRouterRate() {
+      return 0;
+    }
+
+    @Override
+    public Integer getTaskAdmissionMaxWaiting() {
+      return 0;
+    }
+
+    @Override
+    public Integer getTaskAdmissionMaxBacklog() {
+      return 10000;
+    }
+
+    @Override
+    public Integer getTaskAdmissionRetryAfter() {
+      return 5;
+    }
+
     @Override
     public Boolean getApiEnableExpressionSkillValidation() {
       return false;
@@ -95,6 +230,60 @@ public interface CoreConfiguration {
 
   Integer getJpaLockRetryCount();
 
+  Integer getJpaLockRetryDelay();
+
+  Integer getJpaLockRetryDelayMax();
+
+  Boolean getJpaQueryStatisticsEnabled();
+
+  String getJpaReadReplicaDataSource();
+
+  Integer getJpaBatchSize();
+
+  Integer getTaskArchiveAge();
+
+  Integer getTaskArchiveBatchSize();
+
+  Integer getTaskArchivePeriod();
+
+  Boolean getClusterEnabled();
+
+  String getClusterNodeId();
+
+  Integer getClusterHeartbeatInterval();
+
+  Integer getClusterNodeTimeout();
+
+  Integer getClusterSignalPollInterval();
+
+  Integer getDispatcherBulkheadConcurrency();
+
+  Integer getDispatcherBulkheadGroups();
+
+  String getDispatcherExecutor();
+
+  Integer getDispatcherCoalesceInterval();
+
+  Integer getQueueMetricsPeriod();
+
+  Integer getQueueStatisticsWindow();
+
+  Integer getEventBufferSize();
+
+  Integer getQueueMappingAsyncThreshold();
+
+  Integer getQueueMappingBatchSize();
+
+  Integer getAgentHeartbeatTtl();
+
+  Integer getTaskAdmissionRouterRate();
+
+  Integer getTaskAdmissionMaxWaiting();
+
+  Integer getTaskAdmissionMaxBacklog();
+
+  Integer getTaskAdmissionRetryAfter();
+
   Boolean getApiEnableExpressionSkillValidation();
 
   Boolean getApiEnableAgentCapabilitiesValidation();
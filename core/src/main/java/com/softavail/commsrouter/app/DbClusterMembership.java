@@ -0,0 +1,267 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.google.common.hash.Hashing;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.ClusterSignal;
+import com.softavail.commsrouter.jpa.JpaDbFacade;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Cluster membership through the shared database. Every node writes a heartbeat to cluster_node
+ * and reads the live nodes back. The owner of a queue is chosen by rendezvous hashing over the
+ * live nodes, so all nodes agree on it without further coordination and only the queues of a
+ * joining or leaving node move. Wake-ups for queues owned by other nodes are written to
+ * cluster_signal and picked up by the owner.
+ *
+ * <p>Ownership only keeps the nodes from doing the same work: assignments are still made under
+ * the router lock, so a queue processed by two nodes while they disagree is safe.
+ */
+public class DbClusterMembership implements ClusterMembership {
+
+  private static final Logger LOGGER = LogManager.getLogger(DbClusterMembership.class);
+
+  private static final boolean DO_NOT_INTERRUPT_IF_RUNNING = false;
+
+  private final JpaDbFacade db;
+  private final String nodeId;
+  private final long heartbeatSeconds;
+  private final long nodeTimeoutSeconds;
+  private final long signalPollMillis;
+  private final ScheduledThreadPoolExecutor threadPool;
+  private final BiConsumer<Long, Long> wakeUpListener;
+  private final Runnable ownershipListener;
+
+  private volatile List<String> liveNodes = Collections.emptyList();
+  private ScheduledFuture<?> heartbeatFuture;
+  private ScheduledFuture<?> signalFuture;
+
+  public DbClusterMembership(
+      JpaDbFacade db,
+      String nodeId,
+      long heartbeatSeconds,
+      long nodeTimeoutSeconds,
+      long signalPollMillis,
+      ScheduledThreadPoolExecutor threadPool,
+      BiConsumer<Long, Long> wakeUpListener,
+      Runnable ownershipListener) {
+
+    this.db = db;
+    this.nodeId = nodeId;
+    this.heartbeatSeconds = heartbeatSeconds;
+    this.nodeTimeoutSeconds = nodeTimeoutSeconds;
+    this.signalPollMillis = signalPollMillis;
+    this.threadPool = threadPool;
+    this.wakeUpListener = wakeUpListener;
+    this.ownershipListener = ownershipListener;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public List<String> getLiveNodes() {
+    return liveNodes;
+  }
+
+  @Override
+  public synchronized void start() {
+    LOGGER.info("Cluster node {}: joining", nodeId);
+    try {
+      heartbeat();
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Cluster node {}: first heartbeat failed: {}", nodeId, ex, ex);
+    }
+    heartbeatFuture = threadPool.scheduleWithFixedDelay(this::runHeartbeat,
+        heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    signalFuture = threadPool.scheduleWithFixedDelay(this::runPollSignals,
+        signalPollMillis, signalPollMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void close() {
+    LOGGER.info("Cluster node {}: leaving", nodeId);
+    if (heartbeatFuture != null) {
+      heartbeatFuture.cancel(DO_NOT_INTERRUPT_IF_RUNNING);
+      signalFuture.cancel(DO_NOT_INTERRUPT_IF_RUNNING);
+    }
+    try {
+      db.transactionManager.executeVoid(em -> db.cluster.deleteNode(em, nodeId));
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.warn("Cluster node {}: could not leave, the other nodes will time it out: {}",
+          nodeId, ex.getMessage());
+    }
+    liveNodes = Collections.emptyList();
+  }
+
+  @Override
+  public boolean isOwner(Long queueId) {
+    List<String> nodes = liveNodes;
+    if (nodes.isEmpty()) {
+      // We can't see the cluster. Processing everything is safe, just not efficient.
+      return true;
+    }
+    return nodeId.equals(getOwner(queueId, nodes));
+  }
+
+  @Override
+  public void wakeUp(Long routerId, Long queueId) {
+    String owner = getOwner(queueId, liveNodes);
+    if (owner == null || owner.equals(nodeId)) {
+      wakeUpListener.accept(routerId, queueId);
+      return;
+    }
+    try {
+      db.transactionManager.executeVoid(em -> db.cluster.addSignal(em, owner, routerId, queueId));
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Cluster node {}: failed to wake up queue {} on {}, processing it here: {}",
+          nodeId, queueId, owner, ex, ex);
+      wakeUpListener.accept(routerId, queueId);
+    }
+  }
+
+  static String getOwner(Long queueId, List<String> nodes) {
+    String owner = null;
+    long ownerScore = Long.MIN_VALUE;
+    for (String node : nodes) {
+      long score = Hashing.murmur3_128().newHasher()
+          .putString(node, StandardCharsets.UTF_8)
+          .putLong(queueId)
+          .hash()
+          .asLong();
+      if (owner == null || score > ownerScore) {
+        owner = node;
+        ownerScore = score;
+      }
+    }
+    return owner;
+  }
+
+  public void heartbeat() throws CommsRouterException {
+    List<String> nodes = db.transactionManager.execute(em -> {
+      // The database clock, as the clocks of the nodes may disagree by more than the timeout
+      Date now = db.cluster.getDatabaseTime(em);
+      Date aliveAfter = new Date(now.getTime() - TimeUnit.SECONDS.toMillis(nodeTimeoutSeconds));
+      db.cluster.heartbeat(em, nodeId, now);
+      db.cluster.deleteDeadNodes(em, aliveAfter);
+      return db.cluster.listLiveNodes(em, aliveAfter);
+    });
+    List<String> previous = liveNodes;
+    liveNodes = Collections.unmodifiableList(nodes);
+    if (!nodes.equals(previous)) {
+      LOGGER.info("Cluster node {}: live nodes {} => {}", nodeId, previous, nodes);
+      ownershipListener.run();
+    }
+  }
+
+  public int pollSignals() throws CommsRouterException {
+    List<ClusterSignal> signals =
+        db.transactionManager.execute(em -> db.cluster.takeSignals(em, nodeId));
+    Map<Long, Long> queues = new LinkedHashMap<>();
+    signals.forEach(signal -> queues.put(signal.getQueueId(), signal.getRouterId()));
+    queues.forEach((queueId, routerId) -> wakeUpListener.accept(routerId, queueId));
+    return queues.size();
+  }
+
+  private void runHeartbeat() {
+    try {
+      heartbeat();
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Cluster node {}: heartbeat failed: {}", nodeId, ex, ex);
+    }
+  }
+
+  private void runPollSignals() {
+    try {
+      pollSignals();
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Cluster node {}: polling signals failed: {}", nodeId, ex, ex);
+    }
+  }
+
+  public static class Builder {
+
+    private JpaDbFacade db;
+    private String nodeId;
+    private long heartbeatSeconds;
+    private long nodeTimeoutSeconds;
+    private long signalPollMillis;
+    private ScheduledThreadPoolExecutor threadPool;
+    private BiConsumer<Long, Long> wakeUpListener;
+    private Runnable ownershipListener;
+
+    public Builder setDb(JpaDbFacade db) {
+      this.db = db;
+      return this;
+    }
+
+    public Builder setNodeId(String nodeId) {
+      this.nodeId = nodeId;
+      return this;
+    }
+
+    public Builder setHeartbeatSeconds(long heartbeatSeconds) {
+      this.heartbeatSeconds = heartbeatSeconds;
+      return this;
+    }
+
+    public Builder setNodeTimeoutSeconds(long nodeTimeoutSeconds) {
+      this.nodeTimeoutSeconds = nodeTimeoutSeconds;
+      return this;
+    }
+
+    public Builder setSignalPollMillis(long signalPollMillis) {
+      this.signalPollMillis = signalPollMillis;
+      return this;
+    }
+
+    public Builder setThreadPool(ScheduledThreadPoolExecutor threadPool) {
+      this.threadPool = threadPool;
+      return this;
+    }
+
+    public Builder setWakeUpListener(BiConsumer<Long, Long> wakeUpListener) {
+      this.wakeUpListener = wakeUpListener;
+      return this;
+    }
+
+    public Builder setOwnershipListener(Runnable ownershipListener) {
+      this.ownershipListener = ownershipListener;
+      return this;
+    }
+
+    public DbClusterMembership build() {
+      return new DbClusterMembership(db, nodeId, heartbeatSeconds, nodeTimeoutSeconds,
+          signalPollMillis, threadPool, wakeUpListener, ownershipListener);
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import io.micrometer.core.instrument.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces the requests to process a queue. The first request marks the queue dirty and arms a
+ * flush after the coalesce interval, the requests that come meanwhile find the queue already
+ * marked. During a burst of task creations the processor of a queue is woken up once per interval
+ * instead of once per task. With a zero interval the queue is processed on every request.
+ */
+public class DispatchTriggers {
+
+  private static final Logger LOGGER = LogManager.getLogger(DispatchTriggers.class);
+
+  private final ScheduledExecutorService threadPool;
+  private final long coalesceMillis;
+  private final BiConsumer<Long, Long> processor;
+  // Queue id to router id
+  private final ConcurrentMap<Long, Long> dirtyQueues = new ConcurrentHashMap<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  public DispatchTriggers(ScheduledExecutorService threadPool, long coalesceMillis,
+      BiConsumer<Long, Long> processor) {
+    this.threadPool = threadPool;
+    this.coalesceMillis = coalesceMillis;
+    this.processor = processor;
+  }
+
+  public void trigger(Long routerId, Long queueId) {
+    if (coalesceMillis <= 0) {
+      processor.accept(routerId, queueId);
+      return;
+    }
+    if (dirtyQueues.putIfAbsent(queueId, routerId) != null) {
+      Metrics.counter("router.dispatch.coalesced").increment();
+      return;
+    }
+    // A flush that already started has cleared the flag, so it is armed again for this queue
+    if (flushScheduled.compareAndSet(false, true)) {
+      threadPool.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  void flush() {
+    flushScheduled.set(false);
+    for (Long queueId : dirtyQueues.keySet()) {
+      Long routerId = dirtyQueues.remove(queueId);
+      if (routerId == null) {
+        continue;
+      }
+      try {
+        processor.accept(routerId, queueId);
+      } catch (RuntimeException e) {
+        LOGGER.error("Failure processing queue {}: {}", queueId, e, e);
+      }
+    }
+  }
+
+  int size() {
+    return dirtyQueues.size();
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads of the task dispatcher. Timers and work are kept apart: a timer only hands a task
+ * over to {@link #execute(Runnable)} when it fires, so a slow database or callback can not delay
+ * the other timers, and the work threads can be sized, or not sized at all, for blocking calls.
+ */
+public interface DispatcherExecutor extends Executor {
+
+  /**
+   * Runs blocking work: transactions, callbacks.
+   */
+  @Override
+  void execute(Runnable task);
+
+  /**
+   * Runs the task on the timer thread after the delay. The task must not block, it should hand
+   * the real work over to {@link #execute(Runnable)}.
+   */
+  ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+  boolean isShutdown();
+
+  void shutdown(long waitSeconds);
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.ExpressionException;
+import com.softavail.commsrouter.domain.AttributeGroup;
+import com.softavail.commsrouter.domain.Plan;
+import com.softavail.commsrouter.domain.Route;
+import com.softavail.commsrouter.domain.Rule;
+import com.softavail.commsrouter.eval.CommsRouterEvaluator;
+import com.softavail.commsrouter.eval.CommsRouterEvaluatorFactory;
+import com.softavail.commsrouter.eval.JEvalEvaluator;
+import com.softavail.commsrouter.eval.RuleDecisionTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The rules and routes of a plan compiled for task creation. Holds only ids and values, so it can
+ * be shared between threads and used without the plan entities. The rules a task is checked
+ * against are narrowed by a {@link RuleDecisionTree} first.
+ */
+public class PlanSnapshot {
+
+  public static class CompiledRoute {
+
+    private final Long id;
+    private final Long queueId;
+    private final Long priority;
+    private final Long timeout;
+
+    CompiledRoute(Route route) {
+      this.id = route.getId();
+      this.queueId = route.getQueue() != null ? route.getQueue().getId() : null;
+      this.priority = route.getPriority();
+      this.timeout = route.getTimeout();
+    }
+
+    public static CompiledRoute of(Route route) {
+      return route != null ? new CompiledRoute(route) : null;
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public Long getQueueId() {
+      return queueId;
+    }
+
+    public Long getPriority() {
+      return priority;
+    }
+
+    public Long getTimeout() {
+      return timeout;
+    }
+
+  }
+
+  public static class CompiledRule {
+
+    private final Long id;
+    private final String tag;
+    private final String predicate;
+    private final CommsRouterEvaluator evaluator;
+    // False when the evaluator keeps state between evaluations
+    private final boolean shared;
+    private final List<CompiledRoute> routes;
+
+    CompiledRule(Rule rule, CommsRouterEvaluatorFactory factory, String routerRef)
+        throws ExpressionException {
+
+      this.id = rule.getId();
+      this.tag = rule.getTag();
+      this.predicate = rule.getPredicate();
+      this.evaluator = factory.provide(predicate, routerRef);
+      this.shared = !(evaluator instanceof JEvalEvaluator);
+      List<CompiledRoute> compiledRoutes = new ArrayList<>();
+      rule.getRoutes().forEach(route -> compiledRoutes.add(new CompiledRoute(route)));
+      this.routes = Collections.unmodifiableList(compiledRoutes);
+    }
+
+    public boolean matches(AttributeGroup attributes, CommsRouterEvaluatorFactory factory,
+        String routerRef) throws CommsRouterException {
+
+      CommsRouterEvaluator current = shared ? evaluator : factory.provide(predicate, routerRef);
+      return current.evaluate(attributes);
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public String getTag() {
+      return tag;
+    }
+
+    public List<CompiledRoute> getRoutes() {
+      return routes;
+    }
+
+    /**
+     * @return the route following the given one in this rule, or null if it is the last
+     */
+    public CompiledRoute getNextRoute(Long routeId) {
+      for (int i = 0; i < routes.size() - 1; ++i) {
+        if (Objects.equals(routes.get(i).getId(), routeId)) {
+          return routes.get(i + 1);
+        }
+      }
+      return null;
+    }
+
+  }
+
+  private final Long planId;
+  private final Long routerId;
+  private final Integer version;
+  private final List<CompiledRule> rules;
+  private final RuleDecisionTree decisionTree;
+  private final CompiledRoute defaultRoute;
+
+  private PlanSnapshot(Plan plan, List<CompiledRule> rules) {
+    this.planId = plan.getId();
+    this.routerId = plan.getRouter().getId();
+    this.version = plan.getVersion();
+    this.rules = Collections.unmodifiableList(rules);
+    List<CommsRouterEvaluator> evaluators = new ArrayList<>(rules.size());
+    rules.forEach(rule -> evaluators.add(rule.evaluator));
+    this.decisionTree = new RuleDecisionTree(evaluators);
+    this.defaultRoute = CompiledRoute.of(plan.getDefaultRoute());
+  }
+
+  public static PlanSnapshot compile(Plan plan, CommsRouterEvaluatorFactory factory)
+      throws ExpressionException {
+
+    String routerRef = plan.getRouter().getRef();
+    List<CompiledRule> rules = new ArrayList<>();
+    for (Rule rule : plan.getRules()) {
+      rules.add(new CompiledRule(rule, factory, routerRef));
+    }
+    return new PlanSnapshot(plan, rules);
+  }
+
+  public Long getPlanId() {
+    return planId;
+  }
+
+  public Long getRouterId() {
+    return routerId;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public List<CompiledRule> getRules() {
+    return rules;
+  }
+
+  /**
+   * @return the rules that can match the requirements, in plan order
+   */
+  public List<CompiledRule> getCandidateRules(AttributeGroup requirements) {
+    int[] candidates = decisionTree.candidates(requirements);
+    if (candidates.length == rules.size()) {
+      return rules;
+    }
+    List<CompiledRule> result = new ArrayList<>(candidates.length);
+    for (int candidate : candidates) {
+      result.add(rules.get(candidate));
+    }
+    return result;
+  }
+
+  public CompiledRoute getDefaultRoute() {
+    return defaultRoute;
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The compiled plans of each router, by plan ref, and their rules by id. A snapshot is replaced
+ * only by a newer one - a later plan or a later version of the same plan - so a slow reader can
+ * not bring back a plan that was already swapped. The plan service invalidates the snapshot of a
+ * plan after every change it commits. Every invalidation bumps the generation, a snapshot compiled
+ * from a read that started before it is not cached - it may hold the plan that was just changed.
+ */
+public class PlanSnapshots {
+
+  private final ConcurrentMap<String, ConcurrentMap<String, PlanSnapshot>> routers =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, PlanSnapshot.CompiledRule> rules = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Read before loading a plan, then passed to {@link #put}.
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public PlanSnapshot get(String routerRef, String planRef) {
+    Map<String, PlanSnapshot> plans = routers.get(routerRef);
+    return plans != null ? plans.get(planRef) : null;
+  }
+
+  /**
+   * @return the cached snapshot, or the given one if it was not cached
+   */
+  public PlanSnapshot put(String routerRef, String planRef, PlanSnapshot snapshot,
+      long readGeneration) {
+
+    PlanSnapshot current = routers.computeIfAbsent(routerRef, key -> new ConcurrentHashMap<>())
+        .compute(planRef, (key, existing) -> {
+          if (generation.get() != readGeneration) {
+            return existing;
+          }
+          return existing == null || isNewer(snapshot, existing) ? snapshot : existing;
+        });
+    if (current == snapshot) {
+      snapshot.getRules().forEach(rule -> rules.put(rule.getId(), rule));
+    }
+    return current != null ? current : snapshot;
+  }
+
+  public void invalidate(String routerRef, String planRef) {
+    generation.incrementAndGet();
+    Map<String, PlanSnapshot> plans = routers.get(routerRef);
+    if (plans == null) {
+      return;
+    }
+    PlanSnapshot removed = plans.remove(planRef);
+    if (removed != null) {
+      removed.getRules().forEach(rule -> rules.remove(rule.getId(), rule));
+    }
+  }
+
+  public void invalidateRouter(String routerRef) {
+    generation.incrementAndGet();
+    Map<String, PlanSnapshot> plans = routers.remove(routerRef);
+    if (plans != null) {
+      plans.values().forEach(plan -> plan.getRules().forEach(rule -> rules.remove(rule.getId())));
+    }
+  }
+
+  public void clear() {
+    generation.incrementAndGet();
+    routers.clear();
+    rules.clear();
+  }
+
+  public PlanSnapshot.CompiledRule getRule(Long ruleId) {
+    return rules.get(ruleId);
+  }
+
+  private static boolean isNewer(PlanSnapshot candidate, PlanSnapshot existing) {
+    int byPlan = candidate.getPlanId().compareTo(existing.getPlanId());
+    if (byPlan != 0) {
+      return byPlan > 0;
+    }
+    return candidate.getVersion() > existing.getVersion();
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed pool of platform threads for the work and a single timer thread.
+ */
+public class PlatformDispatcherExecutor implements DispatcherExecutor {
+
+  private final ScheduledThreadPoolExecutor timers;
+  private final ExecutorService workers;
+
+  public PlatformDispatcherExecutor(int threadPoolSize) {
+    this.timers = new ScheduledThreadPoolExecutor(1);
+    this.timers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.workers = Executors.newFixedThreadPool(threadPoolSize);
+    new ExecutorServiceMetrics(timers, "dispatcher.timers", Tags.empty())
+        .bindTo(Metrics.globalRegistry);
+    new ExecutorServiceMetrics(workers, "dispatcher.workers", Tags.empty())
+        .bindTo(Metrics.globalRegistry);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    workers.execute(task);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    return timers.schedule(task, delay, unit);
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return workers.isShutdown();
+  }
+
+  @Override
+  public void shutdown(long waitSeconds) {
+    ThreadPoolKiller.shutdown(timers, "TaskDispatcher timers", waitSeconds);
+    ThreadPoolKiller.shutdown(workers, "TaskDispatcher", waitSeconds);
+  }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.Agent;
+import com.softavail.commsrouter.domain.AgentQueueMapping;
+import com.softavail.commsrouter.domain.Queue;
+import com.softavail.commsrouter.eval.CommsRouterEvaluator;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+
+/**
+ * Maps the agents of a router to the pending predicate of a queue in the background, a bounded
+ * batch of agents per transaction. The router config lock is held only for a batch, so agents can
+ * be created and updated meanwhile - they map themselves to both the current and the pending
+ * version of the queue. When all agents are mapped the pending version becomes the current one in
+ * a single transaction and the mappings of the previous versions are deleted.
+ *
+ * <p>A mapping is abandoned when the queue is deleted or its predicate is changed again. Mappings
+ * interrupted by a restart are resumed by {@link #resumePending()}.
+ */
+public class QueueMappingBuilder {
+
+  private static final Logger LOGGER = LogManager.getLogger(QueueMappingBuilder.class);
+
+  /**
+   * The progress of a running mapping.
+   */
+  public static class Progress {
+
+    private final long version;
+    private final long totalAgents;
+    private final AtomicLong evaluatedAgents = new AtomicLong();
+    private final AtomicLong matchedAgents = new AtomicLong();
+
+    Progress(long version, long totalAgents) {
+      this.version = version;
+      this.totalAgents = totalAgents;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    public long getTotalAgents() {
+      return totalAgents;
+    }
+
+    public long getEvaluatedAgents() {
+      return evaluatedAgents.get();
+    }
+
+    public long getMatchedAgents() {
+      return matchedAgents.get();
+    }
+
+  }
+
+  private static class Batch {
+    long lastAgentId;
+    int agentCount;
+    int matchedCount;
+  }
+
+  private final AppContext app;
+  private final ExecutorService threadPool;
+  private final ConcurrentMap<Long, Progress> running = new ConcurrentHashMap<>();
+
+  public QueueMappingBuilder(AppContext app) {
+    this.app = app;
+    this.threadPool = Executors.newSingleThreadExecutor();
+  }
+
+  public void close() {
+    ThreadPoolKiller.shutdown(threadPool, "QueueMappingBuilder");
+  }
+
+  /**
+   * Starts the mapping once the transaction that set the pending version of the queue commits.
+   */
+  public void startAfterCommit(EntityManager em, Queue queue) {
+    Long routerId = queue.getRouter().getId();
+    Long queueId = queue.getId();
+    long version = queue.getPendingMappingVersion();
+    JpaTransactionManager.afterCommit(em, () -> start(routerId, queueId, version));
+  }
+
+  public void resumePending() throws CommsRouterException {
+    List<Queue> queues =
+        app.db.transactionManager.executeReadOnly(app.db.queue::listPendingMapping);
+    for (Queue queue : queues) {
+      LOGGER.info("Queue {}: resuming the mapping of version {}", queue.getRef(),
+          queue.getPendingMappingVersion());
+      start(queue.getRouter().getId(), queue.getId(), queue.getPendingMappingVersion());
+    }
+  }
+
+  public Progress getProgress(Long queueId) {
+    return running.get(queueId);
+  }
+
+  private void start(Long routerId, Long queueId, long version) {
+    threadPool.execute(() -> {
+      try {
+        build(routerId, queueId, version);
+      } catch (CommsRouterException | RuntimeException ex) {
+        LOGGER.error("Queue {}: mapping version {} failed: {}", queueId, version, ex, ex);
+      }
+    });
+  }
+
+  private void build(Long routerId, Long queueId, long version) throws CommsRouterException {
+    long started = System.currentTimeMillis();
+    long totalAgents = app.db.transactionManager.executeReadOnly(
+        em -> app.db.agent.countByRouterId(em, routerId));
+    Progress progress = new Progress(version, totalAgents);
+    running.put(queueId, progress);
+    try {
+      int batchSize = app.coreConfiguration.getQueueMappingBatchSize();
+      long lastAgentId = 0;
+      Batch batch;
+      do {
+        long afterId = lastAgentId;
+        batch = app.db.transactionManager.executeWithLockRetry(
+            em -> mapBatch(em, routerId, queueId, version, afterId, batchSize));
+        if (batch == null) {
+          LOGGER.info("Queue {}: mapping version {} abandoned", queueId, version);
+          return;
+        }
+        lastAgentId = batch.lastAgentId;
+        progress.evaluatedAgents.addAndGet(batch.agentCount);
+        progress.matchedAgents.addAndGet(batch.matchedCount);
+      } while (batch.agentCount == batchSize && !threadPool.isShutdown());
+
+      if (threadPool.isShutdown()) {
+        return;
+      }
+      boolean activated = app.db.transactionManager.executeWithLockRetry(
+          em -> activate(em, routerId, queueId, version));
+      if (activated) {
+        LOGGER.info("Queue {}: mapping version {} active, {} of {} agents matched in {} ms",
+            queueId, version, progress.getMatchedAgents(), progress.getEvaluatedAgents(),
+            System.currentTimeMillis() - started);
+        app.taskDispatcher.dispatchQueue(routerId, queueId);
+      }
+    } finally {
+      running.remove(queueId, progress);
+    }
+  }
+
+  // The queue is read after the lock, so a concurrent predicate change is seen here
+  private Queue getPendingQueue(EntityManager em, Long routerId, Long queueId, long version) {
+    app.db.router.lockConfig(em, routerId);
+    Queue queue = em.find(Queue.class, queueId);
+    if (queue == null || !Long.valueOf(version).equals(queue.getPendingMappingVersion())) {
+      return null;
+    }
+    return queue;
+  }
+
+  private Batch mapBatch(EntityManager em, Long routerId, Long queueId, long version,
+      long afterId, int batchSize) throws CommsRouterException {
+
+    Queue queue = getPendingQueue(em, routerId, queueId, version);
+    if (queue == null) {
+      return null;
+    }
+    Batch batch = new Batch();
+    batch.lastAgentId = afterId;
+    List<Agent> agents = app.db.agent.listAfterId(em, routerId, afterId, batchSize);
+    if (agents.isEmpty()) {
+      return batch;
+    }
+    batch.agentCount = agents.size();
+    batch.lastAgentId = agents.get(agents.size() - 1).getId();
+
+    // Agents created or updated since the mapping started have mapped themselves already
+    Map<Long, AgentQueueMapping> currentMappings = new HashMap<>();
+    app.db.queue.listMappings(em, queueId, version, agents.get(0).getId(), batch.lastAgentId)
+        .forEach(mapping -> currentMappings.put(mapping.getAgent().getId(), mapping));
+
+    CommsRouterEvaluator evaluator = app.evaluatorFactory
+        .provide(queue.getPendingPredicate(), queue.getRouter().getRef());
+    for (Agent agent : agents) {
+      boolean matches;
+      try {
+        matches = evaluator.evaluate(agent.getCapabilities());
+      } catch (CommsRouterException | RuntimeException ex) {
+        LOGGER.error("Queue {}: failure evaluating agent {}: {}", queue.getRef(), agent.getRef(),
+            ex, ex);
+        matches = false;
+      }
+      AgentQueueMapping mapping = currentMappings.get(agent.getId());
+      if (matches) {
+        ++batch.matchedCount;
+        if (mapping == null) {
+          em.persist(new AgentQueueMapping(agent, queue, version));
+        }
+      } else if (mapping != null) {
+        em.remove(mapping);
+      }
+    }
+    return batch;
+  }
+
+  private boolean activate(EntityManager em, Long routerId, Long queueId, long version) {
+    Queue queue = getPendingQueue(em, routerId, queueId, version);
+    if (queue == null) {
+      return false;
+    }
+    int deleted = app.db.queue.deleteOtherMappings(em, queueId, version);
+    LOGGER.info("Queue {}: {} mappings of the previous versions deleted", queue.getRef(), deleted);
+    queue.setPredicate(queue.getPendingPredicate());
+    queue.setMappingVersion(version);
+    queue.setPendingPredicate(null);
+    queue.setPendingMappingVersion(null);
+    return true;
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.result.QueueWaitingResult;
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically counts the waiting tasks of every queue with one grouped query and keeps the
+ * result for the router.queue.waiting and router.queue.oldest.age metrics. Counting on every
+ * scrape would cost a query per queue. Each refresh replaces the previous one, so a deleted queue
+ * or router is no longer reported. The registered meters of this Micrometer version can not be
+ * removed, the exporter reads {@link #getQueues()} instead.
+ */
+public class QueueMetrics {
+
+  private static final Logger LOGGER = LogManager.getLogger(QueueMetrics.class);
+
+  private final AppContext app;
+  private final ScheduledThreadPoolExecutor threadPool;
+  private volatile List<QueueWaitingResult> queues = Collections.emptyList();
+
+  public QueueMetrics(AppContext app) {
+    this.app = app;
+    this.threadPool = new ScheduledThreadPoolExecutor(1);
+    this.threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  public void start() {
+    Integer period = app.coreConfiguration.getQueueMetricsPeriod();
+    if (period == null || period <= 0) {
+      LOGGER.info("Queue metrics are disabled");
+      return;
+    }
+    threadPool.scheduleWithFixedDelay(this::run, 0, period, TimeUnit.SECONDS);
+  }
+
+  public void close() {
+    ThreadPoolKiller.shutdown(threadPool, "QueueMetrics");
+  }
+
+  private void run() {
+    try {
+      update();
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Updating the queue metrics failed: {}", ex, ex);
+    }
+  }
+
+  public void update() throws CommsRouterException {
+    queues = Collections.unmodifiableList(
+        app.db.transactionManager.executeReadOnly(app.db.task::listWaitingByQueue));
+  }
+
+  /**
+   * @return the queues that existed at the last refresh
+   */
+  public List<QueueWaitingResult> getQueues() {
+    return queues;
+  }
+
+  public static long getOldestAgeSeconds(QueueWaitingResult queue, long nowMillis) {
+    if (queue.count == 0 || queue.oldestCreateDate == null) {
+      return 0;
+    }
+    return TimeUnit.MILLISECONDS.toSeconds(nowMillis - queue.oldestCreateDate.getTime());
+  }
+
+}
@@ -18,13 +18,14 @@ package com.softavail.commsrouter.app;
 
 import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.jfr.RoutingEvents;
 import com.softavail.commsrouter.jpa.JpaDbFacade;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Optional;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.EntityManager;
 
 /**
@@ -34,22 +35,25 @@ public class QueueProcessor {
 
   private static final Logger LOGGER = LogManager.getLogger(QueueProcessor.class);
 
+  private static final QueueProcessorState[] STATES = QueueProcessorState.values();
+
   private final Long routerId;
   private final Long queueId;
   private final JpaDbFacade db;
   private final TaskDispatcher taskDispatcher;
-  private final ScheduledThreadPoolExecutor threadPool;
+  private final Bulkhead bulkhead;
   private final long processRetryDelaySeconds;
   private final StateChangeListener stateChangeListener;
 
-  private QueueProcessorState state;
+  // Ordinal of the QueueProcessorState, changed by compare-and-set only
+  private final AtomicInteger state = new AtomicInteger(QueueProcessorState.IDLE.ordinal());
 
   public QueueProcessor(
       Long routerId,
       Long queueId,
       JpaDbFacade db,
       TaskDispatcher taskDispatcher,
-      ScheduledThreadPoolExecutor threadPool,
+      Bulkhead bulkhead,
       long processRetryDelaySeconds,
       StateChangeListener stateChangeListener) {
 
@@ -57,60 +61,99 @@ public class QueueProcessor {
     this.queueId = queueId;
     this.db = db;
     this.taskDispatcher = taskDispatcher;
-    this.threadPool = threadPool;
+    this.bulkhead = bulkhead;
     this.processRetryDelaySeconds = processRetryDelaySeconds;
     this.stateChangeListener = stateChangeListener;
-    this.state = QueueProcessorState.IDLE;
   }
 
   public Long getQueueId() {
     return queueId;
   }
 
-  public synchronized void process() {
-    LOGGER.debug("Queue processor {}: process in {}", queueId, state);
-    switch (state) {
-      case IDLE:
-        changeState(QueueProcessorState.CONSUME);
-        threadPool.submit(this::processQueue);
-        break;
-      case CONSUME:
-        changeState(QueueProcessorState.MUST_CONSUME);
-        break;
-      case MUST_CONSUME:
-      default:
-        break;
+  public void process() {
+    for (; ; ) {
+      QueueProcessorState current = STATES[state.get()];
+      LOGGER.debug("Queue processor {}: process in {}", queueId, current);
+      switch (current) {
+        case IDLE:
+          if (changeState(current, QueueProcessorState.CONSUME)) {
+            bulkhead.execute(this::processQueue);
+            return;
+          }
+          break;
+        case CONSUME:
+          if (changeState(current, QueueProcessorState.MUST_CONSUME)) {
+            return;
+          }
+          break;
+        case MUST_CONSUME:
+        default:
+          return;
+      }
+    }
+  }
+
+  /**
+   * Makes a working processor consume once more without starting it.
+   *
+   * @return false if the processor is idle and must be started with {@link #process()}
+   */
+  public boolean processIfWorking() {
+    for (; ; ) {
+      QueueProcessorState current = STATES[state.get()];
+      switch (current) {
+        case CONSUME:
+          if (changeState(current, QueueProcessorState.MUST_CONSUME)) {
+            return true;
+          }
+          break;
+        case MUST_CONSUME:
+          return true;
+        case IDLE:
+        default:
+          return false;
+      }
     }
   }
 
-  private synchronized boolean tryComplete() {
-    LOGGER.debug("Queue processor {}: complete in {}", queueId, state);
-    switch (state) {
-      case MUST_CONSUME:
-        changeState(QueueProcessorState.CONSUME);
-        return false;
-      case CONSUME:
-        changeState(QueueProcessorState.IDLE);
-        return true;
-      default:
+  private boolean tryComplete() {
+    for (; ; ) {
+      QueueProcessorState current = STATES[state.get()];
+      LOGGER.debug("Queue processor {}: complete in {}", queueId, current);
+      switch (current) {
+        case MUST_CONSUME:
+          if (changeState(current, QueueProcessorState.CONSUME)) {
+            return false;
+          }
+          break;
+        case CONSUME:
+          if (changeState(current, QueueProcessorState.IDLE)) {
+            return true;
+          }
+          break;
+        default:
+          LOGGER.error("Queue processor {}: invalid complete state: {}", queueId, current);
+          throw new RuntimeException(
+              "Queue processor " + queueId + ": invalid complete state: " + current);
+      }
     }
-    LOGGER.error("Queue processor {}: invalid complete state: {}", queueId, state);
-    throw new RuntimeException(
-        "Queue processor " + queueId + ": invalid complete state: " + state);
   }
 
-  private void changeState(QueueProcessorState newState) {
-    LOGGER.debug("Queue processor {}:  change {} => {}", queueId, state, newState);
-    QueueProcessorState oldState = state;
-    state = newState;
+  private boolean changeState(QueueProcessorState oldState, QueueProcessorState newState) {
+    if (!state.compareAndSet(oldState.ordinal(), newState.ordinal())) {
+      return false;
+    }
+    LOGGER.debug("Queue processor {}:  change {} => {}", queueId, oldState, newState);
+    RoutingEvents.queueProcessorStateChanged(routerId, queueId, oldState, newState);
     if (stateChangeListener != null) {
       StateChangeEvent changeEvent = new StateChangeEvent(queueId, oldState, newState);
       stateChangeListener.stateChanged(changeEvent);
     }
+    return true;
   }
 
-  public synchronized boolean isWorking() {
-    return state == QueueProcessorState.CONSUME || state == QueueProcessorState.MUST_CONSUME;
+  public boolean isWorking() {
+    return state.get() != QueueProcessorState.IDLE.ordinal();
   }
 
   private void processQueue() {
@@ -125,7 +168,7 @@ public class QueueProcessor {
       } catch (CommsRouterException | RuntimeException e) {
         // Failed to get assignment. Most probably DB is down, so let's try again a bit later.
         LOGGER.error("Queue processor {}: failure getting assignment: {}", queueId, e, e);
-        threadPool.schedule(this::processQueue, processRetryDelaySeconds, TimeUnit.SECONDS);
+        bulkhead.schedule(this::processQueue, processRetryDelaySeconds, TimeUnit.SECONDS);
         return;
       }
 
@@ -138,7 +181,7 @@ public class QueueProcessor {
         continue;
       }
 
-      taskDispatcher.submitTaskAssignment(taskAssignmentDto.get());
+      taskDispatcher.submitTaskAssignment(routerId, taskAssignmentDto.get());
     }
 
   }
@@ -147,7 +190,8 @@ public class QueueProcessor {
   private Optional<TaskAssignmentDto> getAssignment(EntityManager em)
       throws CommsRouterException {
 
-    return db.queue.findAssignment(em, queueId).map(taskDispatcher::assignTask);
+    return db.queue.findAssignment(em, queueId)
+        .map(matchResult -> taskDispatcher.assignTask(em, matchResult));
   }
 
   public static class Builder {
@@ -156,7 +200,7 @@ public class QueueProcessor {
     private Long queueId;
     private JpaDbFacade db;
     private TaskDispatcher taskDispatcher;
-    private ScheduledThreadPoolExecutor threadPool;
+    private Bulkhead bulkhead;
     private long processRetryDelaySeconds;
     private StateChangeListener stateChangeListener = null;
 
@@ -180,8 +224,8 @@ public class QueueProcessor {
       return this;
     }
 
-    public Builder setThreadPool(ScheduledThreadPoolExecutor threadPool) {
-      this.threadPool = threadPool;
+    public Builder setBulkhead(Bulkhead bulkhead) {
+      this.bulkhead = bulkhead;
       return this;
     }
 
@@ -196,7 +240,7 @@ public class QueueProcessor {
     }
 
     public QueueProcessor build() {
-      return new QueueProcessor(routerId, queueId, db, taskDispatcher, threadPool,
+      return new QueueProcessor(routerId, queueId, db, taskDispatcher, bulkhead,
           processRetryDelaySeconds, stateChangeListener);
     }
   }
@@ -16,72 +16,85 @@
 
 package com.softavail.commsrouter.app;
 
-import com.google.common.collect.Maps;
-
 import com.softavail.commsrouter.domain.dto.mappers.EntityMappers;
 import com.softavail.commsrouter.jpa.JpaDbFacade;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Keeps a processor per queue. Waking up a queue that is already being processed is a single
+ * compare-and-set on the processor state. Starting an idle processor and evicting it lock only the
+ * map entry of that queue, so wake-ups for different queues never wait for each other.
+ *
  * Created by @author mapuo on 23.10.17.
  */
 public class QueueProcessorManager {
 
-  private static final boolean DO_NOT_INTERRUPT_IF_RUNNING = false;
+  private final ConcurrentMap<Long, QueueProcessor> queueProcessors = new ConcurrentHashMap<>();
 
-  private static final QueueProcessorManager instance = new QueueProcessorManager();
+  public QueueProcessorManager() {
+  }
 
-  private final Map<Long, QueueProcessor> queueProcessors = Maps.newHashMap();
-  private final Map<Long, ScheduledFuture> scheduledFutures = Maps.newHashMap();
+  public void processQueue(Long routerId, Long queueId,
+      JpaDbFacade db,
+      EntityMappers mappers,
+      TaskDispatcher taskDispatcher,
+      CoreConfiguration configuration,
+      Bulkhead bulkhead) {
 
-  private QueueProcessorManager() {
-  }
+    QueueProcessor queueProcessor = queueProcessors.get(queueId);
+    if (queueProcessor != null && queueProcessor.processIfWorking()) {
+      return;
+    }
 
-  public static QueueProcessorManager getInstance() {
-    return instance;
+    // An idle processor may be evicted at any time, so it is started under the entry lock
+    queueProcessors.compute(queueId, (id, existing) -> {
+      QueueProcessor processor = existing;
+      if (processor == null) {
+        processor = createQueueProcessor(routerId, queueId, db, taskDispatcher, configuration,
+            bulkhead);
+      }
+      processor.process();
+      return processor;
+    });
   }
 
-  public synchronized void processQueue(Long routerId, Long queueId,
+  private QueueProcessor createQueueProcessor(Long routerId, Long queueId,
       JpaDbFacade db,
-      EntityMappers mappers,
       TaskDispatcher taskDispatcher,
       CoreConfiguration configuration,
-      ScheduledThreadPoolExecutor threadPool) {
+      Bulkhead bulkhead) {
 
-    Optional.ofNullable(scheduledFutures.get(queueId))
-        .ifPresent(scheduledFuture -> scheduledFuture.cancel(DO_NOT_INTERRUPT_IF_RUNNING));
+    AtomicBoolean evictionScheduled = new AtomicBoolean();
+    return new QueueProcessor.Builder()
+        .setRouterId(routerId)
+        .setQueueId(queueId)
+        .setDb(db)
+        .setTaskDispatcher(taskDispatcher)
+        .setBulkhead(bulkhead)
+        .setProcessRetryDelaySeconds(configuration.getQueueProcessRetryDelay())
+        .setStateChangeListener((StateIdleListener) processedQueueId -> {
+          // One pending eviction per processor is enough: it checks the state when it runs
+          if (evictionScheduled.compareAndSet(false, true)) {
+            bulkhead.schedule(() -> {
+              evictionScheduled.set(false);
+              removeQueueProcessor(processedQueueId);
+            }, configuration.getQueueProcessorEvictionDelay(), TimeUnit.MINUTES);
+          }
+        })
+        .build();
+  }
 
-    QueueProcessor queueProcessor = queueProcessors.get(queueId);
-    if (queueProcessor == null) {
-      queueProcessor = new QueueProcessor.Builder()
-          .setRouterId(routerId)
-          .setQueueId(queueId)
-          .setDb(db)
-          .setTaskDispatcher(taskDispatcher)
-          .setThreadPool(threadPool)
-          .setProcessRetryDelaySeconds(configuration.getQueueProcessRetryDelay())
-          .setStateChangeListener((StateIdleListener) processedQueueId -> {
-            ScheduledFuture<?> schedule = threadPool.schedule(
-                () -> removeQueueProcessor(processedQueueId),
-                configuration.getQueueProcessorEvictionDelay(), TimeUnit.MINUTES);
-            scheduledFutures.put(processedQueueId, schedule);
-          })
-          .build();
-      queueProcessors.put(queueId, queueProcessor);
-    }
-    queueProcessor.process();
+  private void removeQueueProcessor(Long queueId) {
+    queueProcessors.computeIfPresent(queueId,
+        (id, queueProcessor) -> queueProcessor.isWorking() ? queueProcessor : null);
   }
 
-  private synchronized void removeQueueProcessor(Long queueId) {
-    QueueProcessor queueProcessor = queueProcessors.get(queueId);
-    if (!queueProcessor.isWorking()) {
-      queueProcessors.remove(queueId);
-    }
+  int size() {
+    return queueProcessors.size();
   }
 
 }
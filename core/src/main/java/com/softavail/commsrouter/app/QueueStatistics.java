@@ -0,0 +1,274 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * In-memory sliding window statistics of the queues and routers of this node, fed with the task
+ * lifecycle events as their transactions commit. The window is a ring of time buckets, so old
+ * events expire one bucket at a time without keeping the individual events around.
+ */
+public class QueueStatistics {
+
+  static final int BUCKET_COUNT = 10;
+
+  private final long windowMillis;
+  private final long bucketMillis;
+  private final LongSupplier clock;
+  private final ConcurrentMap<Long, Window> queues = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, Window> routers = new ConcurrentHashMap<>();
+
+  public QueueStatistics(int windowSeconds) {
+    this(windowSeconds, System::currentTimeMillis);
+  }
+
+  QueueStatistics(int windowSeconds, LongSupplier clock) {
+    this.windowMillis = TimeUnit.SECONDS.toMillis(Math.max(windowSeconds, 1));
+    this.bucketMillis = Math.max(windowMillis / BUCKET_COUNT, 1);
+    this.clock = clock;
+  }
+
+  public void taskCreated(Long routerId, Long queueId) {
+    long now = clock.getAsLong();
+    record(routers, routerId, now, window -> window.taskCreated(now));
+    record(queues, queueId, now, window -> window.taskCreated(now));
+  }
+
+  public void taskAssigned(Long routerId, Long queueId, long waitMillis) {
+    long now = clock.getAsLong();
+    record(routers, routerId, now, window -> window.taskAssigned(now, waitMillis));
+    record(queues, queueId, now, window -> window.taskAssigned(now, waitMillis));
+  }
+
+  public void taskAbandoned(Long routerId, Long queueId, long waitMillis) {
+    long now = clock.getAsLong();
+    record(routers, routerId, now, window -> window.taskAbandoned(now, waitMillis));
+    record(queues, queueId, now, window -> window.taskAbandoned(now, waitMillis));
+  }
+
+  public void taskCompleted(Long routerId, Long queueId, long handleMillis) {
+    long now = clock.getAsLong();
+    record(routers, routerId, now, window -> window.taskCompleted(now, handleMillis));
+    record(queues, queueId, now, window -> window.taskCompleted(now, handleMillis));
+  }
+
+  public QueueStatisticsDto getQueue(Long queueId) {
+    return snapshot(queues.get(queueId));
+  }
+
+  public QueueStatisticsDto getRouter(Long routerId) {
+    return snapshot(routers.get(routerId));
+  }
+
+  /**
+   * Estimates the seconds until a task at the given position gets assigned from the rate at
+   * which the queue was served during the window.
+   *
+   * @return null when no task was assigned from the queue during the window
+   */
+  public Long estimateWait(Long queueId, long queuePosition) {
+    Window window = queues.get(queueId);
+    if (window == null) {
+      return null;
+    }
+    long now = clock.getAsLong();
+    Bucket total = window.merge(now);
+    if (total.assigned == 0) {
+      return null;
+    }
+    long observedMillis = Math.max(Math.min(windowMillis, now - window.created), bucketMillis);
+    double assignedPerMilli = (double) total.assigned / observedMillis;
+    return TimeUnit.MILLISECONDS.toSeconds(Math.round((queuePosition + 1) / assignedPerMilli));
+  }
+
+  /**
+   * @param event records the event in the window, false if the window was evicted meanwhile
+   */
+  private void record(ConcurrentMap<Long, Window> windows, Long id, long now,
+      Predicate<Window> event) {
+
+    while (true) {
+      Window window = windows.get(id);
+      if (window == null) {
+        // Drop the windows of deleted or quiet queues before adding one, so the map stays bounded
+        windows.values().removeIf(idle -> idle.evictIfIdle(now));
+        window = windows.computeIfAbsent(id, key -> new Window(now));
+      }
+      if (event.test(window)) {
+        return;
+      }
+      // Evicted between the lookup and the event, retry with a new window
+      windows.remove(id, window);
+    }
+  }
+
+  private QueueStatisticsDto snapshot(Window window) {
+    QueueStatisticsDto dto = new QueueStatisticsDto();
+    dto.setWindowSeconds(TimeUnit.MILLISECONDS.toSeconds(windowMillis));
+    if (window == null) {
+      return dto;
+    }
+    Bucket total = window.merge(clock.getAsLong());
+    dto.setArrivals(total.arrivals);
+    dto.setAssigned(total.assigned);
+    dto.setAbandoned(total.abandoned);
+    dto.setCompleted(total.completed);
+    long left = total.assigned + total.abandoned;
+    if (left > 0) {
+      dto.setAbandonRate((double) total.abandoned / left);
+    }
+    if (total.assigned > 0) {
+      dto.setAverageWaitMillis(total.waitMillis / total.assigned);
+      dto.setWaitP50Millis(total.waits.getValueAtPercentile(50));
+      dto.setWaitP95Millis(total.waits.getValueAtPercentile(95));
+    }
+    if (total.completed > 0) {
+      dto.setAverageHandleMillis(total.handleMillis / total.completed);
+    }
+    return dto;
+  }
+
+  private class Window {
+
+    private final long created;
+    private final Bucket[] buckets = new Bucket[BUCKET_COUNT];
+    private long lastEvent;
+    private boolean evicted;
+
+    Window(long created) {
+      this.created = created;
+      this.lastEvent = created;
+      for (int i = 0; i < BUCKET_COUNT; ++i) {
+        buckets[i] = new Bucket();
+      }
+    }
+
+    synchronized boolean taskCreated(long now) {
+      if (evicted) {
+        return false;
+      }
+      ++current(now).arrivals;
+      return true;
+    }
+
+    synchronized boolean taskAssigned(long now, long waitMillis) {
+      if (evicted) {
+        return false;
+      }
+      Bucket bucket = current(now);
+      long wait = Math.max(waitMillis, 0);
+      ++bucket.assigned;
+      bucket.waitMillis += wait;
+      bucket.waits.recordValue(wait);
+      return true;
+    }
+
+    synchronized boolean taskAbandoned(long now, long waitMillis) {
+      if (evicted) {
+        return false;
+      }
+      ++current(now).abandoned;
+      return true;
+    }
+
+    synchronized boolean taskCompleted(long now, long handleMillis) {
+      if (evicted) {
+        return false;
+      }
+      Bucket bucket = current(now);
+      ++bucket.completed;
+      bucket.handleMillis += Math.max(handleMillis, 0);
+      return true;
+    }
+
+    /**
+     * Marks an idle window as evicted, an event that found it before it left the map is then
+     * recorded in a new window instead of being lost.
+     */
+    synchronized boolean evictIfIdle(long now) {
+      if (now - lastEvent > windowMillis) {
+        evicted = true;
+      }
+      return evicted;
+    }
+
+    synchronized Bucket merge(long now) {
+      long epoch = now / bucketMillis;
+      Bucket total = new Bucket();
+      for (Bucket bucket : buckets) {
+        if (bucket.epoch > epoch - BUCKET_COUNT && bucket.epoch <= epoch) {
+          total.add(bucket);
+        }
+      }
+      return total;
+    }
+
+    private Bucket current(long now) {
+      lastEvent = now;
+      long epoch = now / bucketMillis;
+      Bucket bucket = buckets[(int) (epoch % BUCKET_COUNT)];
+      if (bucket.epoch != epoch) {
+        bucket.reset(epoch);
+      }
+      return bucket;
+    }
+
+  }
+
+  private static class Bucket {
+
+    private long epoch = -1;
+    private long arrivals;
+    private long assigned;
+    private long abandoned;
+    private long completed;
+    private long waitMillis;
+    private long handleMillis;
+    private final Histogram waits = new Histogram(2);
+
+    void reset(long epoch) {
+      this.epoch = epoch;
+      arrivals = 0;
+      assigned = 0;
+      abandoned = 0;
+      completed = 0;
+      waitMillis = 0;
+      handleMillis = 0;
+      waits.reset();
+    }
+
+    void add(Bucket other) {
+      arrivals += other.arrivals;
+      assigned += other.assigned;
+      abandoned += other.abandoned;
+      completed += other.completed;
+      waitMillis += other.waitMillis;
+      handleMillis += other.handleMillis;
+      waits.add(other.waits);
+    }
+
+  }
+
+}
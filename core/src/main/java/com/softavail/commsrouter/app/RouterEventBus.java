@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.dto.misc.RouterEventDto;
+import com.softavail.commsrouter.api.dto.model.TaskState;
+import com.softavail.commsrouter.domain.Agent;
+import com.softavail.commsrouter.domain.Task;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+
+/**
+ * In-process publish/subscribe of the task and agent state changes of the routers, for the
+ * clients that stream them instead of polling. The changes are published as their transactions
+ * commit. Each subscriber has a bounded buffer and is evicted when it fills up, so a slow consumer
+ * never blocks the publishers nor keeps an unbounded backlog.
+ */
+public class RouterEventBus {
+
+  private static final Logger LOGGER = LogManager.getLogger(RouterEventBus.class);
+
+  private final int bufferSize;
+  private final AtomicLong sequence = new AtomicLong();
+  private final ConcurrentMap<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+  public RouterEventBus(int bufferSize) {
+    this.bufferSize = Math.max(bufferSize, 1);
+  }
+
+  /**
+   * @param queueRef when set, only the events of the tasks in this queue are delivered
+   * @param agentRef when set, only the events of this agent and of its tasks are delivered
+   * @param listener called on the publishing thread each time an event is buffered, must not block
+   */
+  public Subscriber subscribe(String routerRef, String queueRef, String agentRef,
+      Runnable listener) {
+
+    Subscriber subscriber = new Subscriber(routerRef, queueRef, agentRef, listener);
+    subscribers.compute(routerRef, (key, routerSubscribers) -> {
+      if (routerSubscribers == null) {
+        routerSubscribers = ConcurrentHashMap.newKeySet();
+      }
+      routerSubscribers.add(subscriber);
+      return routerSubscribers;
+    });
+    LOGGER.debug("Router {}: subscribed {}", routerRef, subscriber);
+    return subscriber;
+  }
+
+  public void taskChanged(EntityManager em, Task task) {
+    taskChanged(em, task, task.getState());
+  }
+
+  private void taskChanged(EntityManager em, Task task, TaskState state) {
+    String routerRef = task.getRouter().getRef();
+    if (!subscribers.containsKey(routerRef)) {
+      return;
+    }
+    RouterEventDto event = new RouterEventDto();
+    event.setType(RouterEventDto.TASK);
+    event.setRouterRef(routerRef);
+    event.setRef(task.getRef());
+    event.setState(String.valueOf(state));
+    event.setQueueRef(task.getQueue() != null ? task.getQueue().getRef() : null);
+    event.setAgentRef(task.getAgent() != null ? task.getAgent().getRef() : null);
+    JpaTransactionManager.afterCommit(em, () -> publish(event));
+  }
+
+  /**
+   * Must be called before the task is made final, as that detaches it from its queue and agent.
+   */
+  public void taskFinished(EntityManager em, Task task, TaskState finalState) {
+    taskChanged(em, task, finalState);
+  }
+
+  public void agentChanged(EntityManager em, Agent agent) {
+    String routerRef = agent.getRouter().getRef();
+    if (!subscribers.containsKey(routerRef)) {
+      return;
+    }
+    RouterEventDto event = new RouterEventDto();
+    event.setType(RouterEventDto.AGENT);
+    event.setRouterRef(routerRef);
+    event.setRef(agent.getRef());
+    event.setState(String.valueOf(agent.getState()));
+    event.setAgentRef(agent.getRef());
+    JpaTransactionManager.afterCommit(em, () -> publish(event));
+  }
+
+  public void publish(RouterEventDto event) {
+    Set<Subscriber> routerSubscribers = subscribers.get(event.getRouterRef());
+    if (routerSubscribers == null) {
+      return;
+    }
+    event.setId(sequence.incrementAndGet());
+    event.setDate(new Date());
+    routerSubscribers.forEach(subscriber -> subscriber.offer(event));
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.values().stream().mapToInt(Set::size).sum();
+  }
+
+  private void remove(Subscriber subscriber) {
+    subscribers.computeIfPresent(subscriber.routerRef, (key, routerSubscribers) -> {
+      routerSubscribers.remove(subscriber);
+      return routerSubscribers.isEmpty() ? null : routerSubscribers;
+    });
+  }
+
+  public class Subscriber {
+
+    private final String routerRef;
+    private final String queueRef;
+    private final String agentRef;
+    private final Runnable listener;
+    private final BlockingQueue<RouterEventDto> buffer = new ArrayBlockingQueue<>(bufferSize);
+    private volatile boolean evicted;
+
+    private Subscriber(String routerRef, String queueRef, String agentRef, Runnable listener) {
+      this.routerRef = routerRef;
+      this.queueRef = queueRef;
+      this.agentRef = agentRef;
+      this.listener = listener;
+    }
+
+    private boolean matches(RouterEventDto event) {
+      if (queueRef != null && !queueRef.equals(event.getQueueRef())) {
+        return false;
+      }
+      return agentRef == null || agentRef.equals(event.getAgentRef());
+    }
+
+    private void offer(RouterEventDto event) {
+      if (evicted || !matches(event)) {
+        return;
+      }
+      if (!buffer.offer(event)) {
+        LOGGER.warn("Router {}: evicting slow subscriber {}", routerRef, this);
+        Metrics.counter("router.events.evicted").increment();
+        evicted = true;
+        remove(this);
+      }
+      listener.run();
+    }
+
+    /**
+     * @return the next buffered event or null when there is none
+     */
+    public RouterEventDto poll() {
+      return buffer.poll();
+    }
+
+    public boolean isEmpty() {
+      return buffer.isEmpty();
+    }
+
+    /**
+     * An evicted subscriber gets no more events. The events buffered before the eviction can
+     * still be polled.
+     */
+    public boolean isEvicted() {
+      return evicted;
+    }
+
+    public void close() {
+      remove(this);
+    }
+
+    @Override
+    public String toString() {
+      return "Subscriber{queueRef=" + queueRef + ", agentRef=" + agentRef + '}';
+    }
+
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+/**
+ * The only node owns all queues.
+ */
+public class SingleNodeMembership implements ClusterMembership {
+
+  @Override
+  public void start() {}
+
+  @Override
+  public boolean isOwner(Long queueId) {
+    return true;
+  }
+
+  @Override
+  public void wakeUp(Long routerId, Long queueId) {
+    throw new IllegalStateException("Queue " + queueId + " is not owned by the single node");
+  }
+
+  @Override
+  public void close() {}
+
+}
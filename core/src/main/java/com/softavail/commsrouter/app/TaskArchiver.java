@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.Task;
+import com.softavail.commsrouter.domain.TaskHistory;
+import com.softavail.commsrouter.util.PeriodicJobRunner;
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically moves completed and canceled tasks older than the configured age from the task
+ * table to task_history, a bounded batch per transaction.
+ */
+public class TaskArchiver {
+
+  private static final Logger LOGGER = LogManager.getLogger(TaskArchiver.class);
+
+  private final AppContext app;
+  private final ScheduledThreadPoolExecutor threadPool;
+
+  public TaskArchiver(AppContext app) {
+    this.app = app;
+    this.threadPool = new ScheduledThreadPoolExecutor(1);
+    this.threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  public void start() {
+    Integer age = app.coreConfiguration.getTaskArchiveAge();
+    if (age == null || age <= 0) {
+      LOGGER.info("Task archiving is disabled");
+      return;
+    }
+    PeriodicJobRunner.start(threadPool, this::run, app.coreConfiguration.getTaskArchivePeriod());
+  }
+
+  public void close() {
+    ThreadPoolKiller.shutdown(threadPool, "TaskArchiver");
+  }
+
+  private void run() {
+    Date updatedBefore = new Date(System.currentTimeMillis()
+        - TimeUnit.SECONDS.toMillis(app.coreConfiguration.getTaskArchiveAge()));
+    try {
+      int count = archive(updatedBefore);
+      LOGGER.info("Archived {} tasks updated before {}", count, updatedBefore);
+    } catch (CommsRouterException | RuntimeException ex) {
+      LOGGER.error("Archiving tasks updated before {} failed: {}", updatedBefore, ex, ex);
+    }
+  }
+
+  public int archive(Date updatedBefore) throws CommsRouterException {
+    int batchSize = app.coreConfiguration.getTaskArchiveBatchSize();
+    int total = 0;
+    int count;
+    do {
+      count = archiveBatch(updatedBefore, batchSize);
+      total += count;
+    } while (count == batchSize && !threadPool.isShutdown());
+    return total;
+  }
+
+  private int archiveBatch(Date updatedBefore, int batchSize) throws CommsRouterException {
+    return app.db.transactionManager.executeWithLockRetry(em -> {
+      List<Task> tasks = app.db.task.listFinalUpdatedBefore(em, updatedBefore, batchSize);
+      List<TaskHistory> history = new ArrayList<>(tasks.size());
+      Date archiveDate = new Date();
+      for (Task task : tasks) {
+        TaskHistory entry = app.entityMapper.taskHistory.fromTask(task);
+        entry.setArchiveDate(archiveDate);
+        history.add(entry);
+        // A replaced task may have been archived before under the same ref
+        app.db.taskHistory.delete(em,
+            new RouterObjectRef(task.getRef(), task.getRouter().getRef()));
+        em.remove(task);
+      }
+      // Hibernate inserts before it deletes, so the old rows must go first
+      em.flush();
+      history.forEach(em::persist);
+      return tasks.size();
+    });
+  }
+
+}
@@ -17,7 +17,6 @@
 package com.softavail.commsrouter.app;
 
 import com.softavail.commsrouter.api.dto.model.AgentDto;
-import com.softavail.commsrouter.api.dto.model.AgentState;
 import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.dto.model.TaskState;
@@ -25,24 +24,34 @@ import com.softavail.commsrouter.api.exception.CallbackException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.interfaces.TaskEventHandler;
 import com.softavail.commsrouter.domain.Agent;
+import com.softavail.commsrouter.domain.Queue;
 import com.softavail.commsrouter.domain.Route;
 import com.softavail.commsrouter.domain.Rule;
 import com.softavail.commsrouter.domain.Task;
 import com.softavail.commsrouter.domain.dto.mappers.EntityMappers;
 import com.softavail.commsrouter.domain.result.MatchResult;
+import com.softavail.commsrouter.jfr.RoutingEvents;
 import com.softavail.commsrouter.jpa.JpaDbFacade;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
 import com.softavail.commsrouter.jpa.result.TaskEnumerableResult;
 import com.softavail.commsrouter.util.ThreadPoolKiller;
+import com.softavail.commsrouter.util.Uuid;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import net.jodah.failsafe.Failsafe;
 import net.jodah.failsafe.RetryPolicy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
 
 /**
  * @author ikrustev
@@ -54,10 +63,21 @@ public class TaskDispatcher {
   private final JpaDbFacade db;
   private final EntityMappers mappers;
   private final TaskEventHandler taskEventHandler;
-  private final ScheduledThreadPoolExecutor threadPool;
+  private final DispatcherExecutor executor;
+  private final ScheduledThreadPoolExecutor clusterThreadPool;
+  private final ScheduledThreadPoolExecutor triggerThreadPool;
+  private final DispatchTriggers triggers;
+  private final TaskExpirationTimers expirationTimers;
+  private final BulkheadManager bulkheads;
   private final CoreConfiguration configuration;
   private final QueueProcessorManager queueProcessorManager;
+  private final QueueStatistics queueStatistics;
+  private final RouterEventBus eventBus;
+  private final AssignmentWaiters assignmentWaiters;
+  private final PlanSnapshots planSnapshots;
+  private final ClusterMembership cluster;
   private final RetryPolicy retryPolicy;
+  private final ConcurrentMap<String, Timer> assignmentLatency = new ConcurrentHashMap<>();
 
   public TaskDispatcher(JpaDbFacade db, EntityMappers mappers, TaskEventHandler taskEventHandler) {
     this(db, mappers, CoreConfiguration.DEFAULT, taskEventHandler);
@@ -69,9 +89,21 @@ public class TaskDispatcher {
     this.db = db;
     this.mappers = mappers;
     this.taskEventHandler = taskEventHandler;
-    this.threadPool = new ScheduledThreadPoolExecutor(configuration.getDispatcherThreadPoolSize());
-    this.threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
-    this.queueProcessorManager = QueueProcessorManager.getInstance();
+    this.executor = createExecutor();
+    this.bulkheads = new BulkheadManager(executor, configuration);
+    this.clusterThreadPool = new ScheduledThreadPoolExecutor(1);
+    this.clusterThreadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.triggerThreadPool = new ScheduledThreadPoolExecutor(1);
+    this.triggerThreadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    Integer coalesceMillis = configuration.getDispatcherCoalesceInterval();
+    this.triggers = new DispatchTriggers(triggerThreadPool,
+        coalesceMillis == null ? 0 : coalesceMillis, this::process);
+    this.expirationTimers = new TaskExpirationTimers(triggerThreadPool, this::onTaskExpired);
+    this.queueProcessorManager = new QueueProcessorManager();
+    this.queueStatistics = new QueueStatistics(configuration.getQueueStatisticsWindow());
+    this.eventBus = new RouterEventBus(configuration.getEventBufferSize());
+    this.assignmentWaiters = new AssignmentWaiters();
+    this.planSnapshots = new PlanSnapshots();
     Integer backoffDelay = configuration.getBackoffDelay();
     Integer backoffDelayMax = configuration.getBackoffDelayMax();
     this.retryPolicy = new RetryPolicy()
@@ -79,42 +111,141 @@ public class TaskDispatcher {
         .retryOn(RuntimeException.class)
         .withBackoff(backoffDelay, backoffDelayMax, TimeUnit.SECONDS)
         .withJitter(configuration.getJitter(), TimeUnit.MILLISECONDS);
+    this.cluster = createClusterMembership();
+  }
+
+  /**
+   * Joins the cluster, processes the owned queues and restarts the timers of the waiting tasks.
+   * Kept out of the constructor, the membership and the timers call back into the dispatcher.
+   */
+  public void start() {
+    expirationTimers.start();
+    cluster.start();
     startQueueProcessors();
     restartWaitingTaskTimers();
   }
 
-  @SuppressWarnings("unchecked")
+  private DispatcherExecutor createExecutor() {
+    String type = configuration.getDispatcherExecutor();
+    boolean virtual = "virtual".equals(type)
+        || "auto".equals(type) && VirtualThreadDispatcherExecutor.isAvailable();
+    if (virtual) {
+      LOGGER.info("Task dispatcher: running on virtual threads");
+      return new VirtualThreadDispatcherExecutor();
+    }
+    return new PlatformDispatcherExecutor(configuration.getDispatcherThreadPoolSize());
+  }
+
+  private ClusterMembership createClusterMembership() {
+    if (!Boolean.TRUE.equals(configuration.getClusterEnabled())) {
+      return new SingleNodeMembership();
+    }
+    String nodeId = configuration.getClusterNodeId();
+    if (nodeId == null || nodeId.isEmpty()) {
+      nodeId = Uuid.get();
+    }
+    return new DbClusterMembership.Builder()
+        .setDb(db)
+        .setNodeId(nodeId)
+        .setHeartbeatSeconds(configuration.getClusterHeartbeatInterval())
+        .setNodeTimeoutSeconds(configuration.getClusterNodeTimeout())
+        .setSignalPollMillis(configuration.getClusterSignalPollInterval())
+        .setThreadPool(clusterThreadPool)
+        .setWakeUpListener(this::processLocal)
+        .setOwnershipListener(this::onOwnershipChanged)
+        .build();
+  }
+
   private void startQueueProcessors() {
     try {
-      db.transactionManager.executeVoid(em ->
-          db.router.list(em).forEach(router -> {
-            db.queue.list(em, router.getRef()).forEach(queue -> {
-              process(router.getId(), queue.getId());
-            });
-          })
-      );
+      processOwnedQueues();
     } catch (CommsRouterException e) {
       throw new RuntimeException("Can not instantiate TaskDispatcher!", e);
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private void processOwnedQueues() throws CommsRouterException {
+    db.transactionManager.executeVoid(em ->
+        db.router.list(em).forEach(router -> {
+          db.queue.list(em, router.getRef()).forEach(queue -> {
+            if (cluster.isOwner(queue.getId())) {
+              processLocal(router.getId(), queue.getId());
+            }
+          });
+        })
+    );
+  }
+
+  private void onOwnershipChanged() {
+    try {
+      processOwnedQueues();
+    } catch (CommsRouterException | RuntimeException e) {
+      LOGGER.error("Failure processing the queues after an ownership change: {}", e, e);
+    }
+  }
+
   private void process(Long routerId, Long queueId) {
+    if (cluster.isOwner(queueId)) {
+      processLocal(routerId, queueId);
+    } else {
+      cluster.wakeUp(routerId, queueId);
+    }
+  }
+
+  private void processLocal(Long routerId, Long queueId) {
     queueProcessorManager
-        .processQueue(routerId, queueId, db, mappers, this, configuration, threadPool);
+        .processQueue(routerId, queueId, db, mappers, this, configuration, bulkheads.get(routerId));
+  }
+
+  public Collection<Bulkhead> getBulkheads() {
+    return bulkheads.list();
+  }
+
+  public Bulkhead getBulkhead(Long routerId) {
+    return bulkheads.get(routerId);
+  }
+
+  public QueueStatistics getQueueStatistics() {
+    return queueStatistics;
+  }
+
+  public RouterEventBus getEventBus() {
+    return eventBus;
+  }
+
+  public AssignmentWaiters getAssignmentWaiters() {
+    return assignmentWaiters;
+  }
+
+  public PlanSnapshots getPlanSnapshots() {
+    return planSnapshots;
   }
 
   public void close() {
+    cluster.close();
     final Integer shutdownDelay = configuration.getDispatcherThreadShutdownDelay();
-    ThreadPoolKiller.shutdown(threadPool, "TaskDispatcher", shutdownDelay);
+    ThreadPoolKiller.shutdown(clusterThreadPool, "TaskDispatcher cluster");
+    ThreadPoolKiller.shutdown(triggerThreadPool, "TaskDispatcher triggers");
+    executor.shutdown(shutdownDelay);
   }
 
   public void dispatchTask(TaskDispatchInfo dispatchInfo) {
-    process(dispatchInfo.getRouterId(), dispatchInfo.getQueueId());
-    setTaskExpirationTimeout(dispatchInfo.getTaskId(), dispatchInfo.getQueuedTimeout());
+    triggers.trigger(dispatchInfo.getRouterId(), dispatchInfo.getQueueId());
+    setTaskExpirationTimeout(dispatchInfo.getRouterId(), dispatchInfo.getTaskId(),
+        dispatchInfo.getQueuedTimeout());
+  }
+
+  /**
+   * Assigns the waiting tasks of the queue to its ready agents, e.g. after agents were mapped to
+   * it or became ready in bulk.
+   */
+  public void dispatchQueue(Long routerId, Long queueId) {
+    triggers.trigger(routerId, queueId);
   }
 
   public void dispatchAgent(AgentDispatchInfo dispatchInfo) {
-    threadPool.submit(() -> {
+    bulkheads.get(dispatchInfo.getRouterId()).execute(() -> {
       try {
         doDispatchAgent(dispatchInfo);
       } catch (RuntimeException | CommsRouterException e) {
@@ -130,30 +261,73 @@ public class TaskDispatcher {
           db.router.lock(em, dispatchInfo.getRouterId());
 
           return db.queue.findAssignmentForAgent(em, dispatchInfo.getAgentId())
-              .map(this::assignTask)
+              .map(matchResult -> assignTask(em, matchResult))
               .orElse(null);
         }
     );
 
     if (taskAssignmentDto != null) {
-      submitTaskAssignment(taskAssignmentDto);
+      submitTaskAssignment(dispatchInfo.getRouterId(), taskAssignmentDto);
     }
   }
 
-  public TaskAssignmentDto assignTask(MatchResult matchResult) {
+  public TaskAssignmentDto assignTask(EntityManager em, MatchResult matchResult) {
     Agent agent = matchResult.agent;
     Task task = matchResult.task;
-    // Assign
-    agent.setState(AgentState.busy);
+    // Assign, the agent becomes busy when its last free slot is taken
+    agent.occupySlot();
     task.setState(TaskState.assigned);
     task.setAgent(agent);
+    recordAssignment(em, task, agent);
+    eventBus.taskChanged(em, task);
+    eventBus.agentChanged(em, agent);
 
     TaskDto taskDto = mappers.task.toDto(task);
     AgentDto agentDto = mappers.agent.toDto(agent);
     return new TaskAssignmentDto(taskDto, agentDto);
   }
 
-  public void submitTaskAssignment(TaskAssignmentDto taskAssignmentDto) {
+  private void recordAssignment(EntityManager em, Task task, Agent agent) {
+    long waitingMillis = task.getCreateDate() == null
+        ? 0 : System.currentTimeMillis() - task.getCreateDate().getTime();
+    Long routerId = task.getRouter().getId();
+    Long queueId = task.getQueue().getId();
+    JpaTransactionManager.afterCommit(em,
+        () -> queueStatistics.taskAssigned(routerId, queueId, waitingMillis));
+    String routerRef = task.getRouter().getRef();
+    String taskRef = task.getRef();
+    String agentRef = agent.getRef();
+    String queueRef = task.getQueue().getRef();
+    JpaTransactionManager.afterCommit(em, () -> {
+      getAssignmentLatency(routerRef).record(waitingMillis, TimeUnit.MILLISECONDS);
+      RoutingEvents.taskAssigned(routerRef, taskRef, agentRef, queueRef, waitingMillis);
+    });
+  }
+
+  private Timer getAssignmentLatency(String routerRef) {
+    return assignmentLatency.computeIfAbsent(routerRef, key -> Timer
+        .builder("router.assignment.latency")
+        .description("Time from the creation of a task to its assignment")
+        .tag("router", key)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry));
+  }
+
+  /**
+   * Drops what the dispatcher keeps per router, called after the router is deleted.
+   */
+  public void routerDeleted(Long routerId, String routerRef) {
+    bulkheads.remove(routerId);
+    assignmentLatency.remove(routerRef);
+  }
+
+  public void submitTaskAssignment(Long routerId, TaskAssignmentDto taskAssignmentDto) {
+    if (assignmentWaiters.deliver(taskAssignmentDto)) {
+      Metrics.counter("router.assignment.pulled").increment();
+      LOGGER.debug("Task {} handed to waiting agent {}", taskAssignmentDto.getTask(),
+          taskAssignmentDto.getAgent());
+      return;
+    }
     RetryPolicy retryPolicy = this.retryPolicy.copy();
     retryPolicy.abortIf(obj -> {
       try {
@@ -166,37 +340,44 @@ public class TaskDispatcher {
         return true;
       }
     });
-    Failsafe.with(retryPolicy).with(threadPool)
+    Failsafe.with(retryPolicy).with(bulkheads.get(routerId).asScheduler())
         .onSuccess((ignored, executionContext) -> LOGGER.debug("Task {} assigned to agent {}",
             taskAssignmentDto.getTask(), taskAssignmentDto.getAgent()))
-        .onRetry(
-            (result, failure, context) -> LOGGER.warn("Retry assigning task {} to agent {}: {}, {}",
-                taskAssignmentDto.getTask(), taskAssignmentDto.getAgent(), failure, context))
-        .onFailure((ignored, throwable) -> LOGGER.error("Failure assigning task {} to agent {}: {}",
-            taskAssignmentDto.getTask(), taskAssignmentDto.getAgent(), throwable, throwable))
+        .onRetry((result, failure, context) -> {
+          Metrics.counter("router.callback.retries").increment();
+          LOGGER.warn("Retry assigning task {} to agent {}: {}, {}",
+              taskAssignmentDto.getTask(), taskAssignmentDto.getAgent(), failure, context);
+        })
+        .onFailure((ignored, throwable) -> {
+          Metrics.counter("router.callback.failures").increment();
+          LOGGER.error("Failure assigning task {} to agent {}: {}",
+              taskAssignmentDto.getTask(), taskAssignmentDto.getAgent(), throwable, throwable);
+        })
         .run(() -> taskEventHandler.onTaskAssigned(taskAssignmentDto));
   }
 
-  private void setTaskExpirationTimeout(Long taskId, Long seconds) {
+  private void setTaskExpirationTimeout(Long routerId, Long taskId, Long seconds) {
 
     LOGGER.debug("Set expiration timeout:{} for task:{}", seconds, taskId);
 
-    threadPool.schedule(() -> {
-      onQueuedTaskTimeout(taskId);
-    }, seconds, TimeUnit.SECONDS);
+    expirationTimers.schedule(routerId, taskId, seconds);
+  }
+
+  private void onTaskExpired(Long routerId, Long taskId) {
+    bulkheads.get(routerId).execute(() -> onQueuedTaskTimeout(routerId, taskId));
   }
 
-  private void onQueuedTaskTimeout(Long taskId) {
+  private void onQueuedTaskTimeout(Long routerId, Long taskId) {
 
     try {
       LOGGER.debug("onQueuedTaskTimeout(): Task with ID='{}' timed-out", taskId);
-      processTaskTimeout(taskId);
+      processTaskTimeout(routerId, taskId);
     } catch (RuntimeException | CommsRouterException ex) {
       LOGGER.error("Exception while processing timeout for task {}: {}", taskId, ex);
     }
   }
 
-  private void processTaskTimeout(Long taskId) throws CommsRouterException {
+  private void processTaskTimeout(Long routerId, Long taskId) throws CommsRouterException {
 
     TaskDto taskDto = db.transactionManager.execute((em) -> {
       Task task = db.task.get(em, taskId);
@@ -210,22 +391,30 @@ public class TaskDispatcher {
         case assigned:
           return null;
         case waiting: {
-          Route matchedRoute;
+          PlanSnapshot.CompiledRoute matchedRoute;
           Rule rule = task.getRule();
           if (rule != null) {
             matchedRoute = getNextRoute(task.getRule(), task.getCurrentRoute().getId());
           } else {
             // default route
             task.setExpirationDate(null);
+            JpaTransactionManager.afterCommit(em,
+                () -> RoutingEvents.taskTimeout(taskId, false, null));
             return null;
           }
 
           if (matchedRoute == null) {
             task.setExpirationDate(null);
+            JpaTransactionManager.afterCommit(em,
+                () -> RoutingEvents.taskTimeout(taskId, false, null));
             return null;
           }
 
-          task.setCurrentRoute(matchedRoute);
+          Long routeId = matchedRoute.getId();
+          JpaTransactionManager.afterCommit(em,
+              () -> RoutingEvents.taskTimeout(taskId, true, routeId));
+
+          task.setCurrentRoute(em.getReference(Route.class, matchedRoute.getId()));
 
           if (matchedRoute.getPriority() != null) {
             task.setPriority(matchedRoute.getPriority());
@@ -257,8 +446,9 @@ public class TaskDispatcher {
           }
           task.setExpirationDate(expirationDate);
 
-          if (matchedRoute.getQueue() != null) {
-            task.setQueue(matchedRoute.getQueue());
+          if (matchedRoute.getQueueId() != null) {
+            task.setQueue(em.getReference(Queue.class, matchedRoute.getQueueId()));
+            eventBus.taskChanged(em, task);
           }
           break;
         }
@@ -269,18 +459,23 @@ public class TaskDispatcher {
     });
 
     if (taskDto != null) {
-      setTaskExpirationTimeout(taskDto.getId(), taskDto.getQueuedTimeout());
+      setTaskExpirationTimeout(routerId, taskDto.getId(), taskDto.getQueuedTimeout());
     }
 
   }
 
-  public Route getNextRoute(Rule rule, Long prevRouteId) {
+  public PlanSnapshot.CompiledRoute getNextRoute(Rule rule, Long prevRouteId) {
     if (rule != null) {
+      PlanSnapshot.CompiledRule compiledRule = planSnapshots.getRule(rule.getId());
+      if (compiledRule != null) {
+        return compiledRule.getNextRoute(prevRouteId);
+      }
+      // The plan is not compiled on this node yet
       List<Route> routes = rule.getRoutes();
       boolean stopOnNextIteration = false;
       for (Route route : routes) {
         if (stopOnNextIteration) {
-          return route;
+          return PlanSnapshot.CompiledRoute.of(route);
         }
         if (Objects.equals(route.getId(), prevRouteId)) {
           stopOnNextIteration = true;
@@ -295,7 +490,7 @@ public class TaskDispatcher {
   }
 
   private void restartWaitingTaskTimers() {
-    threadPool.submit(this::doRestartWaitingTaskTimers);
+    executor.execute(this::doRestartWaitingTaskTimers);
   }
 
   private void doRestartWaitingTaskTimers() {
@@ -321,7 +516,7 @@ public class TaskDispatcher {
       LOGGER.trace("No expiration date, won't attach timer for task: {}", task.getRef());
     } else {
       long seconds = (task.getExpirationDate().getTime() - System.currentTimeMillis()) / 1000;
-      setTaskExpirationTimeout(task.getId(), seconds);
+      setTaskExpirationTimeout(task.getRouter().getId(), task.getId(), seconds);
     }
   }
 
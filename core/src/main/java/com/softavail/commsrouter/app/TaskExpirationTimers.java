@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the expiration timers of the waiting tasks in buckets of a second and fires a bucket at
+ * once, instead of a scheduled future per task. Task timeouts are in seconds, so a timer fires at
+ * most a second late. Timers are never cancelled, the listener checks the state of the task.
+ */
+public class TaskExpirationTimers {
+
+  private static final Logger LOGGER = LogManager.getLogger(TaskExpirationTimers.class);
+
+  private static final long TICK_MILLIS = 1000;
+
+  private static class Timer {
+
+    private final Long routerId;
+    private final Long taskId;
+
+    Timer(Long routerId, Long taskId) {
+      this.routerId = routerId;
+      this.taskId = taskId;
+    }
+
+  }
+
+  private final ScheduledExecutorService threadPool;
+  private final BiConsumer<Long, Long> listener;
+  // Due second to the timers of the tasks expiring in it, guarded by this
+  private final NavigableMap<Long, List<Timer>> buckets = new TreeMap<>();
+
+  /**
+   * @param listener called with the router id and the task id of each expired timer
+   */
+  public TaskExpirationTimers(ScheduledExecutorService threadPool,
+      BiConsumer<Long, Long> listener) {
+    this.threadPool = threadPool;
+    this.listener = listener;
+  }
+
+  public void start() {
+    threadPool.scheduleWithFixedDelay(() -> fire(System.currentTimeMillis()), TICK_MILLIS,
+        TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public void schedule(Long routerId, Long taskId, long seconds) {
+    schedule(routerId, taskId, seconds, System.currentTimeMillis());
+  }
+
+  synchronized void schedule(Long routerId, Long taskId, long seconds, long nowMillis) {
+    long dueSecond = (nowMillis + TimeUnit.SECONDS.toMillis(seconds) + TICK_MILLIS - 1)
+        / TICK_MILLIS;
+    buckets.computeIfAbsent(dueSecond, second -> new ArrayList<>())
+        .add(new Timer(routerId, taskId));
+  }
+
+  /**
+   * @return the number of timers fired
+   */
+  int fire(long nowMillis) {
+    List<Timer> expired = new ArrayList<>();
+    synchronized (this) {
+      Map<Long, List<Timer>> due = buckets.headMap(nowMillis / TICK_MILLIS, true);
+      due.values().forEach(expired::addAll);
+      due.clear();
+    }
+    for (Timer timer : expired) {
+      try {
+        listener.accept(timer.routerId, timer.taskId);
+      } catch (RuntimeException e) {
+        LOGGER.error("Failure firing the timer of task {}: {}", timer.taskId, e, e);
+      }
+    }
+    return expired.size();
+  }
+
+  synchronized int size() {
+    return buckets.values().stream().mapToInt(List::size).sum();
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A new virtual thread for every task and a single timer thread. The number of blocking
+ * operations in flight is then limited by the bulkheads and the database connection pool only.
+ * Needs Java 21 or newer; the executor is looked up by reflection so the code still builds and
+ * runs on Java 8.
+ */
+public class VirtualThreadDispatcherExecutor implements DispatcherExecutor {
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+  private final ScheduledThreadPoolExecutor timers;
+  private final ExecutorService workers;
+
+  public VirtualThreadDispatcherExecutor() {
+    if (!isAvailable()) {
+      throw new IllegalStateException("Virtual threads need Java 21 or newer");
+    }
+    this.timers = new ScheduledThreadPoolExecutor(1);
+    this.timers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    new ExecutorServiceMetrics(timers, "dispatcher.timers", Tags.empty())
+        .bindTo(Metrics.globalRegistry);
+    try {
+      this.workers = (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      timers.shutdown();
+      throw new IllegalStateException("Could not create a virtual thread executor", ex);
+    }
+  }
+
+  public static boolean isAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  private static Method findFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    workers.execute(task);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    return timers.schedule(task, delay, unit);
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return workers.isShutdown();
+  }
+
+  @Override
+  public void shutdown(long waitSeconds) {
+    ThreadPoolKiller.shutdown(timers, "TaskDispatcher timers", waitSeconds);
+    ThreadPoolKiller.shutdown(workers, "TaskDispatcher virtual threads", waitSeconds);
+  }
+
+}
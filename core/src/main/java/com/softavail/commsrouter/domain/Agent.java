@@ -27,6 +27,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
@@ -38,7 +39,9 @@ import javax.persistence.TemporalType;
  * @author ikrustev
  */
 @Entity
-@Table(name = "agent")
+@Table(name = "agent", indexes = {
+    @Index(name = "idx_agent_state_slots_busy",
+        columnList = "state, occupied_slots, last_time_at_busy_state")})
 public class Agent extends RouterObject {
 
   @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true)
@@ -54,6 +57,12 @@ public class Agent extends RouterObject {
   @Enumerated(EnumType.STRING)
   private AgentState state;
 
+  @Column(nullable = false)
+  private int capacity = 1;
+
+  @Column(name = "occupied_slots", nullable = false)
+  private int occupiedSlots;
+
   @OneToMany(mappedBy = "agent", cascade = CascadeType.ALL, orphanRemoval = true)
   private List<AgentQueueMapping> agentQueueMappings = new ArrayList<>();
 
@@ -111,6 +120,45 @@ public class Agent extends RouterObject {
     }
   }
 
+  /**
+   * The number of tasks the agent handles at the same time. The agent stays ready until all its
+   * slots are occupied and becomes busy then.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public int getOccupiedSlots() {
+    return occupiedSlots;
+  }
+
+  public boolean hasFreeSlot() {
+    return occupiedSlots < capacity;
+  }
+
+  public void occupySlot() {
+    ++occupiedSlots;
+    if (hasFreeSlot()) {
+      updateLastTimeAtBusyState();
+    } else {
+      setState(AgentState.busy);
+    }
+  }
+
+  public void releaseSlot() {
+    --occupiedSlots;
+    // The capacity might have been lowered while all the slots were occupied
+    if (state == AgentState.busy && hasFreeSlot()) {
+      setState(AgentState.ready);
+    } else {
+      updateLastTimeAtBusyState();
+    }
+  }
+
   public List<AgentQueueMapping> getAgentQueueMappings() {
     return agentQueueMappings;
   }
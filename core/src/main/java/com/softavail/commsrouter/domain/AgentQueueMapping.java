@@ -18,21 +18,28 @@ package com.softavail.commsrouter.domain;
 
 import java.io.Serializable;
 import java.util.Objects;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.IdClass;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
 /**
+ * Maps an agent to a queue whose predicate it matches. The rows of a queue are versioned, only the
+ * ones with the active mapping version of the queue are used for matching, see
+ * {@link Queue#getMappingVersion()}.
  *
  * @author ikrustev
  */
 @Entity
 @IdClass(AgentQueueMappingId.class)
-@Table(name = "agent_queue")
+@Table(name = "agent_queue", indexes = {
+    @Index(name = "idx_agent_queue_queue_version_agent",
+        columnList = "queue_id, mapping_version, agent_id")})
 public class AgentQueueMapping implements Serializable {
 
   private static final long serialVersionUID = 1L;
@@ -47,12 +54,21 @@ public class AgentQueueMapping implements Serializable {
   @JoinColumn(name = "queue_id")
   private Queue queue;
 
+  @Id
+  @Column(name = "mapping_version")
+  private long version;
+
   public AgentQueueMapping() {
   }
 
   public AgentQueueMapping(Agent agent, Queue queue) {
+    this(agent, queue, queue.getMappingVersion());
+  }
+
+  public AgentQueueMapping(Agent agent, Queue queue, long version) {
     this.agent = agent;
     this.queue = queue;
+    this.version = version;
   }
 
   public Agent getAgent() {
@@ -71,9 +87,17 @@ public class AgentQueueMapping implements Serializable {
     this.queue = queue;
   }
 
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
   @Override
   public int hashCode() {
-    return Objects.hash(agent.getId(), queue.getId());
+    return Objects.hash(agent.getId(), queue.getId(), version);
   }
 
   @Override
@@ -86,7 +110,8 @@ public class AgentQueueMapping implements Serializable {
     }
     AgentQueueMapping rhs = (AgentQueueMapping)object;
     return this.agent.getId().equals(rhs.agent.getId())
-            && this.queue.getId().equals(rhs.queue.getId());
+            && this.queue.getId().equals(rhs.queue.getId())
+            && this.version == rhs.version;
   }
 
 }
@@ -27,6 +27,7 @@ public class AgentQueueMappingId implements Serializable {
 
   private Agent agent;
   private Queue queue;
+  private long version;
 
   public Agent getAgent() {
     return agent;
@@ -44,9 +45,17 @@ public class AgentQueueMappingId implements Serializable {
     this.queue = queue;
   }
 
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
   @Override
   public int hashCode() {
-    return Objects.hash(agent.getId(), queue.getId());
+    return Objects.hash(agent.getId(), queue.getId(), version);
   }
 
   @Override
@@ -59,7 +68,8 @@ public class AgentQueueMappingId implements Serializable {
     }
     AgentQueueMappingId rhs = (AgentQueueMappingId)object;
     return this.agent.getId().equals(rhs.agent.getId())
-            && this.queue.getId().equals(rhs.queue.getId());
+            && this.queue.getId().equals(rhs.queue.getId())
+            && this.version == rhs.version;
   }
 
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A running instance of the dispatcher in cluster mode. Nodes that did not update their heartbeat
+ * within the node timeout are considered gone.
+ */
+@Entity
+@Table(name = "cluster_node")
+public class ClusterNode implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  private String id;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "heartbeat_date")
+  private Date heartbeatDate;
+
+  public ClusterNode() {}
+
+  public ClusterNode(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Date getHeartbeatDate() {
+    return heartbeatDate;
+  }
+
+  public void setHeartbeatDate(Date heartbeatDate) {
+    this.heartbeatDate = heartbeatDate;
+  }
+
+}
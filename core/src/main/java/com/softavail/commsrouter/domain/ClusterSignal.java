@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.domain;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A queue wake-up forwarded to the cluster node that owns the queue.
+ */
+@Entity
+@Table(name = "cluster_signal", indexes = {
+    @Index(name = "idx_cluster_signal_node", columnList = "node_id")})
+public class ClusterSignal implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "node_id")
+  private String nodeId;
+
+  @Column(name = "router_id")
+  private Long routerId;
+
+  @Column(name = "queue_id")
+  private Long queueId;
+
+  public ClusterSignal() {}
+
+  public ClusterSignal(String nodeId, Long routerId, Long queueId) {
+    this.nodeId = nodeId;
+    this.routerId = routerId;
+    this.queueId = queueId;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public Long getRouterId() {
+    return routerId;
+  }
+
+  public Long getQueueId() {
+    return queueId;
+  }
+
+}
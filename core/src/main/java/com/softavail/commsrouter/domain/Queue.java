@@ -21,6 +21,7 @@ import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
@@ -36,6 +37,15 @@ public class Queue extends RouterObject {
   private String description;
   private String predicate;
 
+  @Column(name = "mapping_version", nullable = false)
+  private long mappingVersion;
+
+  @Column(name = "pending_mapping_version")
+  private Long pendingMappingVersion;
+
+  @Column(name = "pending_predicate")
+  private String pendingPredicate;
+
   @OneToMany(mappedBy = "queue", cascade = CascadeType.ALL, orphanRemoval = true)
   private List<AgentQueueMapping> agentQueueMappings = new ArrayList<>();
 
@@ -53,6 +63,38 @@ public class Queue extends RouterObject {
     this.predicate = predicate;
   }
 
+  /**
+   * The version of the agent mappings that are used for matching. They were evaluated with the
+   * current predicate.
+   */
+  public long getMappingVersion() {
+    return mappingVersion;
+  }
+
+  public void setMappingVersion(long mappingVersion) {
+    this.mappingVersion = mappingVersion;
+  }
+
+  /**
+   * The version of the agent mappings that are being evaluated in the background with the pending
+   * predicate, null if there are none. Both become current once all agents are mapped.
+   */
+  public Long getPendingMappingVersion() {
+    return pendingMappingVersion;
+  }
+
+  public void setPendingMappingVersion(Long pendingMappingVersion) {
+    this.pendingMappingVersion = pendingMappingVersion;
+  }
+
+  public String getPendingPredicate() {
+    return pendingPredicate;
+  }
+
+  public void setPendingPredicate(String pendingPredicate) {
+    this.pendingPredicate = pendingPredicate;
+  }
+
   public List<AgentQueueMapping> getAgentQueueMappings() {
     return agentQueueMappings;
   }
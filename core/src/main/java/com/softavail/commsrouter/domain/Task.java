@@ -29,6 +29,7 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToOne;
@@ -40,7 +41,10 @@ import javax.persistence.TemporalType;
  * @author ikrustev
  */
 @Entity
-@Table(name = "task")
+@Table(name = "task", indexes = {
+    @Index(name = "idx_task_queue_state_priority",
+        columnList = "queue_id, state, priority DESC, id"),
+    @Index(name = "idx_task_state_update_date", columnList = "state, update_date")})
 public class Task extends RouterObject {
 
   @OneToOne(cascade = CascadeType.ALL)
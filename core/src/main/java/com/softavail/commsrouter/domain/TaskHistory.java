@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.domain;
+
+import com.softavail.commsrouter.api.dto.model.TaskState;
+import org.hibernate.annotations.Type;
+
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A completed or canceled task moved out of the task table by the archiver. The attribute groups
+ * are kept as JSON so the archived task does not hold on to attribute rows.
+ */
+@Entity
+@Table(name = "task_history")
+public class TaskHistory extends RouterObject {
+
+  @Type(type = "text")
+  @Column(name = "requirements")
+  private String requirements;
+
+  @Type(type = "text")
+  @Column(name = "user_context")
+  private String userContext;
+
+  @Enumerated(EnumType.STRING)
+  private TaskState state;
+
+  @Column(name = "callback_url")
+  private String callbackUrl;
+
+  @Column(name = "priority")
+  private Long priority;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "create_date")
+  private Date createDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "update_date")
+  private Date updateDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "archive_date")
+  private Date archiveDate;
+
+  @Column(name = "timeout")
+  private Long queuedTimeout;
+
+  @Column(name = "tag")
+  private String tag;
+
+  public TaskHistory() {}
+
+  public TaskHistory(Task task) {
+    super(task);
+    this.state = task.getState();
+    this.callbackUrl = task.getCallbackUrl();
+    this.priority = task.getPriority();
+    this.createDate = task.getCreateDate();
+    this.updateDate = task.getUpdateDate();
+    this.queuedTimeout = task.getQueuedTimeout();
+    this.tag = task.getTag();
+  }
+
+  public String getRequirements() {
+    return requirements;
+  }
+
+  public void setRequirements(String requirements) {
+    this.requirements = requirements;
+  }
+
+  public String getUserContext() {
+    return userContext;
+  }
+
+  public void setUserContext(String userContext) {
+    this.userContext = userContext;
+  }
+
+  public TaskState getState() {
+    return state;
+  }
+
+  public String getCallbackUrl() {
+    return callbackUrl;
+  }
+
+  public Long getPriority() {
+    return priority;
+  }
+
+  public Date getCreateDate() {
+    return createDate;
+  }
+
+  public Date getUpdateDate() {
+    return updateDate;
+  }
+
+  public Date getArchiveDate() {
+    return archiveDate;
+  }
+
+  public void setArchiveDate(Date archiveDate) {
+    this.archiveDate = archiveDate;
+  }
+
+  public Long getQueuedTimeout() {
+    return queuedTimeout;
+  }
+
+  public String getTag() {
+    return tag;
+  }
+
+}
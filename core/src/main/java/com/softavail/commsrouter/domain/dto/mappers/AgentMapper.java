@@ -40,9 +40,12 @@ public class AgentMapper extends RouterObjectEntityMapper<AgentDto, Agent> {
     dto.setName(jpa.getName());
     dto.setDescription(jpa.getDescription());
     dto.setState(jpa.getState());
+    dto.setCapacity(jpa.getCapacity());
+    dto.setOccupiedSlots(jpa.getOccupiedSlots());
     dto.setQueueRefs(
         createIdList(jpa.getAgentQueueMappings()
             .stream()
+            .filter(mapping -> mapping.getVersion() == mapping.getQueue().getMappingVersion())
             .map(AgentQueueMapping::getQueue)));
     dto.setLastTimeAtBusyState(jpa.getLastTimeAtBusyState());
     return dto;
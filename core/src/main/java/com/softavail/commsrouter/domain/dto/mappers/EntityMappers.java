@@ -28,6 +28,7 @@ public class EntityMappers {
   public final QueueMapper queue;
   public final RouterMapper router;
   public final TaskMapper task;
+  public final TaskHistoryMapper taskHistory;
   public final AttributeDomainMapper attributeDomain;
   public final SkillMapper skill;
 
@@ -38,6 +39,7 @@ public class EntityMappers {
     queue = new QueueMapper();
     router = new RouterMapper();
     task = new TaskMapper(attributes);
+    taskHistory = new TaskHistoryMapper(attributes);
     attributeDomain = new AttributeDomainMapper();
     skill = new SkillMapper(attributeDomain);
   }
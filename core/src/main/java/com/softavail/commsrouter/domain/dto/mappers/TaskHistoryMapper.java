@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.domain.dto.mappers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.softavail.commsrouter.api.dto.model.TaskDto;
+import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
+import com.softavail.commsrouter.domain.AttributeGroup;
+import com.softavail.commsrouter.domain.Task;
+import com.softavail.commsrouter.domain.TaskHistory;
+
+import java.io.IOException;
+
+/**
+ */
+public class TaskHistoryMapper extends RouterObjectEntityMapper<TaskDto, TaskHistory> {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  public final AttributesMapper attributesMapper;
+
+  public TaskHistoryMapper(AttributesMapper attributesMapper) {
+    this.attributesMapper = attributesMapper;
+  }
+
+  public TaskDto toDto(TaskHistory jpa) {
+    TaskDto dto = new TaskDto();
+    copyRef(dto, jpa);
+    dto.setCallbackUrl(jpa.getCallbackUrl());
+    dto.setRequirements(readAttributes(jpa.getRequirements()));
+    dto.setUserContext(readAttributes(jpa.getUserContext()));
+    dto.setState(jpa.getState());
+    dto.setPriority(jpa.getPriority());
+    dto.setCreateDate(jpa.getCreateDate());
+    dto.setUpdateDate(jpa.getUpdateDate());
+    dto.setQueuedTimeout(jpa.getQueuedTimeout());
+    dto.setTag(jpa.getTag());
+    return dto;
+  }
+
+  public TaskHistory fromTask(Task task) {
+    TaskHistory history = new TaskHistory(task);
+    history.setRequirements(writeAttributes(task.getRequirements()));
+    history.setUserContext(writeAttributes(task.getUserContext()));
+    return history;
+  }
+
+  private String writeAttributes(AttributeGroup jpa) {
+    AttributeGroupDto dto = attributesMapper.toDto(jpa);
+    if (dto == null) {
+      return null;
+    }
+    try {
+      return OBJECT_MAPPER.writeValueAsString(dto);
+    } catch (IOException ex) {
+      throw new RuntimeException("Can not serialize attribute group " + jpa.getId(), ex);
+    }
+  }
+
+  private AttributeGroupDto readAttributes(String json) {
+    if (json == null) {
+      return null;
+    }
+    try {
+      return OBJECT_MAPPER.readValue(json, AttributeGroupDto.class);
+    } catch (IOException ex) {
+      throw new RuntimeException("Can not parse archived attribute group", ex);
+    }
+  }
+
+}
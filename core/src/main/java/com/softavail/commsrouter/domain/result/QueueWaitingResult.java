@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.domain.result;
+
+import java.util.Date;
+
+/**
+ * The waiting tasks of a queue: how many and since when.
+ */
+public class QueueWaitingResult {
+
+  public String routerRef;
+  public String queueRef;
+  public long count;
+  public Date oldestCreateDate; // null if no task is waiting
+
+  public QueueWaitingResult(String routerRef, String queueRef, Long count,
+      Date oldestCreateDate) {
+    this.routerRef = routerRef;
+    this.queueRef = queueRef;
+    this.count = count;
+    this.oldestCreateDate = oldestCreateDate;
+  }
+
+}
@@ -18,6 +18,8 @@ import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExpressionException;
 import com.softavail.commsrouter.domain.AttributeGroup;
 
+import java.util.Set;
+
 /**
  *
  * @author ikrustev
@@ -43,4 +45,10 @@ public interface CommsRouterEvaluator {
   void validate()
       throws ExpressionException;
 
+  /**
+   *
+   * @return the names of the attributes the expression depends on, null if they are not known
+   */
+  Set<String> getAttributeNames();
+
 }
@@ -16,6 +16,8 @@ package com.softavail.commsrouter.eval;
 
 import com.softavail.commsrouter.api.exception.ExpressionException;
 
+import java.util.Set;
+
 /**
  *
  * @author ikrustev
@@ -39,4 +41,9 @@ public abstract class EvaluatorBase implements CommsRouterEvaluator {
   public void validate() throws ExpressionException {
   }
 
+  @Override
+  public Set<String> getAttributeNames() {
+    return null;
+  }
+
 }
@@ -16,6 +16,9 @@ package com.softavail.commsrouter.eval;
 
 import com.softavail.commsrouter.domain.AttributeGroup;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  *
  * @author ikrustev
@@ -31,4 +34,9 @@ public class FalseEvaluator extends EvaluatorBase {
     return false;
   }
 
+  @Override
+  public Set<String> getAttributeNames() {
+    return Collections.emptySet();
+  }
+
 }
@@ -22,6 +22,11 @@ import com.softavail.commsrouter.domain.AttributeGroup;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  *
  * @author Ergyun Syuleyman
@@ -33,6 +38,8 @@ public class JEvalEvaluator implements CommsRouterEvaluator {
 
   private static final Logger LOGGER = LogManager.getLogger(JEvalEvaluator.class);
 
+  private static final Pattern VARIABLE = Pattern.compile("#\\{\\s*([^}\\s]+)\\s*}");
+
   public JEvalEvaluator(CommsRouterEvaluatorFactory factory, String predicate) {
     this.factory = factory;
     evaluator = new ExpressionEvaluator();
@@ -63,6 +70,19 @@ public class JEvalEvaluator implements CommsRouterEvaluator {
         (System.currentTimeMillis() - millis));
   }
 
+  @Override
+  public Set<String> getAttributeNames() {
+    Set<String> names = new HashSet<>();
+    String predicate = evaluator.getPredicate();
+    if (predicate != null) {
+      Matcher matcher = VARIABLE.matcher(predicate);
+      while (matcher.find()) {
+        names.add(matcher.group(1));
+      }
+    }
+    return names;
+  }
+
   /**
    *
    * @param attributesGroup evaluator variable attributes using on predicate expression evaluate
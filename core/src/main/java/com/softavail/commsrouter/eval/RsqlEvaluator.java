@@ -16,8 +16,13 @@ package com.softavail.commsrouter.eval;
 
 import com.softavail.commsrouter.api.exception.ExpressionException;
 import com.softavail.commsrouter.domain.AttributeGroup;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
 import cz.jirutka.rsql.parser.ast.Node;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  *
  * @author Vladislav Todorov
@@ -46,9 +51,28 @@ public class RsqlEvaluator extends EvaluatorBase {
     }
   }
 
+  Node getRootNode() {
+    return rootNode;
+  }
+
   @Override
   public void validate() throws ExpressionException {
     rsqlValidator.validate(rootNode, routerRef);
   }
 
+  @Override
+  public Set<String> getAttributeNames() {
+    Set<String> names = new HashSet<>();
+    collectSelectors(rootNode, names);
+    return names;
+  }
+
+  private static void collectSelectors(Node node, Set<String> names) {
+    if (node instanceof ComparisonNode) {
+      names.add(((ComparisonNode) node).getSelector());
+    } else if (node instanceof LogicalNode) {
+      ((LogicalNode) node).getChildren().forEach(child -> collectSelectors(child, names));
+    }
+  }
+
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.eval;
+
+import com.softavail.commsrouter.domain.Attribute;
+import com.softavail.commsrouter.domain.AttributeGroup;
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.Node;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Narrows the ordered rules of a plan to the ones that can match the given attributes, so that
+ * the first match is found without evaluating every rule before it.
+ *
+ * <p>
+ * A rule is indexed by the leading conjuncts of its RSQL predicate that compare a string
+ * attribute with == or =in=, like language==en;tier=in=(gold,silver);wait>5. Each level of the
+ * tree branches on the selector most of its rules compare at that position. A rule is skipped
+ * only when one of those conjuncts is false for the attributes, which stops the linear evaluation
+ * of the rule before anything that could fail. Whenever that can not be told for sure - a non
+ * string value, an attribute without a value - all the rules below the branch are candidates.
+ * Rules with other predicates are always candidates. The candidates keep the order of the plan,
+ * so the first of them that matches is the rule the linear scan would find.
+ */
+public class RuleDecisionTree {
+
+  private static final int MAX_DEPTH = 4;
+  private static final int MIN_BRANCHED_RULES = 2;
+
+  private static class Equality {
+
+    final String selector;
+    final List<String> values;
+
+    Equality(String selector, List<String> values) {
+      this.selector = selector;
+      this.values = values;
+    }
+
+  }
+
+  private static class TreeNode {
+
+    final BitSet rules;
+    final String selector;
+    final Map<String, TreeNode> branches;
+    final BitSet rest;
+
+    TreeNode(BitSet rules, String selector, Map<String, TreeNode> branches, BitSet rest) {
+      this.rules = rules;
+      this.selector = selector;
+      this.branches = branches;
+      this.rest = rest;
+    }
+
+  }
+
+  private final int ruleCount;
+  private final TreeNode root;
+
+  /**
+   * @param evaluators the evaluators of the rules in plan order, null for a rule that must always
+   *        be evaluated
+   */
+  public RuleDecisionTree(List<CommsRouterEvaluator> evaluators) {
+    this.ruleCount = evaluators.size();
+    List<List<Equality>> equalities = new ArrayList<>(ruleCount);
+    BitSet all = new BitSet(ruleCount);
+    for (int i = 0; i < ruleCount; ++i) {
+      equalities.add(leadingEqualities(evaluators.get(i)));
+      all.set(i);
+    }
+    this.root = build(all, equalities, 0);
+  }
+
+  public int getRuleCount() {
+    return ruleCount;
+  }
+
+  /**
+   * @return the positions of the rules that can match the attributes, in plan order
+   */
+  public int[] candidates(AttributeGroup attributes) {
+    BitSet result = new BitSet(ruleCount);
+    collect(root, attributes, result);
+    return result.stream().toArray();
+  }
+
+  private static void collect(TreeNode node, AttributeGroup attributes, BitSet result) {
+    if (node.selector == null) {
+      result.or(node.rest);
+      return;
+    }
+    Set<String> values = stringValues(attributes, node.selector);
+    if (values == null) {
+      result.or(node.rules);
+      return;
+    }
+    for (String value : values) {
+      TreeNode branch = node.branches.get(value);
+      if (branch != null) {
+        collect(branch, attributes, result);
+      }
+    }
+    result.or(node.rest);
+  }
+
+  /**
+   * @return the values an equality on the selector is compared with, or null if the comparison
+   *         is not a plain string one
+   */
+  private static Set<String> stringValues(AttributeGroup attributes, String selector) {
+    if (attributes == null) {
+      return null;
+    }
+    List<Attribute> matching = attributes.getAttributes(selector);
+    if (matching.isEmpty()) {
+      return Collections.emptySet();
+    }
+    try {
+      if (matching.get(0).getType() != Attribute.Type.STRING) {
+        return null;
+      }
+    } catch (RuntimeException ex) {
+      // No value - let the evaluation report it
+      return null;
+    }
+    Set<String> values = new TreeSet<>();
+    for (Attribute attribute : matching) {
+      if (attribute.getValue() instanceof String) {
+        values.add((String) attribute.getValue());
+      }
+    }
+    return values;
+  }
+
+  private static TreeNode build(BitSet rules, List<List<Equality>> equalities, int depth) {
+    String selector = depth < MAX_DEPTH ? chooseSelector(rules, equalities, depth) : null;
+    if (selector == null) {
+      return new TreeNode(rules, null, null, rules);
+    }
+    Map<String, BitSet> byValue = new HashMap<>();
+    BitSet rest = new BitSet();
+    rules.stream().forEach(rule -> {
+      Equality equality = getEquality(equalities, rule, depth);
+      if (equality != null && equality.selector.equals(selector)) {
+        equality.values.forEach(
+            value -> byValue.computeIfAbsent(value, key -> new BitSet()).set(rule));
+      } else {
+        rest.set(rule);
+      }
+    });
+    Map<String, TreeNode> branches = new HashMap<>();
+    byValue.forEach(
+        (value, branchRules) -> branches.put(value, build(branchRules, equalities, depth + 1)));
+    return new TreeNode(rules, selector, branches, rest);
+  }
+
+  private static String chooseSelector(BitSet rules, List<List<Equality>> equalities,
+      int depth) {
+
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    rules.stream().forEach(rule -> {
+      Equality equality = getEquality(equalities, rule, depth);
+      if (equality != null) {
+        counts.merge(equality.selector, 1, Integer::sum);
+      }
+    });
+    String selector = null;
+    int best = MIN_BRANCHED_RULES - 1;
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      if (entry.getValue() > best) {
+        best = entry.getValue();
+        selector = entry.getKey();
+      }
+    }
+    return selector;
+  }
+
+  private static Equality getEquality(List<List<Equality>> equalities, int rule, int depth) {
+    List<Equality> ruleEqualities = equalities.get(rule);
+    return depth < ruleEqualities.size() ? ruleEqualities.get(depth) : null;
+  }
+
+  private static List<Equality> leadingEqualities(CommsRouterEvaluator evaluator) {
+    if (!(evaluator instanceof RsqlEvaluator)) {
+      return Collections.emptyList();
+    }
+    Node node = ((RsqlEvaluator) evaluator).getRootNode();
+    if (node instanceof ComparisonNode) {
+      Equality equality = toEquality((ComparisonNode) node);
+      return equality != null ? Collections.singletonList(equality) : Collections.emptyList();
+    }
+    List<Equality> result = new ArrayList<>();
+    if (node instanceof AndNode) {
+      for (Node child : ((AndNode) node).getChildren()) {
+        Equality equality =
+            child instanceof ComparisonNode ? toEquality((ComparisonNode) child) : null;
+        if (equality == null) {
+          break;
+        }
+        result.add(equality);
+      }
+    }
+    return result;
+  }
+
+  private static Equality toEquality(ComparisonNode node) {
+    switch (node.getOperator().getSymbol()) {
+      case "==":
+        if (node.getArguments().size() != 1) {
+          return null;
+        }
+        return new Equality(node.getSelector(), node.getArguments());
+      case "=in=":
+        return new Equality(node.getSelector(), node.getArguments());
+      default:
+        return null;
+    }
+  }
+
+}
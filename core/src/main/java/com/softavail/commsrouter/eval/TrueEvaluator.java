@@ -16,6 +16,9 @@ package com.softavail.commsrouter.eval;
 
 import com.softavail.commsrouter.domain.AttributeGroup;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  *
  * @author ikrustev
@@ -30,4 +33,10 @@ public class TrueEvaluator extends EvaluatorBase {
   public boolean evaluate(AttributeGroup attributeGroup) {
     return true;
   }
+
+  @Override
+  public Set<String> getAttributeNames() {
+    return Collections.emptySet();
+  }
+
 }
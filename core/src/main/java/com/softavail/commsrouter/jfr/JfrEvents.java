@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jfr;
+
+import org.hibernate.engine.spi.SessionImplementor;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Creates and commits the events. Only {@link RoutingEvents} calls it, after checking that the
+ * JVM has Flight Recorder, so this is the only class that loads the jdk.jfr classes.
+ */
+class JfrEvents {
+
+  private JfrEvents() {
+  }
+
+  static void taskCreated(String routerRef, String taskRef, Long queueId, long queuePosition) {
+    TaskCreatedEvent event = new TaskCreatedEvent();
+    if (event.isEnabled()) {
+      event.routerRef = routerRef;
+      event.taskRef = taskRef;
+      event.queueId = toLong(queueId);
+      event.queuePosition = queuePosition;
+      event.commit();
+    }
+  }
+
+  static void ruleEvaluated(String taskRef, Long ruleId, String ruleTag, boolean matched,
+      long evaluationNanos) {
+
+    RuleEvaluatedEvent event = new RuleEvaluatedEvent();
+    if (event.isEnabled()) {
+      event.taskRef = taskRef;
+      event.ruleId = toLong(ruleId);
+      event.ruleTag = ruleTag;
+      event.matched = matched;
+      event.evaluationTime = evaluationNanos;
+      event.commit();
+    }
+  }
+
+  static void queueProcessorStateChanged(Long routerId, Long queueId, String oldState,
+      String newState) {
+
+    QueueProcessorStateEvent event = new QueueProcessorStateEvent();
+    if (event.isEnabled()) {
+      event.routerId = toLong(routerId);
+      event.queueId = toLong(queueId);
+      event.oldState = oldState;
+      event.newState = newState;
+      event.commit();
+    }
+  }
+
+  static void routerLockAcquired(EntityManager em, Long routerId, long waitNanos) {
+    RouterLockAcquiredEvent event = new RouterLockAcquiredEvent();
+    if (event.isEnabled()) {
+      event.routerId = toLong(routerId);
+      event.waitTime = waitNanos;
+      event.commit();
+    }
+    if (new RouterLockReleasedEvent().isEnabled()) {
+      // The lock is held until the end of the transaction
+      long acquired = System.nanoTime();
+      em.unwrap(SessionImplementor.class).getActionQueue().registerProcess(
+          (success, session) -> routerLockReleased(routerId, success, acquired));
+    }
+  }
+
+  private static void routerLockReleased(Long routerId, boolean committed, long acquired) {
+    RouterLockReleasedEvent event = new RouterLockReleasedEvent();
+    if (event.isEnabled()) {
+      event.routerId = toLong(routerId);
+      event.committed = committed;
+      event.heldTime = System.nanoTime() - acquired;
+      event.commit();
+    }
+  }
+
+  static void taskAssigned(String routerRef, String taskRef, String agentRef, String queueRef,
+      long waitingMillis) {
+
+    TaskAssignedEvent event = new TaskAssignedEvent();
+    if (event.isEnabled()) {
+      event.routerRef = routerRef;
+      event.taskRef = taskRef;
+      event.agentRef = agentRef;
+      event.queueRef = queueRef;
+      event.waitingTime = waitingMillis;
+      event.commit();
+    }
+  }
+
+  static void callback(String routerRef, String taskRef, String url, String status,
+      boolean failed, long callbackNanos) {
+
+    CallbackEvent event = new CallbackEvent();
+    if (event.isEnabled()) {
+      event.routerRef = routerRef;
+      event.taskRef = taskRef;
+      event.url = url;
+      event.status = status;
+      event.failed = failed;
+      event.callbackTime = callbackNanos;
+      event.commit();
+    }
+  }
+
+  static void taskTimeout(Long taskId, boolean escalated, Long routeId) {
+    TaskTimeoutEvent event = new TaskTimeoutEvent();
+    if (event.isEnabled()) {
+      event.taskId = toLong(taskId);
+      event.escalated = escalated;
+      event.routeId = toLong(routeId);
+      event.commit();
+    }
+  }
+
+  private static long toLong(Long value) {
+    return value == null ? 0 : value;
+  }
+
+}
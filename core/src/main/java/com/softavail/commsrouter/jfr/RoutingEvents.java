@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jfr;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Java Flight Recorder events for the routing lifecycle. A continuous recording with these events
+ * shows where a task spent its time - plan evaluation, router lock, queue processing, callback -
+ * without debug logging. Enable them in a recording with the "Comms Router" category or by name,
+ * e.g. com.softavail.commsrouter.RouterLockAcquired.
+ *
+ * <p>The events are plain instant events carrying their durations as fields, so the callers need
+ * no handles. On a JVM without Flight Recorder every method is a no-op.
+ */
+public final class RoutingEvents {
+
+  private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+  private RoutingEvents() {
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException | LinkageError ex) {
+      return false;
+    }
+  }
+
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  public static void taskCreated(String routerRef, String taskRef, Long queueId,
+      long queuePosition) {
+
+    if (AVAILABLE) {
+      JfrEvents.taskCreated(routerRef, taskRef, queueId, queuePosition);
+    }
+  }
+
+  public static void ruleEvaluated(String taskRef, Long ruleId, String ruleTag, boolean matched,
+      long evaluationNanos) {
+
+    if (AVAILABLE) {
+      JfrEvents.ruleEvaluated(taskRef, ruleId, ruleTag, matched, evaluationNanos);
+    }
+  }
+
+  public static void queueProcessorStateChanged(Long routerId, Long queueId, Enum<?> oldState,
+      Enum<?> newState) {
+
+    if (AVAILABLE) {
+      JfrEvents.queueProcessorStateChanged(routerId, queueId, oldState.name(), newState.name());
+    }
+  }
+
+  /**
+   * Also arranges for the release event to be committed when the transaction of the entity
+   * manager ends.
+   */
+  public static void routerLockAcquired(EntityManager em, Long routerId, long waitNanos) {
+    if (AVAILABLE) {
+      JfrEvents.routerLockAcquired(em, routerId, waitNanos);
+    }
+  }
+
+  public static void taskAssigned(String routerRef, String taskRef, String agentRef,
+      String queueRef, long waitingMillis) {
+
+    if (AVAILABLE) {
+      JfrEvents.taskAssigned(routerRef, taskRef, agentRef, queueRef, waitingMillis);
+    }
+  }
+
+  public static void callback(String routerRef, String taskRef, String url, String status,
+      boolean failed, long callbackNanos) {
+
+    if (AVAILABLE) {
+      JfrEvents.callback(routerRef, taskRef, url, status, failed, callbackNanos);
+    }
+  }
+
+  public static void taskTimeout(Long taskId, boolean escalated, Long routeId) {
+    if (AVAILABLE) {
+      JfrEvents.taskTimeout(taskId, escalated, routeId);
+    }
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.softavail.commsrouter.RuleEvaluated")
+@Label("Plan Rule Evaluated")
+@Category({"Comms Router", "Task"})
+@Description("The predicate of a plan rule was evaluated against the requirements of a task")
+class RuleEvaluatedEvent extends jdk.jfr.Event {
+
+  @Label("Task")
+  String taskRef;
+
+  @Label("Rule Id")
+  long ruleId;
+
+  @Label("Rule Tag")
+  String ruleTag;
+
+  @Label("Matched")
+  boolean matched;
+
+  @Label("Evaluation Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long evaluationTime;
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.softavail.commsrouter.TaskCreated")
+@Label("Task Created")
+@Category({"Comms Router", "Task"})
+@Description("A task was created and queued")
+class TaskCreatedEvent extends jdk.jfr.Event {
+
+  @Label("Router")
+  String routerRef;
+
+  @Label("Task")
+  String taskRef;
+
+  @Label("Queue Id")
+  long queueId;
+
+  @Label("Queue Position")
+  long queuePosition;
+
+}
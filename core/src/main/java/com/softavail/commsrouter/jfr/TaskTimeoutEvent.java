@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.softavail.commsrouter.TaskTimeout")
+@Label("Task Timeout")
+@Category({"Comms Router", "Task"})
+@Description("A waiting task timed out: escalated to the next route or left without expiration")
+class TaskTimeoutEvent extends jdk.jfr.Event {
+
+  @Label("Task Id")
+  long taskId;
+
+  @Label("Escalated")
+  boolean escalated;
+
+  @Label("Route Id")
+  long routeId;
+
+}
@@ -18,6 +18,10 @@ package com.softavail.commsrouter.jpa;
 
 import com.softavail.commsrouter.domain.Agent;
 
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.EntityManager;
+
 /**
  * @author ikrustev
  */
@@ -27,4 +31,34 @@ public class AgentRepository extends RouterObjectRepository<Agent> {
     super(transactionManager);
   }
 
+  public long countByRouterId(EntityManager em, Long routerId) {
+    return em.createQuery("SELECT COUNT(a.id) FROM Agent a WHERE a.router.id = :routerId",
+        Long.class)
+        .setParameter("routerId", routerId)
+        .getSingleResult();
+  }
+
+  /**
+   * Lists the agents of the router in id order, a page at a time.
+   */
+  public List<Agent> listAfterId(EntityManager em, Long routerId, long afterId, int maxResults) {
+    return em.createQuery("SELECT a FROM Agent a WHERE a.router.id = :routerId "
+        + "AND a.id > :afterId ORDER BY a.id", Agent.class)
+        .setParameter("routerId", routerId)
+        .setParameter("afterId", afterId)
+        .setMaxResults(maxResults)
+        .getResultList();
+  }
+
+  /**
+   * Lists the agents of the router with the given refs, with their queue mappings.
+   */
+  public List<Agent> listByRefs(EntityManager em, Long routerId, Collection<String> refs) {
+    return em.createQuery("SELECT DISTINCT a FROM Agent a LEFT JOIN FETCH a.agentQueueMappings "
+        + "WHERE a.router.id = :routerId AND a.ref IN :refs", Agent.class)
+        .setParameter("routerId", routerId)
+        .setParameter("refs", refs)
+        .getResultList();
+  }
+
 }
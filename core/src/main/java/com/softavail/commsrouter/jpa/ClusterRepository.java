@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa;
+
+import com.softavail.commsrouter.domain.ClusterNode;
+import com.softavail.commsrouter.domain.ClusterSignal;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+
+public class ClusterRepository extends GenericRepository<ClusterNode> {
+
+  public ClusterRepository(JpaTransactionManager transactionManager) {
+    super(transactionManager);
+  }
+
+  /**
+   * The clock of the database, which unlike the clocks of the nodes is the same for all of them.
+   */
+  public Date getDatabaseTime(EntityManager em) {
+    Dialect dialect = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+        .getJdbcServices().getDialect();
+    Date now = (Date) em.createNativeQuery(dialect.getCurrentTimestampSelectString())
+        .getSingleResult();
+    return new Date(now.getTime());
+  }
+
+  public void heartbeat(EntityManager em, String nodeId, Date now) {
+    ClusterNode node = em.find(ClusterNode.class, nodeId);
+    if (node == null) {
+      node = new ClusterNode(nodeId);
+      em.persist(node);
+    }
+    node.setHeartbeatDate(now);
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<String> listLiveNodes(EntityManager em, Date aliveAfter) {
+    return em.createQuery("SELECT n.id FROM ClusterNode n WHERE n.heartbeatDate > :aliveAfter "
+        + "ORDER BY n.id")
+        .setParameter("aliveAfter", aliveAfter)
+        .getResultList();
+  }
+
+  public void deleteDeadNodes(EntityManager em, Date aliveAfter) {
+    em.createQuery("DELETE FROM ClusterNode n WHERE n.heartbeatDate <= :aliveAfter")
+        .setParameter("aliveAfter", aliveAfter)
+        .executeUpdate();
+    em.createQuery("DELETE FROM ClusterSignal s "
+        + "WHERE s.nodeId NOT IN (SELECT n.id FROM ClusterNode n)")
+        .executeUpdate();
+  }
+
+  public void deleteNode(EntityManager em, String nodeId) {
+    em.createQuery("DELETE FROM ClusterSignal s WHERE s.nodeId = :nodeId")
+        .setParameter("nodeId", nodeId)
+        .executeUpdate();
+    em.createQuery("DELETE FROM ClusterNode n WHERE n.id = :nodeId")
+        .setParameter("nodeId", nodeId)
+        .executeUpdate();
+  }
+
+  public void addSignal(EntityManager em, String nodeId, Long routerId, Long queueId) {
+    em.persist(new ClusterSignal(nodeId, routerId, queueId));
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<ClusterSignal> takeSignals(EntityManager em, String nodeId) {
+    List<ClusterSignal> signals = em
+        .createQuery("SELECT s FROM ClusterSignal s WHERE s.nodeId = :nodeId ORDER BY s.id")
+        .setParameter("nodeId", nodeId)
+        .getResultList();
+    signals.forEach(em::remove);
+    return signals;
+  }
+
+}
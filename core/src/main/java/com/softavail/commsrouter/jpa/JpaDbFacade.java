@@ -17,9 +17,10 @@
 package com.softavail.commsrouter.jpa;
 
 import com.softavail.commsrouter.app.CoreConfiguration;
-import com.softavail.commsrouter.domain.Agent;
 import com.softavail.commsrouter.domain.Skill;
 
+import java.util.HashMap;
+import java.util.Map;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
@@ -29,15 +30,23 @@ import javax.persistence.Persistence;
 public class JpaDbFacade {
 
   private static final String PERSISTENCE_UNIT = "com.softavail.comms-router.core-pu";
+  private static final String NON_JTA_DATA_SOURCE = "javax.persistence.nonJtaDataSource";
+  private static final String SCHEMA_GENERATION_ACTION =
+      "javax.persistence.schema-generation.database.action";
+  private static final String JDBC_BATCH_SIZE = "hibernate.jdbc.batch_size";
+  private static final String ORDER_INSERTS = "hibernate.order_inserts";
+  private static final String ORDER_UPDATES = "hibernate.order_updates";
 
   public final JpaTransactionManager transactionManager;
 
   public final RouterRepository router;
   public final QueueRepository queue;
   public final PlanRepository plan;
-  public final RouterObjectRepository<Agent> agent;
+  public final AgentRepository agent;
   public final TaskRepository task;
+  public final TaskHistoryRepository taskHistory;
   public final RouterObjectRepository<Skill> skill;
+  public final ClusterRepository cluster;
 
   public JpaDbFacade() {
     this(CoreConfiguration.DEFAULT, PERSISTENCE_UNIT);
@@ -53,16 +62,41 @@ public class JpaDbFacade {
 
   public JpaDbFacade(CoreConfiguration configuration, String unit) {
 
-    EntityManagerFactory emf = Persistence.createEntityManagerFactory(unit);
-
-    transactionManager = new JpaTransactionManager(emf, configuration.getJpaLockRetryCount());
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(StatementCountingInspector.PROPERTY, new StatementCountingInspector());
+    Integer batchSize = configuration.getJpaBatchSize();
+    if (batchSize != null && batchSize > 0) {
+      // Ordering groups the statements for the same table, so they can share a batch
+      properties.put(JDBC_BATCH_SIZE, batchSize);
+      properties.put(ORDER_INSERTS, true);
+      properties.put(ORDER_UPDATES, true);
+    }
+
+    EntityManagerFactory emf = Persistence.createEntityManagerFactory(unit, properties);
+
+    EntityManagerFactory replicaEmf = null;
+    String replicaDataSource = configuration.getJpaReadReplicaDataSource();
+    if (replicaDataSource != null && !replicaDataSource.isEmpty()) {
+      Map<String, Object> replicaProperties = new HashMap<>(properties);
+      replicaProperties.put(NON_JTA_DATA_SOURCE, replicaDataSource);
+      replicaProperties.put(SCHEMA_GENERATION_ACTION, "none");
+      replicaEmf = Persistence.createEntityManagerFactory(unit, replicaProperties);
+    }
+
+    LockRetryPolicy lockRetryPolicy = new LockRetryPolicy(configuration.getJpaLockRetryCount(),
+        configuration.getJpaLockRetryDelay(), configuration.getJpaLockRetryDelayMax());
+
+    transactionManager = new JpaTransactionManager(emf, replicaEmf, lockRetryPolicy,
+        configuration.getJpaQueryStatisticsEnabled());
 
     this.router = new RouterRepository(transactionManager);
     this.queue = new QueueRepository(transactionManager);
     this.plan = new PlanRepository(transactionManager);
     this.agent = new AgentRepository(transactionManager);
     this.task = new TaskRepository(transactionManager);
+    this.taskHistory = new TaskHistoryRepository(transactionManager);
     this.skill = new SkillRepository(transactionManager);
+    this.cluster = new ClusterRepository(transactionManager);
 
   }
 
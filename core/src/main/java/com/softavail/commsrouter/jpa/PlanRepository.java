@@ -18,6 +18,7 @@ package com.softavail.commsrouter.jpa;
 
 import com.softavail.commsrouter.domain.Plan;
 
+import javax.persistence.EntityManager;
 
 /**
  * @author ikrustev
@@ -28,4 +29,21 @@ public class PlanRepository extends RouterObjectRepository<Plan> {
     super(transactionManager);
   }
 
+  /**
+   * Checks a cached copy of the plan without loading it.
+   */
+  public boolean isVersion(EntityManager em, String routerRef, String ref, Long id,
+      Integer version) {
+
+    return !em.createQuery("SELECT p.id FROM Plan p "
+        + "WHERE p.router.ref = :routerRef AND p.ref = :ref "
+        + "AND p.id = :id AND p.version = :version")
+        .setParameter("routerRef", routerRef)
+        .setParameter("ref", ref)
+        .setParameter("id", id)
+        .setParameter("version", version)
+        .getResultList()
+        .isEmpty();
+  }
+
 }
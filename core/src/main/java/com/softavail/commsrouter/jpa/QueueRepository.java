@@ -20,11 +20,14 @@ import com.softavail.commsrouter.api.dto.model.AgentState;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskState;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.AgentQueueMapping;
 import com.softavail.commsrouter.domain.Queue;
 import com.softavail.commsrouter.domain.result.MatchResult;
+import io.micrometer.core.instrument.Metrics;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 
 /**
@@ -66,14 +69,18 @@ public class QueueRepository extends RouterObjectRepository<Queue> {
     String query = "SELECT NEW com.softavail.commsrouter.domain.result.MatchResult(t, a) "
         + "FROM Task t JOIN t.queue q JOIN q.agentQueueMappings m JOIN m.agent a "
         + "WHERE t.state = :taskState AND a.state = :agentState AND q.id = :queueId "
-        + "ORDER BY t.priority DESC, t.id ASC, a.lastTimeAtBusyState ASC";
+        + "AND m.version = q.mappingVersion AND a.occupiedSlots < a.capacity "
+        + "ORDER BY t.priority DESC, t.id ASC, a.occupiedSlots ASC, a.lastTimeAtBusyState ASC";
 
+    long started = System.nanoTime();
     List<MatchResult> result = em.createQuery(query)
         .setParameter("taskState", TaskState.waiting)
         .setParameter("agentState", AgentState.ready)
         .setParameter("queueId", queueId)
         .setMaxResults(1)
         .getResultList();
+    Metrics.timer("router.find.assignment", "by", "queue")
+        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
 
     return result.stream().findFirst();
   }
@@ -85,16 +92,47 @@ public class QueueRepository extends RouterObjectRepository<Queue> {
     String query = "SELECT NEW com.softavail.commsrouter.domain.result.MatchResult(t, a) "
         + "FROM Task t JOIN t.queue q JOIN q.agentQueueMappings m JOIN m.agent a "
         + "WHERE t.state = :taskState AND a.state = :agentState AND a.id = :agentId "
+        + "AND m.version = q.mappingVersion AND a.occupiedSlots < a.capacity "
         + "ORDER BY t.priority DESC, t.id ASC, a.lastTimeAtBusyState ASC";
 
+    long started = System.nanoTime();
     List<MatchResult> result = em.createQuery(query)
         .setParameter("taskState", TaskState.waiting)
         .setParameter("agentState", AgentState.ready)
         .setParameter("agentId", agentId)
         .setMaxResults(1)
         .getResultList();
+    Metrics.timer("router.find.assignment", "by", "agent")
+        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
 
     return result.stream().findFirst();
   }
 
+  public List<AgentQueueMapping> listMappings(EntityManager em, Long queueId, long version,
+      long fromAgentId, long toAgentId) {
+
+    return em.createQuery("SELECT m FROM AgentQueueMapping m "
+        + "WHERE m.queue.id = :queueId AND m.version = :version "
+        + "AND m.agent.id BETWEEN :fromAgentId AND :toAgentId", AgentQueueMapping.class)
+        .setParameter("queueId", queueId)
+        .setParameter("version", version)
+        .setParameter("fromAgentId", fromAgentId)
+        .setParameter("toAgentId", toAgentId)
+        .getResultList();
+  }
+
+  public int deleteOtherMappings(EntityManager em, Long queueId, long version) {
+    return em.createQuery("DELETE FROM AgentQueueMapping m "
+        + "WHERE m.queue.id = :queueId AND m.version <> :version")
+        .setParameter("queueId", queueId)
+        .setParameter("version", version)
+        .executeUpdate();
+  }
+
+  public List<Queue> listPendingMapping(EntityManager em) {
+    return em.createQuery("SELECT q FROM Queue q WHERE q.pendingMappingVersion IS NOT NULL",
+        Queue.class)
+        .getResultList();
+  }
+
 }
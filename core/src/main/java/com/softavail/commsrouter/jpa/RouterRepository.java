@@ -20,8 +20,11 @@ import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.NotFoundException;
 import com.softavail.commsrouter.domain.Router;
 import com.softavail.commsrouter.domain.RouterConfig;
+import com.softavail.commsrouter.jfr.RoutingEvents;
+import io.micrometer.core.instrument.Metrics;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
 
@@ -82,15 +85,24 @@ public class RouterRepository extends GenericRepository<Router> {
     return result.get(0);
   }
 
-  public void deleteByRef(EntityManager em, String ref) throws CommsRouterException {
+  /**
+   * @return the id of the deleted router, or null if there is no router with this ref
+   */
+  public Long deleteByRef(EntityManager em, String ref) throws CommsRouterException {
     Router router = getByRefNoThrow(em, ref);
-    if (router != null) {
-      em.remove(router);
+    if (router == null) {
+      return null;
     }
+    em.remove(router);
+    return router.getId();
   }
 
   public void lock(EntityManager em, Long routerId) {
+    long started = System.nanoTime();
     em.find(Router.class, routerId, LockModeType.PESSIMISTIC_WRITE);
+    long waitNanos = System.nanoTime() - started;
+    Metrics.timer("router.lock.wait").record(waitNanos, TimeUnit.NANOSECONDS);
+    RoutingEvents.routerLockAcquired(em, routerId, waitNanos);
   }
 
   public void lockConfig(EntityManager em, Long routerId) {
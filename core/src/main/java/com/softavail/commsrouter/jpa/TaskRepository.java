@@ -19,8 +19,11 @@ package com.softavail.commsrouter.jpa;
 import com.softavail.commsrouter.api.dto.model.TaskState;
 import com.softavail.commsrouter.api.exception.NotFoundException;
 import com.softavail.commsrouter.domain.Task;
+import com.softavail.commsrouter.domain.result.QueueWaitingResult;
 import com.softavail.commsrouter.jpa.result.TaskEnumerableResult;
 
+import java.util.Date;
+import java.util.List;
 import javax.persistence.EntityManager;
 
 /**
@@ -56,4 +59,44 @@ public class TaskRepository extends RouterObjectRepository<Task> {
     throw new NotFoundException("Task with tag: '" + tag + "' not found");
   }
 
+  /**
+   * @return the task most recently assigned to the agent, an agent with more than one slot may
+   *     have several
+   */
+  @SuppressWarnings("unchecked")
+  public Task findAssignedToAgent(EntityManager em, Long agentId) {
+    List<Task> tasks = em.createQuery("SELECT t FROM Task t "
+        + "WHERE t.agent.id = :agentId AND t.state = :assigned "
+        + "ORDER BY t.updateDate DESC, t.id DESC")
+        .setParameter("agentId", agentId)
+        .setParameter("assigned", TaskState.assigned)
+        .setMaxResults(1)
+        .getResultList();
+    return tasks.isEmpty() ? null : tasks.get(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<Task> listFinalUpdatedBefore(EntityManager em, Date updatedBefore, int maxResults) {
+    return em.createQuery("SELECT t FROM Task t "
+        + "WHERE t.state IN (:completed, :canceled) AND t.updateDate < :updatedBefore "
+        + "ORDER BY t.id")
+        .setParameter("completed", TaskState.completed)
+        .setParameter("canceled", TaskState.canceled)
+        .setParameter("updatedBefore", updatedBefore)
+        .setMaxResults(maxResults)
+        .getResultList();
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<QueueWaitingResult> listWaitingByQueue(EntityManager em) {
+    // Every queue is listed, a queue with no waiting tasks has a count of 0
+    return em.createQuery("SELECT NEW com.softavail.commsrouter.domain.result.QueueWaitingResult("
+        + "r.ref, q.ref, COUNT(t), MIN(t.createDate)) "
+        + "FROM Queue q JOIN q.router r "
+        + "LEFT JOIN Task t ON t.queue = q AND t.state = :waiting "
+        + "GROUP BY r.ref, q.ref")
+        .setParameter("waiting", TaskState.waiting)
+        .getResultList();
+  }
+
 }
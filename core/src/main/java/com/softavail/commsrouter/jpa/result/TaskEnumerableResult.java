@@ -41,7 +41,7 @@ public class TaskEnumerableResult extends EnumeratableResult<Task> {
   protected Query createQuery(EntityManager em) {
     
     StringBuilder qlBuilder = new StringBuilder(); 
-    qlBuilder.append("SELECT t FROM Task t");
+    qlBuilder.append("SELECT t FROM Task t JOIN FETCH t.router");
     if (this.stateFiler != null) {
       qlBuilder.append(" WHERE t.state = :taskState");
     }
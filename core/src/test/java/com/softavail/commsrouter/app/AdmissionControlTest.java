@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.softavail.commsrouter.api.exception.ServiceUnavailableException;
+import com.softavail.commsrouter.api.exception.TooManyRequestsException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControlTest {
+
+  private final CoreConfiguration configuration = mock(CoreConfiguration.class);
+  private final TaskDispatcher taskDispatcher = mock(TaskDispatcher.class);
+  private final AdmissionControl admission = new AdmissionControl(configuration, taskDispatcher);
+
+  @Test
+  public void routerRateRefillsOverTime() throws TooManyRequestsException {
+    when(configuration.getTaskAdmissionRouterRate()).thenReturn(2);
+    long now = 0;
+    admission.trackRate("router", now);
+    admission.trackRate("other", now);
+
+    admission.admitRate("router", now);
+    admission.admitRate("router", now);
+    try {
+      admission.admitRate("router", now);
+      fail("A third task in the same second was accepted");
+    } catch (TooManyRequestsException e) {
+      assertEquals(1, e.getRetryAfterSeconds());
+    }
+    // The buckets are per router
+    admission.admitRate("other", now);
+
+    admission.admitRate("router", now + TimeUnit.MILLISECONDS.toNanos(500));
+  }
+
+  @Test
+  public void unknownRoutersHaveNoBucket() throws TooManyRequestsException {
+    when(configuration.getTaskAdmissionRouterRate()).thenReturn(1);
+
+    for (int i = 0; i < 10; ++i) {
+      admission.admitRate("bogus-" + i, 0);
+    }
+    assertEquals(0, admission.size());
+
+    admission.trackRate("router", 0);
+    assertEquals(1, admission.size());
+    admission.forget("router");
+    assertEquals(0, admission.size());
+  }
+
+  @Test(expected = ServiceUnavailableException.class)
+  public void dispatchBacklogIsShed() throws ServiceUnavailableException {
+    when(configuration.getTaskAdmissionMaxBacklog()).thenReturn(10);
+    when(configuration.getTaskAdmissionRetryAfter()).thenReturn(5);
+    Bulkhead bulkhead = mock(Bulkhead.class);
+    when(bulkhead.getQueueDepth()).thenReturn(10, 11);
+    when(taskDispatcher.getBulkhead(1L)).thenReturn(bulkhead);
+
+    admission.admitDispatch(1L);
+    admission.admitDispatch(1L);
+  }
+
+  @Test
+  public void disabledLimitsAdmitEverything() throws Exception {
+    when(configuration.getTaskAdmissionRouterRate()).thenReturn(0);
+    when(configuration.getTaskAdmissionMaxBacklog()).thenReturn(0);
+    when(configuration.getTaskAdmissionMaxWaiting()).thenReturn(0);
+
+    for (int i = 0; i < 1000; ++i) {
+      admission.admitRate("router", 0);
+    }
+    admission.admitDispatch(1L);
+    admission.admitQueued(Long.MAX_VALUE);
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.dto.model.AgentDto;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
+import com.softavail.commsrouter.api.dto.model.TaskDto;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AssignmentWaitersTest {
+
+  private final AssignmentWaiters waiters = new AssignmentWaiters();
+
+  private static class TestWaiter implements AssignmentWaiters.Waiter {
+
+    final List<TaskAssignmentDto> delivered = new ArrayList<>();
+    boolean gone;
+    boolean replaced;
+
+    @Override
+    public boolean deliver(TaskAssignmentDto assignment) {
+      if (gone) {
+        return false;
+      }
+      delivered.add(assignment);
+      return true;
+    }
+
+    @Override
+    public void replaced() {
+      replaced = true;
+    }
+  }
+
+  private static TaskAssignmentDto assignment(String routerRef, String agentRef) {
+    AgentDto agent = new AgentDto();
+    agent.setRouterRef(routerRef);
+    agent.setRef(agentRef);
+    return new TaskAssignmentDto(new TaskDto(), agent);
+  }
+
+  @Test
+  public void deliversOnceToTheAgent() {
+    TestWaiter waiter = new TestWaiter();
+    waiters.register(assignment("r1", "a1").getAgent(), waiter);
+
+    assertFalse(waiters.deliver(assignment("r2", "a1")));
+    TaskAssignmentDto assignment = assignment("r1", "a1");
+    assertTrue(waiters.deliver(assignment));
+    assertFalse(waiters.deliver(assignment("r1", "a1")));
+    assertEquals(1, waiter.delivered.size());
+    assertSame(assignment, waiter.delivered.get(0));
+    assertEquals(0, waiters.size());
+  }
+
+  @Test
+  public void newerWaiterReplacesOlder() {
+    TestWaiter first = new TestWaiter();
+    TestWaiter second = new TestWaiter();
+    AgentDto agent = assignment("r1", "a1").getAgent();
+    waiters.register(agent, first);
+    waiters.register(agent, second);
+
+    assertTrue(first.replaced);
+    assertFalse(waiters.remove(agent, first));
+    assertTrue(waiters.deliver(assignment("r1", "a1")));
+    assertEquals(1, second.delivered.size());
+  }
+
+  @Test
+  public void goneWaiterFallsBack() {
+    TestWaiter waiter = new TestWaiter();
+    waiter.gone = true;
+    waiters.register(assignment("r1", "a1").getAgent(), waiter);
+
+    assertFalse(waiters.deliver(assignment("r1", "a1")));
+    assertEquals(0, waiters.size());
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkheadTest {
+
+  private DispatcherExecutor executor;
+
+  @Before
+  public void setUp() {
+    executor = new PlatformDispatcherExecutor(8);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown(0);
+  }
+
+  @Test
+  public void limitsConcurrency() throws InterruptedException {
+    Bulkhead bulkhead = new Bulkhead("test", 2, executor);
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(20);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    for (int i = 0; i < 20; ++i) {
+      bulkhead.execute(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        done.countDown();
+      });
+    }
+
+    // Both permitted jobs must be running before they are released
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    assertEquals(2, bulkhead.getActiveCount());
+    assertEquals(18, bulkhead.getQueueDepth());
+    assertEquals(1.0, bulkhead.getSaturation(), 0.0);
+
+    release.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, maxRunning.get());
+    assertEquals(0, bulkhead.getQueueDepth());
+  }
+
+  @Test
+  public void saturatedBulkheadDoesNotBlockOthers() throws InterruptedException {
+    Bulkhead slow = new Bulkhead("slow", 2, executor);
+    Bulkhead fast = new Bulkhead("fast", 2, executor);
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 100; ++i) {
+      slow.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+
+    CountDownLatch fastDone = new CountDownLatch(1);
+    fast.execute(fastDone::countDown);
+
+    assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+    release.countDown();
+  }
+
+  @Test
+  public void routersShareTheBulkheadOfTheirGroup() {
+    CoreConfiguration configuration = mock(CoreConfiguration.class);
+    when(configuration.getDispatcherBulkheadConcurrency()).thenReturn(2);
+    when(configuration.getDispatcherBulkheadGroups()).thenReturn(4);
+    BulkheadManager bulkheads = new BulkheadManager(executor, configuration);
+
+    assertSame(bulkheads.get(1L), bulkheads.get(5L));
+    assertNotSame(bulkheads.get(1L), bulkheads.get(2L));
+    assertEquals(2, bulkheads.list().size());
+  }
+
+  @Test
+  public void everyRouterHasItsOwnBulkhead() {
+    BulkheadManager bulkheads = new BulkheadManager(executor, CoreConfiguration.DEFAULT);
+
+    assertNotSame(bulkheads.get(1L), bulkheads.get(5L));
+    assertSame(bulkheads.get(1L), bulkheads.get(1L));
+    assertEquals("router-1", bulkheads.get(1L).getName());
+  }
+
+  @Test
+  public void deletedRoutersDropTheirBulkhead() {
+    BulkheadManager bulkheads = new BulkheadManager(executor, CoreConfiguration.DEFAULT);
+    bulkheads.get(1L);
+    bulkheads.get(2L);
+
+    bulkheads.remove(1L);
+    assertEquals(1, bulkheads.list().size());
+    assertEquals("router-2", bulkheads.list().get(0).getName());
+  }
+
+  @Test
+  public void groupBulkheadsAreKept() {
+    CoreConfiguration configuration = mock(CoreConfiguration.class);
+    when(configuration.getDispatcherBulkheadConcurrency()).thenReturn(2);
+    when(configuration.getDispatcherBulkheadGroups()).thenReturn(4);
+    BulkheadManager bulkheads = new BulkheadManager(executor, configuration);
+    bulkheads.get(1L);
+
+    bulkheads.remove(1L);
+    assertEquals(1, bulkheads.list().size());
+  }
+
+}
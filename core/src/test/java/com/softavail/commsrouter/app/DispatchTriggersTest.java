@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class DispatchTriggersTest {
+
+  private final List<Long> processed = new ArrayList<>();
+
+  @Test
+  public void burstWakesEachQueueOnce() {
+    // The mocked pool never runs the flush, the test runs it
+    ScheduledExecutorService threadPool = mock(ScheduledExecutorService.class);
+    DispatchTriggers triggers =
+        new DispatchTriggers(threadPool, 5, (routerId, queueId) -> processed.add(queueId));
+
+    for (int i = 0; i < 1000; ++i) {
+      triggers.trigger(1L, (long) (i % 2));
+    }
+    verify(threadPool, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    assertEquals(2, triggers.size());
+
+    triggers.flush();
+    processed.sort(Long::compare);
+    assertEquals(Arrays.asList(0L, 1L), processed);
+    assertEquals(0, triggers.size());
+
+    triggers.trigger(1L, 0L);
+    verify(threadPool, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void zeroIntervalProcessesRightAway() {
+    ScheduledExecutorService threadPool = mock(ScheduledExecutorService.class);
+    DispatchTriggers triggers =
+        new DispatchTriggers(threadPool, 0, (routerId, queueId) -> processed.add(queueId));
+
+    triggers.trigger(1L, 7L);
+    triggers.trigger(1L, 7L);
+
+    assertEquals(Arrays.asList(7L, 7L), processed);
+    verify(threadPool, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DispatcherExecutorTest {
+
+  private void timersDoNotWaitForWork(DispatcherExecutor executor) throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      // Keep more work blocked than a small platform pool has threads
+      for (int i = 0; i < 20; ++i) {
+        executor.execute(() -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+      }
+      AtomicReference<Thread> timerThread = new AtomicReference<>();
+      CountDownLatch fired = new CountDownLatch(1);
+      executor.schedule(() -> {
+        timerThread.set(Thread.currentThread());
+        fired.countDown();
+      }, 10, TimeUnit.MILLISECONDS);
+
+      assertTrue(fired.await(10, TimeUnit.SECONDS));
+      assertNotEquals(Thread.currentThread(), timerThread.get());
+    } finally {
+      release.countDown();
+      executor.shutdown(10);
+    }
+    assertTrue(executor.isShutdown());
+  }
+
+  @Test
+  public void platformThreads() throws InterruptedException {
+    timersDoNotWaitForWork(new PlatformDispatcherExecutor(4));
+  }
+
+  @Test
+  public void virtualThreads() throws InterruptedException {
+    assumeTrue(VirtualThreadDispatcherExecutor.isAvailable());
+    timersDoNotWaitForWork(new VirtualThreadDispatcherExecutor());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void virtualThreadsNeedJava21() {
+    assumeTrue(!VirtualThreadDispatcherExecutor.isAvailable());
+    new VirtualThreadDispatcherExecutor();
+  }
+
+  @Test
+  public void newExecutorIsRunning() {
+    DispatcherExecutor executor = new PlatformDispatcherExecutor(1);
+    assertFalse(executor.isShutdown());
+    executor.shutdown(10);
+  }
+
+}
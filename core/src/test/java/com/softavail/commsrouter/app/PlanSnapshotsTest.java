@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class PlanSnapshotsTest {
+
+  private final PlanSnapshots snapshots = new PlanSnapshots();
+
+  private static PlanSnapshot snapshot(long planId, int version) {
+    PlanSnapshot snapshot = mock(PlanSnapshot.class);
+    when(snapshot.getPlanId()).thenReturn(planId);
+    when(snapshot.getVersion()).thenReturn(version);
+    when(snapshot.getRules()).thenReturn(Collections.emptyList());
+    return snapshot;
+  }
+
+  @Test
+  public void keepsTheNewerSnapshot() {
+    PlanSnapshot older = snapshot(1, 1);
+    PlanSnapshot newer = snapshot(1, 2);
+
+    snapshots.put("router", "plan", newer, snapshots.getGeneration());
+    assertSame(newer, snapshots.put("router", "plan", older, snapshots.getGeneration()));
+    assertSame(newer, snapshots.get("router", "plan"));
+  }
+
+  // A plan compiled before an invalidation may be the one that was just changed
+  @Test
+  public void doesNotCacheAfterInvalidation() {
+    long generation = snapshots.getGeneration();
+    PlanSnapshot stale = snapshot(1, 1);
+
+    snapshots.invalidate("router", "plan");
+    assertSame(stale, snapshots.put("router", "plan", stale, generation));
+    assertNull(snapshots.get("router", "plan"));
+
+    PlanSnapshot current = snapshot(1, 2);
+    snapshots.put("router", "plan", current, snapshots.getGeneration());
+    assertSame(current, snapshots.get("router", "plan"));
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.mockito.Mockito.mock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wake-ups from many request threads. The processors never run, so this measures the cost of
+ * waking a queue that is already being processed, which is the common case under load.
+ *
+ * <p>Run with: mvn -pl core test-compile exec:java
+ * -Dexec.mainClass=com.softavail.commsrouter.app.QueueProcessorManagerBenchmark
+ * -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+public class QueueProcessorManagerBenchmark {
+
+  private static final int QUEUES = 1000;
+
+  private QueueProcessorManager manager;
+  private Bulkhead bulkhead;
+
+  @Setup
+  public void setup() {
+    manager = new QueueProcessorManager();
+    bulkhead = mock(Bulkhead.class);
+  }
+
+  @Benchmark
+  public void wakeUpSameQueue() {
+    manager.processQueue(1L, 1L, null, null, null, CoreConfiguration.DEFAULT, bulkhead);
+  }
+
+  @Benchmark
+  public void wakeUpManyQueues() {
+    long queueId = ThreadLocalRandom.current().nextInt(QUEUES);
+    manager.processQueue(1L, queueId, null, null, null, CoreConfiguration.DEFAULT, bulkhead);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(QueueProcessorManagerBenchmark.class.getSimpleName())
+        .build())
+        .run();
+  }
+
+}
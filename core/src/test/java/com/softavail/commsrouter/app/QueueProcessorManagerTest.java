@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class QueueProcessorManagerTest {
+
+  private static final int THREADS = 16;
+  private static final int WAKE_UPS = 1000;
+
+  private void wakeUpConcurrently(QueueProcessorManager manager,
+      Bulkhead bulkhead, int queues) throws InterruptedException {
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < THREADS; ++i) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+        for (int j = 0; j < WAKE_UPS; ++j) {
+          long queueId = j % queues;
+          manager.processQueue(1L, queueId, null, null, null, CoreConfiguration.DEFAULT,
+              bulkhead);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void concurrentWakeUpsStartTheProcessorOnce() throws InterruptedException {
+    // The mocked bulkhead never runs the processor, so it stays busy after the first wake-up
+    Bulkhead bulkhead = mock(Bulkhead.class);
+    QueueProcessorManager manager = new QueueProcessorManager();
+
+    wakeUpConcurrently(manager, bulkhead, 1);
+
+    verify(bulkhead, times(1)).execute(any(Runnable.class));
+    assertEquals(1, manager.size());
+  }
+
+  @Test
+  public void everyQueueGetsItsOwnProcessor() throws InterruptedException {
+    Bulkhead bulkhead = mock(Bulkhead.class);
+    QueueProcessorManager manager = new QueueProcessorManager();
+
+    wakeUpConcurrently(manager, bulkhead, 10);
+
+    verify(bulkhead, times(10)).execute(any(Runnable.class));
+    assertEquals(10, manager.size());
+  }
+
+}
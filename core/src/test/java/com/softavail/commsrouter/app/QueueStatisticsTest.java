@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QueueStatisticsTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private final QueueStatistics statistics = new QueueStatistics(100, now::get);
+
+  @Test
+  public void aggregatesQueueAndRouter() {
+    statistics.taskCreated(1L, 10L);
+    statistics.taskCreated(1L, 10L);
+    statistics.taskCreated(1L, 11L);
+    statistics.taskAssigned(1L, 10L, 1000);
+    statistics.taskAssigned(1L, 10L, 3000);
+    statistics.taskAbandoned(1L, 11L, 5000);
+    statistics.taskCompleted(1L, 10L, 20000);
+
+    QueueStatisticsDto queue = statistics.getQueue(10L);
+    assertEquals(100, queue.getWindowSeconds());
+    assertEquals(2, queue.getArrivals());
+    assertEquals(2, queue.getAssigned());
+    assertEquals(0, queue.getAbandoned());
+    assertEquals(1, queue.getCompleted());
+    assertEquals(0.0, queue.getAbandonRate(), 0.0);
+    assertEquals(Long.valueOf(2000), queue.getAverageWaitMillis());
+    assertEquals(Long.valueOf(20000), queue.getAverageHandleMillis());
+    assertEquals(1000, queue.getWaitP50Millis(), 10);
+    assertEquals(3000, queue.getWaitP95Millis(), 30);
+
+    QueueStatisticsDto router = statistics.getRouter(1L);
+    assertEquals(3, router.getArrivals());
+    assertEquals(1, router.getAbandoned());
+    assertEquals(1.0 / 3, router.getAbandonRate(), 0.001);
+  }
+
+  @Test
+  public void expiresOldBuckets() {
+    statistics.taskAssigned(1L, 10L, 1000);
+    now.addAndGet(50_000);
+    statistics.taskAssigned(1L, 10L, 3000);
+    assertEquals(2, statistics.getQueue(10L).getAssigned());
+
+    now.addAndGet(60_000);
+    QueueStatisticsDto queue = statistics.getQueue(10L);
+    assertEquals(1, queue.getAssigned());
+    assertEquals(Long.valueOf(3000), queue.getAverageWaitMillis());
+
+    now.addAndGet(100_000);
+    queue = statistics.getQueue(10L);
+    assertEquals(0, queue.getAssigned());
+    assertNull(queue.getAverageWaitMillis());
+    assertNull(queue.getWaitP50Millis());
+  }
+
+  @Test
+  public void estimatesWaitFromServiceRate() {
+    assertNull(statistics.estimateWait(10L, 0));
+    statistics.taskCreated(1L, 10L);
+    assertNull(statistics.estimateWait(10L, 0));
+
+    // 10 assignments in the 100 seconds window
+    for (int i = 0; i < 10; ++i) {
+      now.addAndGet(10_000);
+      statistics.taskAssigned(1L, 10L, 0);
+    }
+    assertEquals(Long.valueOf(10), statistics.estimateWait(10L, 0));
+    assertEquals(Long.valueOf(50), statistics.estimateWait(10L, 4));
+  }
+
+  @Test
+  public void dropsIdleWindows() {
+    statistics.taskCreated(1L, 10L);
+    now.addAndGet(200_000);
+    statistics.taskCreated(2L, 20L);
+    assertEquals(0, statistics.getQueue(10L).getArrivals());
+    assertEquals(0, statistics.getRouter(1L).getArrivals());
+    assertNull(statistics.estimateWait(10L, 0));
+  }
+
+  @Test
+  public void recordsEventsAfterEviction() {
+    statistics.taskCreated(1L, 10L);
+    now.addAndGet(200_000);
+    statistics.taskCreated(2L, 20L);
+    statistics.taskCreated(1L, 10L);
+    assertEquals(1, statistics.getQueue(10L).getArrivals());
+    assertEquals(1, statistics.getRouter(1L).getArrivals());
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.dto.misc.RouterEventDto;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RouterEventBusTest {
+
+  private final RouterEventBus eventBus = new RouterEventBus(2);
+
+  private static RouterEventDto event(String routerRef, String queueRef, String agentRef) {
+    RouterEventDto event = new RouterEventDto();
+    event.setType(RouterEventDto.TASK);
+    event.setRouterRef(routerRef);
+    event.setQueueRef(queueRef);
+    event.setAgentRef(agentRef);
+    return event;
+  }
+
+  @Test
+  public void filtersByRouterQueueAndAgent() {
+    AtomicInteger notified = new AtomicInteger();
+    RouterEventBus.Subscriber all = eventBus.subscribe("r1", null, null, notified::incrementAndGet);
+    RouterEventBus.Subscriber queue = eventBus.subscribe("r1", "q1", null, () -> { });
+    RouterEventBus.Subscriber agent = eventBus.subscribe("r1", null, "a1", () -> { });
+
+    eventBus.publish(event("r2", "q1", "a1"));
+    eventBus.publish(event("r1", "q2", "a1"));
+
+    RouterEventDto event = all.poll();
+    assertEquals("q2", event.getQueueRef());
+    assertTrue(event.getId() > 0);
+    assertNull(all.poll());
+    assertEquals(1, notified.get());
+    assertNull(queue.poll());
+    assertEquals("q2", agent.poll().getQueueRef());
+  }
+
+  @Test
+  public void evictsSlowSubscriber() {
+    RouterEventBus.Subscriber slow = eventBus.subscribe("r1", null, null, () -> { });
+    RouterEventBus.Subscriber fast = eventBus.subscribe("r1", null, null, () -> { });
+
+    for (int i = 0; i < 3; ++i) {
+      eventBus.publish(event("r1", "q1", null));
+      fast.poll();
+    }
+
+    assertTrue(slow.isEvicted());
+    assertFalse(fast.isEvicted());
+    assertEquals(1, eventBus.getSubscriberCount());
+    // What was buffered before the eviction is still there
+    assertEquals(1, slow.poll().getId());
+    assertEquals(2, slow.poll().getId());
+    assertNull(slow.poll());
+  }
+
+  @Test
+  public void closeUnsubscribes() {
+    RouterEventBus.Subscriber subscriber = eventBus.subscribe("r1", null, null, () -> { });
+    assertEquals(1, eventBus.getSubscriberCount());
+    subscriber.close();
+    assertEquals(0, eventBus.getSubscriberCount());
+    eventBus.publish(event("r1", "q1", null));
+    assertNull(subscriber.poll());
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class TaskExpirationTimersTest {
+
+  private final List<Long> expired = new ArrayList<>();
+
+  private final TaskExpirationTimers timers = new TaskExpirationTimers(
+      mock(ScheduledExecutorService.class), (routerId, taskId) -> expired.add(taskId));
+
+  @Test
+  public void firesTheDueBuckets() {
+    timers.schedule(1L, 1L, 1, 500);
+    timers.schedule(1L, 2L, 1, 900);
+    timers.schedule(1L, 3L, 3, 500);
+
+    assertEquals(0, timers.fire(1500));
+    assertEquals(2, timers.fire(2000));
+    assertEquals(Arrays.asList(1L, 2L), expired);
+    assertEquals(1, timers.size());
+
+    assertEquals(1, timers.fire(10000));
+    assertEquals(Arrays.asList(1L, 2L, 3L), expired);
+    assertEquals(0, timers.size());
+  }
+
+  @Test
+  public void pastTimersFireOnTheNextTick() {
+    // Restarted timers of tasks that expired while the instance was down
+    timers.schedule(1L, 1L, -30, 5000);
+
+    assertEquals(1, timers.fire(5000));
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.eval;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.AttributeGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First matching rule of a plan with 150 rules on language, product and tier, found by the linear
+ * scan and through the decision tree.
+ *
+ * <p>Run with: mvn -pl core test-compile exec:java
+ * -Dexec.mainClass=com.softavail.commsrouter.eval.RuleDecisionTreeBenchmark
+ * -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleDecisionTreeBenchmark {
+
+  private static final String[] LANGUAGES = {"en", "fr", "de", "es", "bg"};
+  private static final String[] PRODUCTS = {"tv", "phone", "internet", "bundle", "mobile", "cloud"};
+  private static final String[] TIERS = {"gold", "silver", "bronze", "basic", "trial"};
+  private static final int TASKS = 1024;
+
+  private List<CommsRouterEvaluator> rules;
+  private RuleDecisionTree tree;
+  private AttributeGroup[] tasks;
+  private int next;
+
+  @Setup
+  public void setup() throws CommsRouterException {
+    CommsRouterEvaluatorFactory factory = new CommsRouterEvaluatorFactory();
+    rules = new ArrayList<>();
+    for (String language : LANGUAGES) {
+      for (String product : PRODUCTS) {
+        for (String tier : TIERS) {
+          rules.add(factory.provide(
+              "language==" + language + ";product==" + product + ";tier==" + tier, "router"));
+        }
+      }
+    }
+    tree = new RuleDecisionTree(rules);
+    Random random = new Random(1);
+    tasks = new AttributeGroup[TASKS];
+    for (int i = 0; i < TASKS; ++i) {
+      AttributeGroup task = new AttributeGroup();
+      task.add("language", LANGUAGES[random.nextInt(LANGUAGES.length)]);
+      task.add("product", PRODUCTS[random.nextInt(PRODUCTS.length)]);
+      task.add("tier", TIERS[random.nextInt(TIERS.length)]);
+      tasks[i] = task;
+    }
+  }
+
+  private AttributeGroup nextTask() {
+    next = (next + 1) & (TASKS - 1);
+    return tasks[next];
+  }
+
+  @Benchmark
+  public int linear() throws CommsRouterException {
+    AttributeGroup task = nextTask();
+    for (int i = 0; i < rules.size(); ++i) {
+      if (rules.get(i).evaluate(task)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Benchmark
+  public int decisionTree() throws CommsRouterException {
+    AttributeGroup task = nextTask();
+    for (int candidate : tree.candidates(task)) {
+      if (rules.get(candidate).evaluate(task)) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RuleDecisionTreeBenchmark.class.getSimpleName())
+        .build())
+        .run();
+  }
+
+}
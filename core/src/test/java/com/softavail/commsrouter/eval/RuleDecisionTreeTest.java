@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.eval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.domain.AttributeGroup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class RuleDecisionTreeTest {
+
+  private final CommsRouterEvaluatorFactory factory = new CommsRouterEvaluatorFactory();
+
+  private List<CommsRouterEvaluator> compile(String... predicates) throws CommsRouterException {
+    List<CommsRouterEvaluator> evaluators = new ArrayList<>();
+    for (String predicate : predicates) {
+      evaluators.add(factory.provide(predicate, "router"));
+    }
+    return evaluators;
+  }
+
+  private static AttributeGroup attributes(Object... nameValues) {
+    AttributeGroup group = new AttributeGroup();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      Object value = nameValues[i + 1];
+      if (value instanceof Double) {
+        group.add((String) nameValues[i], (Double) value);
+      } else {
+        group.add((String) nameValues[i], (String) value);
+      }
+    }
+    return group;
+  }
+
+  @Test
+  public void branchesOnLeadingEqualities() throws CommsRouterException {
+    RuleDecisionTree tree = new RuleDecisionTree(compile(
+        "language==en;tier==gold",
+        "language==fr",
+        "1==1",
+        "language==en;tier==silver",
+        "language=in=(de,fr);tier==gold",
+        "wait>5;language==en"));
+
+    assertArrayEquals(new int[] {0, 2, 5},
+        tree.candidates(attributes("language", "en", "tier", "gold")));
+    assertArrayEquals(new int[] {1, 2, 4, 5},
+        tree.candidates(attributes("language", "fr", "tier", "gold")));
+    assertArrayEquals(new int[] {2, 5}, tree.candidates(attributes("tier", "gold")));
+  }
+
+  @Test
+  public void keepsAllRulesForNonStringValues() throws CommsRouterException {
+    RuleDecisionTree tree = new RuleDecisionTree(compile("tier==1", "tier==2", "tier==3"));
+
+    assertArrayEquals(new int[] {0, 1, 2}, tree.candidates(attributes("tier", 2d)));
+    assertArrayEquals(new int[] {0, 1, 2}, tree.candidates(null));
+  }
+
+  @Test
+  public void findsTheSameFirstMatchAsLinearScan() throws CommsRouterException {
+    String[] languages = {"en", "fr", "de"};
+    String[] tiers = {"gold", "silver"};
+    Random random = new Random(42);
+    List<String> predicates = new ArrayList<>();
+    for (int i = 0; i < 60; ++i) {
+      String language = languages[random.nextInt(languages.length)];
+      String tier = tiers[random.nextInt(tiers.length)];
+      switch (random.nextInt(4)) {
+        case 0:
+          predicates.add("language==" + language);
+          break;
+        case 1:
+          predicates.add("language==" + language + ";tier==" + tier);
+          break;
+        case 2:
+          predicates.add("tier==" + tier + ";language!=" + language);
+          break;
+        default:
+          predicates.add("language=in=(" + language + ",xx),tier==" + tier);
+          break;
+      }
+    }
+    List<CommsRouterEvaluator> evaluators = compile(predicates.toArray(new String[0]));
+    RuleDecisionTree tree = new RuleDecisionTree(evaluators);
+
+    for (String language : Arrays.asList("en", "fr", "de", "bg")) {
+      for (String tier : Arrays.asList("gold", "silver", "bronze")) {
+        AttributeGroup task = attributes("language", language, "tier", tier);
+        int linear = -1;
+        for (int i = 0; i < evaluators.size() && linear < 0; ++i) {
+          linear = evaluators.get(i).evaluate(task) ? i : -1;
+        }
+        int indexed = -1;
+        for (int candidate : tree.candidates(task)) {
+          if (evaluators.get(candidate).evaluate(task)) {
+            indexed = candidate;
+            break;
+          }
+        }
+        assertEquals(language + "/" + tier, linear, indexed);
+      }
+    }
+  }
+
+}
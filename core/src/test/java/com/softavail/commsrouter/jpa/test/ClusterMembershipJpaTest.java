@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.app.DbClusterMembership;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several cluster nodes in the same JVM sharing the test database.
+ */
+public class ClusterMembershipJpaTest extends TestBase {
+
+  private static final long QUEUE_COUNT = 200;
+
+  private ScheduledThreadPoolExecutor threadPool;
+  private List<DbClusterMembership> nodes;
+  private List<List<Long>> wakeUps;
+  private List<AtomicInteger> ownershipChanges;
+
+  @Before
+  public void createNodes() {
+    threadPool = new ScheduledThreadPoolExecutor(1);
+    nodes = new ArrayList<>();
+    wakeUps = new ArrayList<>();
+    ownershipChanges = new ArrayList<>();
+    for (String nodeId : Arrays.asList("node-a", "node-b", "node-c")) {
+      List<Long> nodeWakeUps = new ArrayList<>();
+      AtomicInteger nodeOwnershipChanges = new AtomicInteger();
+      nodes.add(new DbClusterMembership.Builder()
+          .setDb(app.db)
+          .setNodeId(nodeId)
+          .setHeartbeatSeconds(60)
+          .setNodeTimeoutSeconds(1)
+          .setSignalPollMillis(1000)
+          .setThreadPool(threadPool)
+          .setWakeUpListener((routerId, queueId) -> nodeWakeUps.add(queueId))
+          .setOwnershipListener(nodeOwnershipChanges::incrementAndGet)
+          .build());
+      wakeUps.add(nodeWakeUps);
+      ownershipChanges.add(nodeOwnershipChanges);
+    }
+  }
+
+  @After
+  public void shutdownThreadPool() {
+    threadPool.shutdownNow();
+  }
+
+  private void heartbeat(List<DbClusterMembership> members) throws CommsRouterException {
+    // Twice, so that every node sees the heartbeat of the nodes after it
+    for (int i = 0; i < 2; ++i) {
+      for (DbClusterMembership node : members) {
+        node.heartbeat();
+      }
+    }
+  }
+
+  private DbClusterMembership getOwner(Long queueId, List<DbClusterMembership> members) {
+    DbClusterMembership owner = null;
+    for (DbClusterMembership node : members) {
+      if (node.isOwner(queueId)) {
+        assertEquals("Queue " + queueId + " has two owners", null, owner);
+        owner = node;
+      }
+    }
+    assertTrue("Queue " + queueId + " has no owner", owner != null);
+    return owner;
+  }
+
+  @Test
+  public void everyQueueHasOneOwner() throws CommsRouterException {
+    heartbeat(nodes);
+
+    int[] owned = new int[nodes.size()];
+    for (long queueId = 1; queueId <= QUEUE_COUNT; ++queueId) {
+      ++owned[nodes.indexOf(getOwner(queueId, nodes))];
+    }
+    for (int count : owned) {
+      assertTrue(Arrays.toString(owned), count > QUEUE_COUNT / 10);
+    }
+    assertEquals(Arrays.asList("node-a", "node-b", "node-c"), nodes.get(0).getLiveNodes());
+  }
+
+  @Test
+  public void wakeUpIsForwardedToTheOwner() throws CommsRouterException {
+    heartbeat(nodes);
+    DbClusterMembership nodeA = nodes.get(0);
+    long queueId = 1;
+    while (nodeA.isOwner(queueId)) {
+      ++queueId;
+    }
+    DbClusterMembership owner = getOwner(queueId, nodes);
+
+    nodeA.wakeUp(1L, queueId);
+    nodeA.wakeUp(1L, queueId);
+
+    assertEquals(0, nodeA.pollSignals());
+    assertEquals(1, owner.pollSignals());
+    assertEquals(Arrays.asList(queueId), wakeUps.get(nodes.indexOf(owner)));
+    assertEquals(0, owner.pollSignals());
+  }
+
+  @Test
+  public void onlyTheQueuesOfALeavingNodeMove() throws CommsRouterException {
+    heartbeat(nodes);
+    List<DbClusterMembership> before = new ArrayList<>();
+    for (long queueId = 1; queueId <= QUEUE_COUNT; ++queueId) {
+      before.add(getOwner(queueId, nodes));
+    }
+    int changes = ownershipChanges.get(0).get();
+
+    DbClusterMembership leaving = nodes.get(2);
+    leaving.close();
+    List<DbClusterMembership> remaining = nodes.subList(0, 2);
+    heartbeat(remaining);
+
+    assertEquals(changes + 1, ownershipChanges.get(0).get());
+    for (long queueId = 1; queueId <= QUEUE_COUNT; ++queueId) {
+      DbClusterMembership owner = getOwner(queueId, remaining);
+      DbClusterMembership previousOwner = before.get((int) queueId - 1);
+      if (previousOwner != leaving) {
+        assertEquals(previousOwner, owner);
+      }
+    }
+  }
+
+  @Test
+  public void silentNodeTimesOut() throws CommsRouterException, InterruptedException {
+    heartbeat(nodes);
+    Thread.sleep(1100);
+    heartbeat(nodes.subList(0, 2));
+
+    assertEquals(Arrays.asList("node-a", "node-b"), nodes.get(0).getLiveNodes());
+    assertFalse(nodes.get(0).getLiveNodes().contains("node-c"));
+  }
+
+  @Test
+  public void readsTheDatabaseTime() throws CommsRouterException {
+    long before = System.currentTimeMillis();
+    Date databaseTime = app.db.transactionManager.execute(app.db.cluster::getDatabaseTime);
+    long after = System.currentTimeMillis();
+
+    // The same clock here, only the rounding of the database may differ
+    assertTrue(databaseTime.toString(), databaseTime.getTime() >= before - 1000);
+    assertTrue(databaseTime.toString(), databaseTime.getTime() <= after + 1000);
+  }
+
+}
@@ -5,17 +5,37 @@
 package com.softavail.commsrouter.jpa.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import com.softavail.commsrouter.api.dto.arg.BatchAgentArg;
+import com.softavail.commsrouter.api.dto.arg.CreateAgentArg;
+import com.softavail.commsrouter.api.dto.arg.UpdateAgentArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
 import com.softavail.commsrouter.api.dto.model.AgentDto;
 import com.softavail.commsrouter.api.dto.model.AgentState;
+import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
+import com.softavail.commsrouter.api.dto.model.TaskState;
+import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
+import com.softavail.commsrouter.api.dto.model.attribute.StringAttributeValueDto;
 import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.NotFoundException;
+import com.softavail.commsrouter.app.AssignmentWaiters;
+import com.softavail.commsrouter.app.CoreConfiguration;
+import com.softavail.commsrouter.domain.Agent;
 
 import org.junit.Test;
 
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 /**
  * @author G.Ivanov
  */
@@ -80,4 +100,198 @@ public class CoreAgentServiceJpaTest extends TestBase {
     assertEquals(agent.getState(), AgentState.offline);
   }
 
+  // Waiting for the next task makes an offline agent ready
+  @Test
+  public void awaitAssignmentTest() throws CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("", "01");
+    agentService.replace(newCreateAgentArg("address_one"), ref); // offline
+    AssignmentWaiters waiters = app.taskDispatcher.getAssignmentWaiters();
+    AssignmentWaiters.Waiter waiter = new AssignmentWaiters.Waiter() {
+      @Override
+      public boolean deliver(TaskAssignmentDto assignment) {
+        return true;
+      }
+
+      @Override
+      public void replaced() {}
+    };
+
+    assertNull(agentService.awaitAssignment(ref, waiter));
+    assertEquals(AgentState.ready, agentService.get(ref).getState());
+    assertEquals(1, waiters.size());
+    agentService.cancelAwaitAssignment(ref, waiter);
+    assertEquals(0, waiters.size());
+  }
+
+  // A busy agent with several slots gets its most recent assignment back
+  @Test
+  public void awaitAssignmentBusyTest() throws CommsRouterException, MalformedURLException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    RouterObjectRef ref = new RouterObjectRef("chat", "01");
+    BatchAgentArg agentArg = newBatchAgentArg(ref.getRef(), "en", null);
+    agentArg.setCapacity(2);
+    agentService.batch(Collections.singletonList(agentArg), "01");
+    taskService.create(newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+    ApiObjectRef last = taskService.create(
+        newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+    app.db.transactionManager.executeVoid(
+        em -> app.db.agent.get(em, ref).setState(AgentState.ready));
+    assertEquals(ref.getRef(), assignNext(queue.getRef()));
+    assertEquals(ref.getRef(), assignNext(queue.getRef()));
+    AssignmentWaiters.Waiter waiter = new AssignmentWaiters.Waiter() {
+      @Override
+      public boolean deliver(TaskAssignmentDto assignment) {
+        return true;
+      }
+
+      @Override
+      public void replaced() {}
+    };
+
+    TaskAssignmentDto current = agentService.awaitAssignment(ref, waiter);
+    assertEquals(last.getRef(), current.getTask().getRef());
+    assertEquals(0, app.taskDispatcher.getAssignmentWaiters().size());
+  }
+
+  private static AttributeGroupDto capabilities(String language, String tier) {
+    AttributeGroupDto capabilities = new AttributeGroupDto();
+    capabilities.put("language", new StringAttributeValueDto(language));
+    capabilities.put("tier", new StringAttributeValueDto(tier));
+    return capabilities;
+  }
+
+  // Changing the capabilities remaps only the queues that depend on the changed ones
+  @Test
+  public void updateCapabilitiesRemapsQueuesTest() throws CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("agent", "01");
+    queueService.replace(newCreateQueueArg("language==en", "english"),
+        new RouterObjectRef("english", "01"));
+    queueService.replace(newCreateQueueArg("tier==gold", "gold"),
+        new RouterObjectRef("gold", "01"));
+    CreateAgentArg createArg = newCreateAgentArg("address_one");
+    createArg.setCapabilities(capabilities("en", "silver"));
+    agentService.replace(createArg, ref);
+    assertEquals(Collections.singletonList("english"), agentService.get(ref).getQueueRefs());
+
+    UpdateAgentArg updateArg = new UpdateAgentArg();
+    updateArg.setCapabilities(capabilities("en", "gold"));
+    agentService.update(updateArg, agentService.get(ref));
+    List<String> queueRefs = agentService.get(ref).getQueueRefs();
+    Collections.sort(queueRefs);
+    assertEquals(Arrays.asList("english", "gold"), queueRefs);
+
+    updateArg.setCapabilities(capabilities("fr", "gold"));
+    agentService.update(updateArg, agentService.get(ref));
+    assertEquals(Collections.singletonList("gold"), agentService.get(ref).getQueueRefs());
+  }
+
+  private static BatchAgentArg newBatchAgentArg(String ref, String language, AgentState state) {
+    BatchAgentArg arg = new BatchAgentArg();
+    arg.setRef(ref);
+    arg.setCapabilities(capabilities(language, "silver"));
+    arg.setState(state);
+    return arg;
+  }
+
+  // A batch creates the missing agents and updates the existing ones
+  @Test
+  public void batchTest() throws CommsRouterException {
+    queueService.replace(newCreateQueueArg("language==en", "english"),
+        new RouterObjectRef("english", "01"));
+    CreateAgentArg createArg = newCreateAgentArg("address_one");
+    createArg.setCapabilities(capabilities("fr", "silver"));
+    agentService.replace(createArg, new RouterObjectRef("existing", "01"));
+
+    List<ApiObjectRef> refs = agentService.batch(Arrays.asList(
+        newBatchAgentArg("new", "en", null),
+        newBatchAgentArg("existing", "en", AgentState.ready)), "01");
+    assertEquals(Arrays.asList("new", "existing"),
+        refs.stream().map(ApiObjectRef::getRef).collect(Collectors.toList()));
+
+    AgentDto created = agentService.get(new RouterObjectRef("new", "01"));
+    assertEquals(AgentState.offline, created.getState());
+    assertEquals(Collections.singletonList("english"), created.getQueueRefs());
+    AgentDto updated = agentService.get(new RouterObjectRef("existing", "01"));
+    assertEquals(AgentState.ready, updated.getState());
+    assertEquals(Collections.singletonList("english"), updated.getQueueRefs());
+    assertEquals(refs.get(1).getHash(), updated.getHash());
+  }
+
+  @Test(expected = BadValueException.class)
+  public void batchDuplicateRefTest() throws CommsRouterException {
+    agentService.batch(Arrays.asList(
+        newBatchAgentArg("agent", "en", null),
+        newBatchAgentArg("agent", "fr", null)), "01");
+  }
+
+  // A ready agent that stops sending heartbeats goes offline, the others are not touched
+  @Test
+  public void heartbeatTest() throws CommsRouterException {
+    RouterObjectRef silent = new RouterObjectRef("silent", "01");
+    RouterObjectRef untracked = new RouterObjectRef("untracked", "01");
+    agentService.batch(Arrays.asList(
+        newBatchAgentArg(silent.getRef(), "en", AgentState.ready),
+        newBatchAgentArg(untracked.getRef(), "en", AgentState.ready)), "01");
+
+    agentService.heartbeat(silent);
+    long now = System.currentTimeMillis();
+    assertEquals(0, app.agentPresence.expire(now));
+    long ttl = TimeUnit.SECONDS.toMillis(CoreConfiguration.DEFAULT.getAgentHeartbeatTtl());
+    assertEquals(1, app.agentPresence.expire(now + ttl + 1000));
+
+    assertEquals(AgentState.offline, agentService.get(silent).getState());
+    assertEquals(AgentState.ready, agentService.get(untracked).getState());
+    assertEquals(0, app.agentPresence.size());
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void heartbeatOfUnknownAgentTest() throws CommsRouterException {
+    try {
+      agentService.heartbeat(new RouterObjectRef("unknown", "01"));
+    } finally {
+      assertEquals(0, app.agentPresence.size());
+    }
+  }
+
+  // An agent takes tasks until its slots are full, the least loaded agent is picked first
+  @Test
+  public void capacityTest() throws CommsRouterException, MalformedURLException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    RouterObjectRef chat = new RouterObjectRef("chat", "01");
+    RouterObjectRef voice = new RouterObjectRef("voice", "01");
+    BatchAgentArg chatArg = newBatchAgentArg(chat.getRef(), "en", null);
+    chatArg.setCapacity(2);
+    agentService.batch(Arrays.asList(chatArg, newBatchAgentArg(voice.getRef(), "en", null)), "01");
+    taskService.create(newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+    ApiObjectRef task = taskService.create(
+        newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+    ApiObjectRef waiting = taskService.create(
+        newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+
+    // Make them ready without a dispatch, the chat agent already handles a task
+    app.db.transactionManager.executeVoid(em -> {
+      Agent agent = app.db.agent.get(em, chat);
+      agent.occupySlot();
+      agent.setState(AgentState.ready);
+      app.db.agent.get(em, voice).setState(AgentState.ready);
+    });
+
+    assertEquals(voice.getRef(), assignNext(queue.getRef()));
+    assertEquals(chat.getRef(), assignNext(queue.getRef()));
+    assertNull(assignNext(queue.getRef()));
+
+    AgentDto agent = agentService.get(chat);
+    assertEquals(AgentState.busy, agent.getState());
+    assertEquals(Integer.valueOf(2), agent.getOccupiedSlots());
+
+    // Completing dispatches the agent in the background, leave it nothing to take
+    taskService.update(newUpdateTaskArg(0, TaskState.canceled),
+        new RouterObjectRef(waiting.getRef(), "01"));
+    taskService.update(newUpdateTaskArg(0, TaskState.completed),
+        new RouterObjectRef(task.getRef(), "01"));
+    agent = agentService.get(chat);
+    assertEquals(AgentState.ready, agent.getState());
+    assertEquals(Integer.valueOf(1), agent.getOccupiedSlots());
+  }
+
 }
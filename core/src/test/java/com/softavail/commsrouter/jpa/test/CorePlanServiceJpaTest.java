@@ -6,6 +6,8 @@ package com.softavail.commsrouter.jpa.test;
 
 import static org.junit.Assert.assertEquals;
 
+import com.softavail.commsrouter.api.dto.arg.CreatePlanArg;
+import com.softavail.commsrouter.api.dto.arg.UpdatePlanArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
@@ -14,6 +16,8 @@ import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import org.junit.Test;
 
+import java.net.MalformedURLException;
+
 /**
  * @author G.Ivanov
  */
@@ -91,4 +95,26 @@ public class CorePlanServiceJpaTest extends TestBase {
     PaginatedList<PlanDto> list = planService.list(pagingRequest);
   }
 
+  // An updated plan routes the new tasks, the compiled copy of the old one is dropped
+  @Test
+  public void updateRoutesNewTasksTest() throws CommsRouterException, MalformedURLException {
+    RouterObjectRef id = new RouterObjectRef("plan-id", ROUTER_ID);
+    routerService.replace(newCreateRouterArg("router-name", ""), ROUTER_ID);
+    queueService.replace(newCreateQueueArg("1==1", "queue 1"), new RouterObjectRef("q1", id));
+    queueService.replace(newCreateQueueArg("1==1", "queue 2"), new RouterObjectRef("q2", id));
+    planService.replace(newCreatePlanArg("desctiption_one", "1==1", "q1"), id);
+    RouterObjectRef first = new RouterObjectRef("task-1", ROUTER_ID);
+    taskService.replace(newCreateTaskArg(null, "https://test.com", id.getRef()), first);
+    assertEquals("q1", taskService.get(first).getQueueRef());
+
+    CreatePlanArg changed = newCreatePlanArg("desctiption_two", "1==1", "q2");
+    UpdatePlanArg updateArg = newUpdatePlanArg("desctiption_two");
+    updateArg.setRules(changed.getRules());
+    updateArg.setDefaultRoute(changed.getDefaultRoute());
+    planService.update(updateArg, planService.get(id));
+    RouterObjectRef second = new RouterObjectRef("task-2", ROUTER_ID);
+    taskService.replace(newCreateTaskArg(null, "https://test.com", id.getRef()), second);
+    assertEquals("q2", taskService.get(second).getQueueRef());
+  }
+
 }
@@ -4,15 +4,29 @@
  */
 package com.softavail.commsrouter.jpa.test;
 
+import com.softavail.commsrouter.api.dto.arg.CreateAgentArg;
+import com.softavail.commsrouter.api.dto.misc.PaginatedList;
+import com.softavail.commsrouter.api.dto.misc.QueueMappingDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.QueueDto;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
+import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
+import com.softavail.commsrouter.api.dto.model.attribute.StringAttributeValueDto;
+import com.softavail.commsrouter.app.CoreConfiguration;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
 import org.junit.Test;
 
 /**
@@ -66,4 +80,89 @@ public class CoreQueueServiceJpaTest extends TestBase {
     assertEquals(tasks.iterator().next().getCallbackUrl(), "https://test.com");
   }
 
+  // Testing the keyset paging of getTasks
+  @Test
+  public void getTasksPagedTest() throws CommsRouterException, MalformedURLException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "description_one"), "01");
+    RouterObjectRef idd = new RouterObjectRef(queue.getRef(), "01");
+    long[] priorities = {1, 3, 3, 0, 3, 2, 1};
+    for (long priority : priorities) {
+      String ref = taskService
+          .create(newCreateTaskArg(queue.getRef(), "https://test.com", null), "01").getRef();
+      app.db.transactionManager.executeVoid(em -> app.db.task
+          .get(em, new RouterObjectRef(ref, "01")).setPriority(priority));
+    }
+
+    List<TaskDto> paged = new ArrayList<>();
+    PaginatedList<TaskDto> page = queueService.getTasks(idd, null, 3);
+    paged.addAll(page.getList());
+    assertNotNull(page.getNextToken());
+    page = queueService.getTasks(idd, page.getNextToken(), 3);
+    paged.addAll(page.getList());
+    assertNotNull(page.getNextToken());
+    page = queueService.getTasks(idd, page.getNextToken(), 3);
+    paged.addAll(page.getList());
+    assertEquals(1, page.getList().size());
+    assertNull(page.getNextToken());
+
+    List<TaskDto> expected = queueService.getTasks(idd).stream()
+        .sorted((t1, t2) -> t1.getPriority().equals(t2.getPriority())
+            ? t1.getId().compareTo(t2.getId())
+            : t2.getPriority().compareTo(t1.getPriority()))
+        .collect(Collectors.toList());
+    assertEquals(priorities.length, paged.size());
+    assertEquals(expected.stream().map(TaskDto::getRef).collect(Collectors.toList()),
+        paged.stream().map(TaskDto::getRef).collect(Collectors.toList()));
+  }
+
+  @After
+  public void restoreMappingThreshold() {
+    queueMappingAsyncThreshold = CoreConfiguration.DEFAULT.getQueueMappingAsyncThreshold();
+  }
+
+  private QueueMappingDto awaitMapping(RouterObjectRef ref)
+      throws CommsRouterException, InterruptedException {
+
+    long deadline = System.currentTimeMillis() + 10000;
+    QueueMappingDto mapping = queueService.getMapping(ref);
+    while (mapping.getPendingMappingVersion() != null) {
+      assertTrue("mapping timed out", System.currentTimeMillis() < deadline);
+      Thread.sleep(20);
+      mapping = queueService.getMapping(ref);
+    }
+    return mapping;
+  }
+
+  // Predicate changes on large routers are mapped in batches in the background
+  @Test
+  public void mapAgentsInBackgroundTest() throws CommsRouterException, InterruptedException {
+    queueMappingAsyncThreshold = 0;
+    String[] languages = {"en", "fr", "fr", "de", "fr"};
+    for (int i = 0; i < languages.length; ++i) {
+      CreateAgentArg createArg = newCreateAgentArg("address_" + i);
+      AttributeGroupDto capabilities = new AttributeGroupDto();
+      capabilities.put("language", new StringAttributeValueDto(languages[i]));
+      createArg.setCapabilities(capabilities);
+      agentService.replace(createArg, new RouterObjectRef("agent_" + i, "01"));
+    }
+    RouterObjectRef ref = new RouterObjectRef("queue", "01");
+    queueService.replace(newCreateQueueArg("language==en", "description"), ref);
+    QueueMappingDto mapping = awaitMapping(ref);
+    assertEquals(1, mapping.getMappingVersion());
+    assertEquals(Collections.singletonList("queue"),
+        agentService.get(new RouterObjectRef("agent_0", "01")).getQueueRefs());
+    assertEquals(Collections.emptyList(),
+        agentService.get(new RouterObjectRef("agent_1", "01")).getQueueRefs());
+
+    queueService.update(newUpdateQueueArg("language==fr", null), queueService.get(ref));
+    mapping = awaitMapping(ref);
+    assertEquals(2, mapping.getMappingVersion());
+    assertEquals("language==fr", queueService.get(ref).getPredicate());
+    for (int i = 0; i < languages.length; ++i) {
+      List<String> queueRefs =
+          agentService.get(new RouterObjectRef("agent_" + i, "01")).getQueueRefs();
+      assertEquals(languages[i], "fr".equals(languages[i]), queueRefs.contains("queue"));
+    }
+  }
+
 }
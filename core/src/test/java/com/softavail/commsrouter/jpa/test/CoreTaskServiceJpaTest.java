@@ -6,16 +6,25 @@ package com.softavail.commsrouter.jpa.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
+import com.softavail.commsrouter.api.dto.arg.CreateTaskArg;
+import com.softavail.commsrouter.api.dto.arg.UpdateTaskArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateTaskContext;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.misc.RouterEventDto;
+import com.softavail.commsrouter.api.dto.model.AgentState;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.dto.model.TaskState;
 import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.TooManyRequestsException;
+import com.softavail.commsrouter.app.CoreConfiguration;
+import com.softavail.commsrouter.app.RouterEventBus;
 import org.junit.Test;
 
 import java.net.MalformedURLException;
@@ -56,6 +65,29 @@ public class CoreTaskServiceJpaTest extends TestBase {
     assertEquals(task.getState(), TaskState.canceled);
   }
 
+  @Test
+  public void publishesStateChanges() throws CommsRouterException, MalformedURLException {
+    RouterObjectRef ref = new RouterObjectRef("", "01");
+    ApiObjectRef queue = queueService.replace(newCreateQueueArg("1==1", "desctiption_one"), ref);
+    RouterEventBus.Subscriber subscriber = app.taskDispatcher.getEventBus()
+        .subscribe("01", queue.getRef(), null, () -> { });
+    try {
+      taskService.replace(newCreateTaskArg(queue.getRef(), "https://test_one.com", null), ref);
+      taskService.update(newUpdateTaskArg(2, TaskState.canceled), ref);
+
+      RouterEventDto created = subscriber.poll();
+      assertEquals(RouterEventDto.TASK, created.getType());
+      assertEquals(ref.getRef(), created.getRef());
+      assertEquals("waiting", created.getState());
+      RouterEventDto canceled = subscriber.poll();
+      assertEquals("canceled", canceled.getState());
+      assertEquals(queue.getRef(), canceled.getQueueRef());
+      assertNull(subscriber.poll());
+    } finally {
+      subscriber.close();
+    }
+  }
+
   // Testing the update method that updates the TaskContext
   @Test
   public void updateContextTest_one() throws CommsRouterException, MalformedURLException {
@@ -106,4 +138,50 @@ public class CoreTaskServiceJpaTest extends TestBase {
     assertEquals(task.getList().get(0).getCallbackUrl(), "https://test.com");
   }
 
+  // Completing with fetchNext returns nothing when no task waits for the agent
+  @Test
+  public void completeAndFetchNextTest() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    RouterObjectRef agentRef = new RouterObjectRef("agent", "01");
+    agentService.replace(newCreateAgentArg("address"), agentRef);
+    ApiObjectRef task = taskService.create(
+        newCreateTaskArg(queue.getRef(), "https://test.com", null), "01");
+    app.db.transactionManager.executeVoid(
+        em -> app.db.agent.get(em, agentRef).setState(AgentState.ready));
+    assertEquals(agentRef.getRef(), assignNext(queue.getRef()));
+
+    RouterObjectRef taskRef = new RouterObjectRef(task.getRef(), "01");
+    UpdateTaskArg arg =
+        new UpdateTaskArg.Builder().state(TaskState.completed).fetchNext(true).build();
+    assertNull(taskService.updateAndFetchNext(arg, taskRef));
+    assertEquals(TaskState.completed, taskService.get(taskRef).getState());
+    assertEquals(AgentState.ready, agentService.get(agentRef).getState());
+  }
+
+  @Test(expected = BadValueException.class)
+  public void fetchNextRequiresCompletedTest() throws CommsRouterException {
+    UpdateTaskArg arg =
+        new UpdateTaskArg.Builder().state(TaskState.canceled).fetchNext(true).build();
+    taskService.updateAndFetchNext(arg, new RouterObjectRef("task", "01"));
+  }
+
+  // A task created in a full queue is refused and rolled back
+  @Test
+  public void fullQueueTest() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    taskAdmissionMaxWaiting = 1;
+    try {
+      taskService.create(arg, "01");
+      taskService.create(arg, "01");
+      fail("Created a task in a full queue");
+    } catch (TooManyRequestsException e) {
+      assertEquals(CoreConfiguration.DEFAULT.getTaskAdmissionRetryAfter().longValue(),
+          e.getRetryAfterSeconds());
+    } finally {
+      taskAdmissionMaxWaiting = CoreConfiguration.DEFAULT.getTaskAdmissionMaxWaiting();
+    }
+    assertEquals(1, queueService.getQueueSize(new RouterObjectRef(queue.getRef(), "01")));
+  }
+
 }
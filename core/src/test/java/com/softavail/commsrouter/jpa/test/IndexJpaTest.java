@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.jpa.StatementCountingInspector;
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Checks that the queries used by the dispatcher are served by the composite indexes instead of
+ * scanning and sorting all tasks of the queue. The SQL of the repository queries is captured as
+ * Hibernate generates it, so a changed query is checked as well.
+ */
+public class IndexJpaTest extends TestBase {
+
+  private static final List<String> STATEMENTS = new ArrayList<>();
+
+  private EntityManagerFactory capturingEmf;
+
+  public static class CapturingInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String inspect(String sql) {
+      STATEMENTS.add(sql);
+      return sql;
+    }
+
+  }
+
+  // Works on the database of the test, its schema is already created
+  @Before
+  public void createCapturingEmf() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(StatementCountingInspector.PROPERTY, new CapturingInspector());
+    properties.put("javax.persistence.schema-generation.database.action", "none");
+    capturingEmf = Persistence.createEntityManagerFactory("mnf-pu-test", properties);
+  }
+
+  @After
+  public void closeCapturingEmf() {
+    capturingEmf.close();
+  }
+
+  private interface RepositoryCall {
+    void run(EntityManager em) throws CommsRouterException;
+  }
+
+  private String capture(RepositoryCall call) throws CommsRouterException {
+    EntityManager captureEm = capturingEmf.createEntityManager();
+    try {
+      STATEMENTS.clear();
+      call.run(captureEm);
+      assertEquals(STATEMENTS.toString(), 1, STATEMENTS.size());
+      return STATEMENTS.get(0);
+    } finally {
+      captureEm.close();
+    }
+  }
+
+  @Test
+  public void queueSizeUsesTaskIndex() throws CommsRouterException {
+    String sql = capture(captureEm -> app.db.queue.getQueueSize(captureEm, 1L));
+    // The parameters in the order of the query: queueId, state
+    String plan = explain(sql, 1L, "waiting");
+    assertTrue(plan, plan.contains("IDX_TASK_QUEUE_STATE_PRIORITY"));
+  }
+
+  @Test
+  public void findAssignmentUsesIndexes() throws CommsRouterException {
+    String sql = capture(captureEm -> app.db.queue.findAssignment(captureEm, 1L));
+    // The parameters in the order of the query: taskState, agentState, queueId, max results
+    String plan = explain(sql, "waiting", "ready", 1L, 1);
+    assertTrue(plan, plan.contains("IDX_TASK_QUEUE_STATE_PRIORITY"));
+    assertTrue(plan, plan.contains("IDX_AGENT_QUEUE_QUEUE_VERSION_AGENT"));
+  }
+
+  @Test
+  public void readyAgentsUseAgentIndex() {
+    String plan = explain("SELECT a.id FROM agent a WHERE a.state = 'ready' "
+        + "ORDER BY a.occupied_slots ASC, a.last_time_at_busy_state ASC");
+    assertTrue(plan, plan.contains("IDX_AGENT_STATE_SLOTS_BUSY"));
+  }
+
+  private String explain(String sql, Object... parameters) {
+    StringBuilder plan = new StringBuilder();
+    em.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+        for (int i = 0; i < parameters.length; ++i) {
+          statement.setObject(i + 1, parameters[i]);
+        }
+        try (ResultSet rows = statement.executeQuery()) {
+          while (rows.next()) {
+            plan.append(rows.getString(1)).append('\n');
+          }
+        }
+      }
+    });
+    return plan.toString().toUpperCase();
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the jdk.jfr types, so a test using it still loads and is skipped on a JDK without the
+ * flight recorder. Create it only after checking RoutingEvents.isAvailable().
+ */
+class JfrRecording implements AutoCloseable {
+
+  static class Event {
+
+    final String name;
+    final Map<String, Object> values;
+
+    Event(String name, Map<String, Object> values) {
+      this.name = name;
+      this.values = values;
+    }
+
+  }
+
+  private final Recording recording = new Recording();
+
+  JfrRecording(String... eventNames) {
+    for (String eventName : eventNames) {
+      recording.enable(eventName);
+    }
+    recording.start();
+  }
+
+  List<Event> stop() throws IOException {
+    Path file = Files.createTempFile("routing-events", ".jfr");
+    try {
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file).stream()
+          .map(JfrRecording::toEvent)
+          .collect(Collectors.toList());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Override
+  public void close() {
+    recording.close();
+  }
+
+  private static Event toEvent(RecordedEvent event) {
+    Map<String, Object> values = new HashMap<>();
+    event.getFields().forEach(
+        field -> values.put(field.getName(), event.getValue(field.getName())));
+    return new Event(event.getEventType().getName(), values);
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.dto.arg.CreateTaskArg;
+import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.jpa.QueryStatistics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+
+/**
+ * Query budgets for the hot API paths. A failure here means a change added statements to a path
+ * that is executed for every task or agent - check for N+1 selects before raising the budget.
+ */
+public class QueryStatisticsJpaTest extends TestBase {
+
+  @After
+  public void endScope() {
+    QueryStatistics.endScope();
+  }
+
+  @Test
+  public void getTask() throws MalformedURLException, CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("task-1", "01");
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    taskService.replace(newCreateTaskArg(queue.getRef(), "https://test.com", null), ref);
+
+    QueryStatistics.startScope();
+    taskService.get(ref);
+    QueryStatistics statistics = QueryStatistics.endScope();
+
+    assertEquals(1, statistics.getTransactionCount());
+    assertTrue(statistics.toString(), statistics.getStatementCount() <= 8);
+  }
+
+  @Test
+  public void createTask() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    taskService.create(arg, "01");
+
+    QueryStatistics.startScope();
+    taskService.create(arg, "01");
+    QueryStatistics statistics = QueryStatistics.endScope();
+
+    assertEquals(1, statistics.getTransactionCount());
+    assertTrue(statistics.toString(), statistics.getStatementCount() <= 7);
+  }
+
+  @Test
+  public void createTaskFromPlan() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    ApiObjectRef plan =
+        planService.create(newCreatePlanArg("plan", "1==1", queue.getRef()), "01");
+    CreateTaskArg arg = newCreateTaskArg(null, "https://test.com", plan.getRef());
+    taskService.create(arg, "01");
+
+    QueryStatistics.startScope();
+    taskService.create(arg, "01");
+    QueryStatistics statistics = QueryStatistics.endScope();
+
+    // The compiled plan is reused, it costs the same as creating the task in a queue
+    assertEquals(1, statistics.getTransactionCount());
+    assertTrue(statistics.toString(), statistics.getStatementCount() <= 7);
+  }
+
+  @Test
+  public void listTasks() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    for (int i = 0; i < 5; ++i) {
+      taskService.create(arg, "01");
+    }
+
+    QueryStatistics.startScope();
+    taskService.list(new PagingRequest("01", null, 50, null, null));
+    QueryStatistics statistics = QueryStatistics.endScope();
+
+    // The attribute groups and the queue of each task are still loaded one by one
+    assertEquals(1, statistics.getTransactionCount());
+    assertTrue(statistics.toString(), statistics.getStatementCount() <= 4 + 5 * 4);
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.dto.arg.CreateTaskArg;
+import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskState;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.app.QueueMetrics;
+import com.softavail.commsrouter.domain.result.QueueWaitingResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+
+public class QueueMetricsJpaTest extends TestBase {
+
+  private QueueMetrics queueMetrics;
+
+  @Before
+  public void createQueueMetrics() {
+    queueMetrics = new QueueMetrics(app);
+  }
+
+  @After
+  public void closeQueueMetrics() {
+    queueMetrics.close();
+  }
+
+  private QueueWaitingResult queue(String queueRef) {
+    return queueMetrics.getQueues().stream()
+        .filter(queue -> queue.routerRef.equals("01") && queue.queueRef.equals(queueRef))
+        .findFirst()
+        .orElse(null);
+  }
+
+  @Test
+  public void countsWaitingTasks() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    for (int i = 0; i < 3; ++i) {
+      taskService.replace(arg, new RouterObjectRef("task-" + i, "01"));
+    }
+
+    queueMetrics.update();
+
+    long now = System.currentTimeMillis();
+    assertEquals(3, queue(queue.getRef()).count);
+    assertTrue(QueueMetrics.getOldestAgeSeconds(queue(queue.getRef()), now) >= 0);
+
+    for (int i = 0; i < 3; ++i) {
+      taskService.update(newUpdateTaskArg(0, TaskState.canceled),
+          new RouterObjectRef("task-" + i, "01"));
+    }
+
+    queueMetrics.update();
+
+    assertEquals(0, queue(queue.getRef()).count);
+    assertEquals(0, QueueMetrics.getOldestAgeSeconds(queue(queue.getRef()), now));
+  }
+
+  // A deleted queue is dropped on the next refresh
+  @Test
+  public void forgetsDeletedQueues() throws CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("deleted", "01");
+    queueService.replace(newCreateQueueArg("1==1", "deleted"), ref);
+
+    queueMetrics.update();
+    assertEquals(0, queue(ref.getRef()).count);
+
+    queueService.delete(ref);
+    queueMetrics.update();
+    assertNull(queue(ref.getRef()));
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.jpa.JpaTransactionManager;
+import com.softavail.commsrouter.jpa.LockRetryPolicy;
+import com.softavail.commsrouter.jpa.ReplicaReadScope;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+public class ReplicaReadJpaTest extends TestBase {
+
+  private EntityManagerFactory replicaEmf;
+  private JpaTransactionManager transactionManager;
+
+  // The replica is a separate empty database, so the reads show where they went
+  @Before
+  public void createReplica() {
+    replicaEmf = Persistence.createEntityManagerFactory("mnf-pu-test",
+        Collections.singletonMap("javax.persistence.jdbc.url", "jdbc:h2:mem:replica"));
+    transactionManager =
+        new JpaTransactionManager(emf, replicaEmf, new LockRetryPolicy(0), false);
+  }
+
+  @After
+  public void closeReplica() {
+    ReplicaReadScope.end();
+    replicaEmf.close();
+  }
+
+  private static long countRouters(EntityManager em) {
+    return em.createQuery("SELECT COUNT(r) FROM Router r", Long.class).getSingleResult();
+  }
+
+  @Test
+  public void readOnlySessionIsNeverFlushed() throws CommsRouterException {
+    transactionManager.executeReadOnly(em -> {
+      Session session = em.unwrap(Session.class);
+      assertTrue(session.isDefaultReadOnly());
+      assertEquals(FlushMode.MANUAL, session.getHibernateFlushMode());
+      app.db.router.getByRef(em, "01").setDescription("changed");
+      return null;
+    });
+
+    assertEquals("description_one", transactionManager.executeReadOnly(
+        em -> app.db.router.getByRef(em, "01").getDescription()));
+  }
+
+  @Test
+  public void replicaScopeReadsFromReplica() throws CommsRouterException {
+    assertEquals(2L, (long) transactionManager.executeReadOnly(ReplicaReadJpaTest::countRouters));
+
+    ReplicaReadScope.begin();
+    assertEquals(0L, (long) transactionManager.executeReadOnly(ReplicaReadJpaTest::countRouters));
+    // The transactions that may write stay on the primary
+    assertEquals(2L, (long) transactionManager.execute(ReplicaReadJpaTest::countRouters));
+    ReplicaReadScope.end();
+
+    assertEquals(2L, (long) transactionManager.executeReadOnly(ReplicaReadJpaTest::countRouters));
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.jfr.RoutingEvents;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class RoutingEventsJpaTest extends TestBase {
+
+  @Before
+  public void requireFlightRecorder() {
+    assumeTrue(RoutingEvents.isAvailable());
+  }
+
+  @Test
+  public void recordsTaskAndLockEvents()
+      throws IOException, MalformedURLException, CommsRouterException {
+
+    List<JfrRecording.Event> events;
+    try (JfrRecording recording = new JfrRecording(
+        "com.softavail.commsrouter.TaskCreated",
+        "com.softavail.commsrouter.RouterLockAcquired",
+        "com.softavail.commsrouter.RouterLockReleased")) {
+
+      ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+      taskService.replace(newCreateTaskArg(queue.getRef(), "https://test.com", null),
+          new RouterObjectRef("task-1", "01"));
+      app.db.transactionManager.executeVoid(
+          em -> app.db.router.lock(em, app.db.router.getIdByRef(em, "01")));
+
+      events = recording.stop();
+    }
+
+    Set<String> names = events.stream()
+        .map(event -> event.name)
+        .collect(Collectors.toSet());
+    assertTrue(names.toString(), names.contains("com.softavail.commsrouter.TaskCreated"));
+    assertTrue(names.toString(), names.contains("com.softavail.commsrouter.RouterLockAcquired"));
+    assertTrue(names.toString(), names.contains("com.softavail.commsrouter.RouterLockReleased"));
+    assertTrue(events.stream()
+        .filter(event -> event.name.endsWith("TaskCreated"))
+        .anyMatch(event -> "task-1".equals(event.values.get("taskRef"))));
+  }
+
+}
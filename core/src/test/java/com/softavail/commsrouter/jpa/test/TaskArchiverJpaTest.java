@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.jpa.test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.softavail.commsrouter.api.dto.arg.CreateTaskArg;
+import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskDto;
+import com.softavail.commsrouter.api.dto.model.TaskState;
+import com.softavail.commsrouter.api.dto.model.attribute.AttributeGroupDto;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.NotFoundException;
+import com.softavail.commsrouter.app.TaskArchiver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.util.Date;
+
+public class TaskArchiverJpaTest extends TestBase {
+
+  private TaskArchiver archiver;
+
+  @Before
+  public void createArchiver() {
+    archiver = new TaskArchiver(app);
+  }
+
+  @After
+  public void closeArchiver() {
+    archiver.close();
+  }
+
+  private Date inTheFuture() {
+    return new Date(System.currentTimeMillis() + 60000);
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void archiveCanceledTask() throws MalformedURLException, CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("task-1", "01");
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    AttributeGroupDto requirements = new AttributeGroupDto();
+    requirements.add("language", "en");
+    requirements.addToArray("levels", 2.0);
+    arg.setRequirements(requirements);
+    arg.setTag("tag-1");
+    taskService.replace(arg, ref);
+    taskService.update(newUpdateTaskArg(0, TaskState.canceled), ref);
+
+    assertEquals(1, archiver.archive(inTheFuture()));
+
+    TaskDto history = app.svc.taskHistory.get(ref);
+    assertEquals(TaskState.canceled, history.getState());
+    assertEquals("tag-1", history.getTag());
+    assertEquals(requirements.toString(), history.getRequirements().toString());
+    assertEquals(1, app.svc.taskHistory.list(new PagingRequest("01", null, 10, null, null))
+        .getList().size());
+
+    taskService.get(ref);
+  }
+
+  @Test
+  public void keepWaitingAndRecentTasks() throws MalformedURLException, CommsRouterException {
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    RouterObjectRef waiting = new RouterObjectRef("task-1", "01");
+    RouterObjectRef canceled = new RouterObjectRef("task-2", "01");
+    taskService.replace(arg, waiting);
+    taskService.replace(arg, canceled);
+    taskService.update(newUpdateTaskArg(0, TaskState.canceled), canceled);
+
+    assertEquals(0, archiver.archive(new Date(System.currentTimeMillis() - 60000)));
+    assertEquals(1, archiver.archive(inTheFuture()));
+
+    assertEquals(TaskState.waiting, taskService.get(waiting).getState());
+    assertEquals(TaskState.canceled, app.svc.taskHistory.get(canceled).getState());
+  }
+
+  @Test
+  public void archiveReplacedTask() throws MalformedURLException, CommsRouterException {
+    RouterObjectRef ref = new RouterObjectRef("task-1", "01");
+    ApiObjectRef queue = queueService.create(newCreateQueueArg("1==1", "queue"), "01");
+    CreateTaskArg arg = newCreateTaskArg(queue.getRef(), "https://test.com", null);
+    taskService.replace(arg, ref);
+    taskService.update(newUpdateTaskArg(0, TaskState.canceled), ref);
+    assertEquals(1, archiver.archive(inTheFuture()));
+
+    arg.setTag("second");
+    taskService.replace(arg, ref);
+    taskService.update(newUpdateTaskArg(0, TaskState.canceled), ref);
+    assertEquals(1, archiver.archive(inTheFuture()));
+
+    assertEquals("second", app.svc.taskHistory.get(ref).getTag());
+  }
+
+}
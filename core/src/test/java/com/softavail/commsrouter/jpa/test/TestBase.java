@@ -16,6 +16,7 @@ import com.softavail.commsrouter.api.dto.arg.UpdateRouterArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateTaskArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateTaskContext;
 import com.softavail.commsrouter.api.dto.model.AgentState;
+import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouteDto;
 import com.softavail.commsrouter.api.dto.model.RuleDto;
 import com.softavail.commsrouter.api.dto.model.TaskState;
@@ -36,7 +37,9 @@ import com.softavail.commsrouter.domain.Router;
 import com.softavail.commsrouter.domain.RouterConfig;
 import com.softavail.commsrouter.domain.dto.mappers.AttributesMapper;
 import com.softavail.commsrouter.domain.dto.mappers.EntityMappers;
+import com.softavail.commsrouter.domain.result.MatchResult;
 import com.softavail.commsrouter.eval.CommsRouterEvaluatorFactory;
+import com.softavail.commsrouter.eval.RsqlDummyValidator;
 import com.softavail.commsrouter.jpa.JpaDbFacade;
 import static com.softavail.commsrouter.jpa.test.TestBase.skillValidator;
 import org.junit.After;
@@ -67,6 +70,12 @@ public class TestBase {
   protected static CorePlanService planService;
   protected static CoreSkillService skillService;
   protected static SkillValidator skillValidator;
+  // Tests of the background queue mapping lower it
+  protected static Integer queueMappingAsyncThreshold =
+      CoreConfiguration.DEFAULT.getQueueMappingAsyncThreshold();
+  // Tests of the admission control lower it
+  protected static Integer taskAdmissionMaxWaiting =
+      CoreConfiguration.DEFAULT.getTaskAdmissionMaxWaiting();
   protected static AppContext app;
 
   // Connects to the in-memory h2 database.
@@ -75,6 +84,8 @@ public class TestBase {
     // Inserting two test routers into the database
     emf = Persistence.createEntityManagerFactory("mnf-pu-test");
     em = emf.createEntityManager();
+    // The database is created anew, while the dispatcher is kept for the class
+    app.taskDispatcher.getPlanSnapshots().clear();
     createRouter("name_one", "description_one", "01");
     createRouter("name_two", "description_two", "02");
   }
@@ -82,8 +93,9 @@ public class TestBase {
   @BeforeClass
   public static void setTestCoreQueueService() {
     CommsRouterEvaluatorFactory evf = new CommsRouterEvaluatorFactory();
+    evf.setRsqlValidator(new RsqlDummyValidator());
     JpaDbFacade db = new JpaDbFacade( "mnf-pu-test");
-    TaskDispatcher td = new TaskDispatcher(db, null, new CoreConfiguration() {
+    CoreConfiguration configuration = new CoreConfiguration() {
       @Override
       public Integer getBackoffDelay() {
         return CoreConfiguration.DEFAULT.getBackoffDelay();
@@ -124,6 +136,142 @@ public class TestBase {
         return CoreConfiguration.DEFAULT.getJpaLockRetryCount();
       }
 
+      @Override
+      public Integer getJpaLockRetryDelay() {
+        return CoreConfiguration.DEFAULT.getJpaLockRetryDelay();
+      }
+
+      @Override
+      public Integer getJpaLockRetryDelayMax() {
+        return CoreConfiguration.DEFAULT.getJpaLockRetryDelayMax();
+      }
+
+      @Override
+      public Boolean getJpaQueryStatisticsEnabled() {
+        return CoreConfiguration.DEFAULT.getJpaQueryStatisticsEnabled();
+      }
+
+      @Override
+      public String getJpaReadReplicaDataSource() {
+        return CoreConfiguration.DEFAULT.getJpaReadReplicaDataSource();
+      }
+
+      @Override
+      public Integer getJpaBatchSize() {
+        return CoreConfiguration.DEFAULT.getJpaBatchSize();
+      }
+
+      @Override
+      public Integer getTaskArchiveAge() {
+        return CoreConfiguration.DEFAULT.getTaskArchiveAge();
+      }
+
+      @Override
+      public Integer getTaskArchiveBatchSize() {
+        return CoreConfiguration.DEFAULT.getTaskArchiveBatchSize();
+      }
+
+      @Override
+      public Integer getTaskArchivePeriod() {
+        return CoreConfiguration.DEFAULT.getTaskArchivePeriod();
+      }
+
+      @Override
+      public Boolean getClusterEnabled() {
+        return CoreConfiguration.DEFAULT.getClusterEnabled();
+      }
+
+      @Override
+      public String getClusterNodeId() {
+        return CoreConfiguration.DEFAULT.getClusterNodeId();
+      }
+
+      @Override
+      public Integer getClusterHeartbeatInterval() {
+        return CoreConfiguration.DEFAULT.getClusterHeartbeatInterval();
+      }
+
+      @Override
+      public Integer getClusterNodeTimeout() {
+        return CoreConfiguration.DEFAULT.getClusterNodeTimeout();
+      }
+
+      @Override
+      public Integer getClusterSignalPollInterval() {
+        return CoreConfiguration.DEFAULT.getClusterSignalPollInterval();
+      }
+
+      @Override
+      public Integer getDispatcherBulkheadConcurrency() {
+        return CoreConfiguration.DEFAULT.getDispatcherBulkheadConcurrency();
+      }
+
+      @Override
+      public Integer getDispatcherBulkheadGroups() {
+        return CoreConfiguration.DEFAULT.getDispatcherBulkheadGroups();
+      }
+
+      @Override
+      public String getDispatcherExecutor() {
+        return CoreConfiguration.DEFAULT.getDispatcherExecutor();
+      }
+
+      @Override
+      public Integer getDispatcherCoalesceInterval() {
+        return CoreConfiguration.DEFAULT.getDispatcherCoalesceInterval();
+      }
+
+      @Override
+      public Integer getQueueMetricsPeriod() {
+        return CoreConfiguration.DEFAULT.getQueueMetricsPeriod();
+      }
+
+      @Override
+      public Integer getQueueStatisticsWindow() {
+        return CoreConfiguration.DEFAULT.getQueueStatisticsWindow();
+      }
+
+      @Override
+      public Integer getEventBufferSize() {
+        return CoreConfiguration.DEFAULT.getEventBufferSize();
+      }
+
+      @Override
+      public Integer getQueueMappingAsyncThreshold() {
+        return queueMappingAsyncThreshold;
+      }
+
+      @Override
+      public Integer getQueueMappingBatchSize() {
+        // Small enough for the background mapping to take a few batches
+        return 2;
+      }
+
+      @Override
+      public Integer getAgentHeartbeatTtl() {
+        return CoreConfiguration.DEFAULT.getAgentHeartbeatTtl();
+      }
+
+      @Override
+      public Integer getTaskAdmissionRouterRate() {
+        return CoreConfiguration.DEFAULT.getTaskAdmissionRouterRate();
+      }
+
+      @Override
+      public Integer getTaskAdmissionMaxWaiting() {
+        return taskAdmissionMaxWaiting;
+      }
+
+      @Override
+      public Integer getTaskAdmissionMaxBacklog() {
+        return CoreConfiguration.DEFAULT.getTaskAdmissionMaxBacklog();
+      }
+
+      @Override
+      public Integer getTaskAdmissionRetryAfter() {
+        return CoreConfiguration.DEFAULT.getTaskAdmissionRetryAfter();
+      }
+
       @Override
       public Boolean getApiEnableExpressionSkillValidation() {
         return false;
@@ -138,9 +286,11 @@ public class TestBase {
       public Boolean getApiEnableTaskRequirementsValidation() {
         return false;
       }
-    }, null);
+    };
+    TaskDispatcher td = new TaskDispatcher(db, null, configuration, null);
+    td.start();
     EntityMappers enm = new EntityMappers();
-    app = new AppContext(db, evf, td, enm, CoreConfiguration.DEFAULT);
+    app = new AppContext(db, evf, td, enm, configuration);
     // Instantiating all of the services
     queueService = new CoreQueueService(app);
     taskService = new CoreTaskService(app);
@@ -291,4 +441,19 @@ public class TestBase {
     ctx.setUserContext(aGroupDto);
     return ctx;
   }
+
+  // Assigns the next task of the queue, as the dispatcher would without its mappers
+  public String assignNext(String queueRef) throws CommsRouterException {
+    return app.db.transactionManager.execute(em -> {
+      Long queueId = app.db.queue.get(em, new RouterObjectRef(queueRef, "01")).getId();
+      MatchResult match = app.db.queue.findAssignment(em, queueId).orElse(null);
+      if (match == null) {
+        return null;
+      }
+      match.agent.occupySlot();
+      match.task.setState(TaskState.assigned);
+      match.task.setAgent(match.agent);
+      return match.agent.getRef();
+    });
+  }
 }
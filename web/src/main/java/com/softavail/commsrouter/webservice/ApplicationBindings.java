@@ -21,15 +21,18 @@ import com.softavail.commsrouter.api.interfaces.PlanService;
 import com.softavail.commsrouter.api.interfaces.QueueService;
 import com.softavail.commsrouter.api.interfaces.RouterService;
 import com.softavail.commsrouter.api.interfaces.SkillService;
+import com.softavail.commsrouter.api.interfaces.TaskHistoryService;
 import com.softavail.commsrouter.api.interfaces.TaskService;
 import com.softavail.commsrouter.api.service.CoreAgentService;
 import com.softavail.commsrouter.api.service.CorePlanService;
 import com.softavail.commsrouter.api.service.CoreQueueService;
 import com.softavail.commsrouter.api.service.CoreRouterService;
 import com.softavail.commsrouter.api.service.CoreSkillService;
+import com.softavail.commsrouter.api.service.CoreTaskHistoryService;
 import com.softavail.commsrouter.api.service.CoreTaskService;
 import com.softavail.commsrouter.app.AppContext;
 import com.softavail.commsrouter.providers.ClientFactory;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.inject.Singleton;
@@ -41,9 +44,14 @@ import javax.ws.rs.client.Client;
 public class ApplicationBindings extends AbstractBinder {
 
   private final AppContext context;
+  private final PrometheusMeterRegistry meterRegistry;
+  private final EventStreams eventStreams;
 
-  public ApplicationBindings(AppContext context) {
+  public ApplicationBindings(AppContext context, PrometheusMeterRegistry meterRegistry,
+      EventStreams eventStreams) {
     this.context = context;
+    this.meterRegistry = meterRegistry;
+    this.eventStreams = eventStreams;
   }
 
   @Override
@@ -57,6 +65,10 @@ public class ApplicationBindings extends AbstractBinder {
         .to(TaskService.class)
         .to(CoreTaskService.class);
 
+    bind(context.svc.taskHistory)
+        .to(TaskHistoryService.class)
+        .to(CoreTaskHistoryService.class);
+
     bind(context.svc.plan)
         .to(PlanService.class)
         .to(CorePlanService.class);
@@ -77,6 +89,12 @@ public class ApplicationBindings extends AbstractBinder {
         .to(RouterService.class)
         .to(CoreRouterService.class);
 
+    bind(meterRegistry)
+        .to(PrometheusMeterRegistry.class);
+
+    bind(eventStreams)
+        .to(EventStreams.class);
+
   }
 
 }
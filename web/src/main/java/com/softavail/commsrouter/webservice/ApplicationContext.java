@@ -18,22 +18,36 @@ package com.softavail.commsrouter.webservice;
 
 import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.exception.CallbackException;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.app.AppContext;
+import com.softavail.commsrouter.app.QueueMetrics;
+import com.softavail.commsrouter.app.TaskArchiver;
 import com.softavail.commsrouter.app.TaskDispatcher;
 import com.softavail.commsrouter.domain.dto.mappers.EntityMappers;
 import com.softavail.commsrouter.eval.CommsRouterEvaluatorFactory;
 import com.softavail.commsrouter.eval.RsqlDummyValidator;
 import com.softavail.commsrouter.eval.RsqlSkillValidator;
 import com.softavail.commsrouter.eval.RsqlValidator;
+import com.softavail.commsrouter.jfr.RoutingEvents;
 import com.softavail.commsrouter.jpa.JpaDbFacade;
 import com.softavail.commsrouter.webservice.config.ConfigurationImpl;
 import com.softavail.commsrouter.webservice.config.ManifestConfigurationImpl;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.logging.LoggingFeature;
 
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContext;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
@@ -52,6 +66,10 @@ public class ApplicationContext {
 
   private final Client client;
   private final AppContext coreContext;
+  private final TaskArchiver taskArchiver;
+  private final QueueMetrics queueMetrics;
+  private final PrometheusMeterRegistry meterRegistry;
+  private final EventStreams eventStreams;
   private final ConfigurationImpl configuration;
   private final ManifestConfigurationImpl manifest;
 
@@ -60,6 +78,7 @@ public class ApplicationContext {
     LOGGER.debug("configuration: {}", configuration);
     manifest = new ManifestConfigurationImpl(servletContext);
     client = createClient();
+    meterRegistry = createMeterRegistry();
 
     JpaDbFacade db = new JpaDbFacade(configuration);
     CommsRouterEvaluatorFactory evaluatorFactory = new CommsRouterEvaluatorFactory();
@@ -67,7 +86,17 @@ public class ApplicationContext {
     TaskDispatcher taskDispatcher =
         new TaskDispatcher(db, mappers, configuration, this::handleAssignment);
     coreContext = new AppContext(db, evaluatorFactory, taskDispatcher, mappers, configuration);
+    taskDispatcher.start();
     evaluatorFactory.setRsqlValidator(createRsqlValidator());
+    taskArchiver = new TaskArchiver(coreContext);
+    taskArchiver.start();
+    resumeQueueMappings();
+    coreContext.agentPresence.start();
+    queueMetrics = new QueueMetrics(coreContext);
+    new QueueMetricsCollector(queueMetrics).register(meterRegistry.getPrometheusRegistry());
+    new BulkheadCollector(taskDispatcher).register(meterRegistry.getPrometheusRegistry());
+    queueMetrics.start();
+    eventStreams = new EventStreams(taskDispatcher.getEventBus());
   }
 
   public Client getClient() {
@@ -86,6 +115,26 @@ public class ApplicationContext {
     return manifest;
   }
 
+  public PrometheusMeterRegistry getMeterRegistry() {
+    return meterRegistry;
+  }
+
+  public EventStreams getEventStreams() {
+    return eventStreams;
+  }
+
+  private PrometheusMeterRegistry createMeterRegistry() {
+    PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    new ClassLoaderMetrics().bindTo(registry);
+    new JvmMemoryMetrics().bindTo(registry);
+    new JvmGcMetrics().bindTo(registry);
+    new JvmThreadMetrics().bindTo(registry);
+    new ProcessorMetrics().bindTo(registry);
+    // The core records to the global registry
+    Metrics.addRegistry(registry);
+    return registry;
+  }
+
   private Client createClient() {
     ClientConfig config = new ClientConfig();
     config.property(ClientProperties.CONNECT_TIMEOUT, configuration.getClientConnectTimeout());
@@ -97,29 +146,57 @@ public class ApplicationContext {
   private void handleAssignment(TaskAssignmentDto taskAssignment)
       throws CallbackException {
 
+    long started = System.nanoTime();
+    String status = "error";
+    boolean failed = true;
+    String callbackUrl = taskAssignment.getTask().getCallbackUrl();
     try {
-      String callbackUrl = taskAssignment.getTask().getCallbackUrl();
-
       Response response = client.target(callbackUrl)
           .property(ClientProperties.FOLLOW_REDIRECTS, configuration.getClientFollowRedirects())
           .request(MediaType.WILDCARD_TYPE)
           .post(Entity.entity(taskAssignment, MediaType.APPLICATION_JSON_TYPE));
+      status = String.valueOf(response.getStatus());
 
       if (response.getStatus() == Status.SERVICE_UNAVAILABLE.getStatusCode()) {
         // On 503 response we will try again
         // TODO Retry-After header?!
         throw new CallbackException();
       }
+      failed = false;
 
     } catch (ProcessingException e) {
       throw new CallbackException();
+    } finally {
+      long elapsed = System.nanoTime() - started;
+      Timer.builder("router.callback")
+          .description("Task assignment callbacks by HTTP status")
+          .tag("status", status)
+          .publishPercentileHistogram()
+          .register(Metrics.globalRegistry)
+          .record(elapsed, TimeUnit.NANOSECONDS);
+      RoutingEvents.callback(taskAssignment.getTask().getRouterRef(),
+          taskAssignment.getTask().getRef(), callbackUrl, status, failed, elapsed);
+    }
+  }
+
+  private void resumeQueueMappings() {
+    try {
+      coreContext.queueMappingBuilder.resumePending();
+    } catch (CommsRouterException | RuntimeException e) {
+      LOGGER.error("Failure resuming the queue mappings: {}", e, e);
     }
   }
 
   public void close() {
+    eventStreams.close();
     client.close();
+    taskArchiver.close();
+    coreContext.queueMappingBuilder.close();
+    coreContext.agentPresence.close();
+    queueMetrics.close();
     coreContext.taskDispatcher.close();
     coreContext.db.close();
+    Metrics.removeRegistry(meterRegistry);
   }
 
   private RsqlValidator createRsqlValidator() {
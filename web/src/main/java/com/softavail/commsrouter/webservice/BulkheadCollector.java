@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice;
+
+import com.softavail.commsrouter.app.Bulkhead;
+import com.softavail.commsrouter.app.TaskDispatcher;
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exports the bulkheads of the dispatcher. The samples are built on every scrape, so the series of
+ * a deleted router disappear with its bulkhead.
+ */
+public class BulkheadCollector extends Collector {
+
+  private static final List<String> LABELS = Collections.singletonList("bulkhead");
+
+  private final TaskDispatcher taskDispatcher;
+
+  public BulkheadCollector(TaskDispatcher taskDispatcher) {
+    this.taskDispatcher = taskDispatcher;
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect() {
+    GaugeMetricFamily queueDepth = new GaugeMetricFamily("dispatcher_bulkhead_queue_depth",
+        "Tasks waiting for a free slot in the bulkhead", LABELS);
+    GaugeMetricFamily active = new GaugeMetricFamily("dispatcher_bulkhead_active",
+        "Tasks of the bulkhead running in the dispatcher executor", LABELS);
+    GaugeMetricFamily saturation = new GaugeMetricFamily("dispatcher_bulkhead_saturation",
+        "Share of the bulkhead slots in use", LABELS);
+    for (Bulkhead bulkhead : taskDispatcher.getBulkheads()) {
+      List<String> labels = Collections.singletonList(bulkhead.getName());
+      queueDepth.addMetric(labels, bulkhead.getQueueDepth());
+      active.addMetric(labels, bulkhead.getActiveCount());
+      saturation.addMetric(labels, bulkhead.getSaturation());
+    }
+    return Arrays.asList(queueDepth, active, saturation);
+  }
+
+}
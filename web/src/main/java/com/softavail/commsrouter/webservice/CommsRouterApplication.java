@@ -18,6 +18,7 @@ package com.softavail.commsrouter.webservice;
 
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.webservice.config.ManifestConfigurationImpl;
+import com.softavail.commsrouter.webservice.providers.QueryStatisticsFilter;
 import io.swagger.jaxrs.config.BeanConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -49,10 +50,15 @@ public class CommsRouterApplication extends ResourceConfig {
         manifest.getImplementationBuildTime(),
         manifest.getBuildJdk());
 
-    register(new ApplicationBindings(applicationContext.getCoreContext()));
+    register(new ApplicationBindings(applicationContext.getCoreContext(),
+        applicationContext.getMeterRegistry(), applicationContext.getEventStreams()));
 
     packages(CommsRouterApplication.class.getPackage().getName());
 
+    if (applicationContext.getConfiguration().getApiEnableQueryStatisticsHeaders()) {
+      register(QueryStatisticsFilter.class);
+    }
+
     register(io.swagger.jaxrs.listing.ApiListingResource.class);
     register(io.swagger.jaxrs.listing.SwaggerSerializers.class);
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.softavail.commsrouter.api.dto.misc.RouterEventDto;
+import com.softavail.commsrouter.app.RouterEventBus;
+import com.softavail.commsrouter.util.ThreadPoolKiller;
+import com.softavail.commsrouter.webservice.providers.ObjectMapperContextResolver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes the events of the {@link RouterEventBus} to the open server-sent event streams. A stream
+ * is drained by one of {@value #WRITER_THREADS} writer threads only while it has buffered events,
+ * so the request threads are not held. The streams also get a keep-alive comment every
+ * {@value #KEEP_ALIVE_SECONDS} seconds, which is how the disconnected clients of quiet routers are
+ * noticed. A stream whose write has been blocked by a slow client for more than
+ * {@value #WRITE_TIMEOUT_SECONDS} seconds is unsubscribed, so it stops buffering events and gets
+ * no further writer turns.
+ */
+public class EventStreams {
+
+  private static final Logger LOGGER = LogManager.getLogger(EventStreams.class);
+
+  public static final String SERVER_SENT_EVENTS = "text/event-stream";
+
+  static final long KEEP_ALIVE_SECONDS = 30;
+
+  static final long WRITE_TIMEOUT_SECONDS = 60;
+
+  static final int WRITER_THREADS = 4;
+
+  private final RouterEventBus eventBus;
+  private final ObjectWriter writer;
+  private final ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+  private final ScheduledThreadPoolExecutor keepAlive = new ScheduledThreadPoolExecutor(1);
+  private final Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+
+  public EventStreams(RouterEventBus eventBus) {
+    this.eventBus = eventBus;
+    this.writer = new ObjectMapperContextResolver().getContext(RouterEventDto.class)
+        .writerFor(RouterEventDto.class);
+    keepAlive.scheduleAtFixedRate(this::keepAlive,
+        KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public ChunkedOutput<String> open(String routerRef, String queueRef, String agentRef) {
+    EventStream stream = new EventStream();
+    stream.subscriber = eventBus.subscribe(routerRef, queueRef, agentRef, stream::schedule);
+    streams.add(stream);
+    // Sends the headers to the client without waiting for the first event
+    stream.keepAlive();
+    return stream.output;
+  }
+
+  private void keepAlive() {
+    long blockedSince = System.nanoTime() - TimeUnit.SECONDS.toNanos(WRITE_TIMEOUT_SECONDS);
+    streams.forEach(stream -> {
+      if (stream.isBlockedSince(blockedSince)) {
+        LOGGER.warn("Dropping event stream {}: write blocked for more than {} seconds",
+            stream.subscriber, WRITE_TIMEOUT_SECONDS);
+        stream.unsubscribe();
+      } else {
+        stream.keepAlive();
+      }
+    });
+  }
+
+  public int getStreamCount() {
+    return streams.size();
+  }
+
+  public void close() {
+    ThreadPoolKiller.shutdown(keepAlive, "EventStreams keep-alive");
+    streams.forEach(EventStream::close);
+    ThreadPoolKiller.shutdown(writers, "EventStreams writers");
+  }
+
+  private class EventStream {
+
+    private final ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile RouterEventBus.Subscriber subscriber;
+    private volatile boolean keepAlivePending;
+    private volatile boolean writing;
+    private volatile boolean dropped;
+    private volatile long writeStarted;
+
+    boolean isBlockedSince(long nanoTime) {
+      return writing && writeStarted - nanoTime < 0;
+    }
+
+    void keepAlive() {
+      keepAlivePending = true;
+      schedule();
+    }
+
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          writers.execute(this::drain);
+        } catch (RuntimeException e) {
+          // Shutting down
+          scheduled.set(false);
+        }
+      }
+    }
+
+    private void drain() {
+      RouterEventBus.Subscriber subscriber = this.subscriber;
+      if (subscriber == null) {
+        // Notified while subscribing, open() sends the keep-alive that gets here again
+        scheduled.set(false);
+        return;
+      }
+      try {
+        do {
+          for (RouterEventDto event = subscriber.poll(); event != null; event = subscriber.poll()) {
+            write(toFrame(event));
+          }
+          if (dropped) {
+            close();
+            return;
+          }
+          if (subscriber.isEvicted()) {
+            write("event: evicted\ndata: {}\n\n");
+            close();
+            return;
+          }
+          if (keepAlivePending) {
+            keepAlivePending = false;
+            write(":\n\n");
+          }
+          scheduled.set(false);
+          // Something may have arrived after the last check, then drain it unless already queued
+        } while ((!subscriber.isEmpty() || keepAlivePending)
+            && scheduled.compareAndSet(false, true));
+      } catch (IOException e) {
+        LOGGER.debug("Closing event stream {}: {}", subscriber, e.toString());
+        close();
+      }
+    }
+
+    private void write(String chunk) throws IOException {
+      writeStarted = System.nanoTime();
+      writing = true;
+      try {
+        output.write(chunk);
+      } finally {
+        writing = false;
+      }
+    }
+
+    private String toFrame(RouterEventDto event) throws JsonProcessingException {
+      return "id: " + event.getId() + "\nevent: " + event.getType() + "\ndata: "
+          + writer.writeValueAsString(event) + "\n\n";
+    }
+
+    // The blocked write is left to the container, the stream is closed once it returns
+    void unsubscribe() {
+      dropped = true;
+      streams.remove(this);
+      RouterEventBus.Subscriber subscriber = this.subscriber;
+      if (subscriber != null) {
+        subscriber.close();
+      }
+    }
+
+    void close() {
+      unsubscribe();
+      try {
+        output.close();
+      } catch (IOException e) {
+        LOGGER.debug("Failure closing event stream: {}", e.toString());
+      }
+    }
+
+  }
+
+}
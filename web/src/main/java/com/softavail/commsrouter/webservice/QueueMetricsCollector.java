@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice;
+
+import com.softavail.commsrouter.app.QueueMetrics;
+import com.softavail.commsrouter.domain.result.QueueWaitingResult;
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exports the last refresh of {@link QueueMetrics}. The samples are built on every scrape, so the
+ * series of a deleted queue or router disappear with the next refresh.
+ */
+public class QueueMetricsCollector extends Collector {
+
+  private static final List<String> LABELS = Arrays.asList("router", "queue");
+
+  private final QueueMetrics queueMetrics;
+
+  public QueueMetricsCollector(QueueMetrics queueMetrics) {
+    this.queueMetrics = queueMetrics;
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect() {
+    GaugeMetricFamily waiting = new GaugeMetricFamily("router_queue_waiting",
+        "Tasks waiting in the queue", LABELS);
+    GaugeMetricFamily oldestAge = new GaugeMetricFamily("router_queue_oldest_age_seconds",
+        "Time the oldest waiting task of the queue has been waiting", LABELS);
+    long now = System.currentTimeMillis();
+    for (QueueWaitingResult queue : queueMetrics.getQueues()) {
+      List<String> labels = Arrays.asList(queue.routerRef, queue.queueRef);
+      waiting.addMetric(labels, queue.count);
+      oldestAge.addMetric(labels, QueueMetrics.getOldestAgeSeconds(queue, now));
+    }
+    return Arrays.asList(waiting, oldestAge);
+  }
+
+}
@@ -58,12 +58,42 @@ public class ConfigurationImpl implements CoreConfiguration, Configuration {
   private static final String QUEUE_RETRY_DELAY_SECONDS = "queue.retry.delaySeconds";
   private static final String QUEUE_PROCESSOR_EVICTION_DELAY = "queue.remove.idleDelaySeconds";
   private static final String JPA_OPTIMISTIC_LOCK_RETRY_COUNT = "jpa.optimisticLock.retryCount";
+  private static final String JPA_LOCK_RETRY_DELAY_MILLIS = "jpa.lockRetry.delayMilliseconds";
+  private static final String JPA_LOCK_RETRY_DELAY_MAX_MILLIS =
+      "jpa.lockRetry.delayMaxMilliseconds";
+  private static final String JPA_QUERY_STATISTICS_ENABLED = "jpa.queryStatistics.enabled";
+  private static final String JPA_READ_REPLICA_DATA_SOURCE = "jpa.readReplica.dataSource";
+  private static final String JPA_BATCH_SIZE = "jpa.batchSize";
+  private static final String TASK_ARCHIVE_AGE_SECONDS = "task.archive.ageSeconds";
+  private static final String TASK_ARCHIVE_BATCH_SIZE = "task.archive.batchSize";
+  private static final String TASK_ARCHIVE_PERIOD_SECONDS = "task.archive.periodSeconds";
+  private static final String CLUSTER_ENABLED = "cluster.enabled";
+  private static final String CLUSTER_NODE_ID = "cluster.nodeId";
+  private static final String CLUSTER_HEARTBEAT_SECONDS = "cluster.heartbeatSeconds";
+  private static final String CLUSTER_NODE_TIMEOUT_SECONDS = "cluster.nodeTimeoutSeconds";
+  private static final String CLUSTER_SIGNAL_POLL_MILLIS = "cluster.signalPollMilliseconds";
+  private static final String BULKHEAD_CONCURRENCY = "task_dispatcher.bulkhead.concurrency";
+  private static final String BULKHEAD_GROUPS = "task_dispatcher.bulkhead.groups";
+  private static final String DISPATCHER_EXECUTOR = "task_dispatcher.executor";
+  private static final String DISPATCHER_COALESCE_MILLIS = "task_dispatcher.coalesceMilliseconds";
+  private static final String QUEUE_METRICS_PERIOD = "metrics.queue.periodSeconds";
+  private static final String QUEUE_STATISTICS_WINDOW = "statistics.queue.windowSeconds";
+  private static final String EVENT_BUFFER_SIZE = "events.subscriber.bufferSize";
+  private static final String QUEUE_MAPPING_ASYNC_THRESHOLD = "queue.mapping.asyncThreshold";
+  private static final String QUEUE_MAPPING_BATCH_SIZE = "queue.mapping.batchSize";
+  private static final String AGENT_HEARTBEAT_TTL_SECONDS = "agent.heartbeat.ttlSeconds";
+  private static final String TASK_ADMISSION_ROUTER_RATE = "task.admission.routerRatePerSecond";
+  private static final String TASK_ADMISSION_MAX_WAITING = "task.admission.maxWaitingTasks";
+  private static final String TASK_ADMISSION_MAX_BACKLOG = "task.admission.maxDispatchBacklog";
+  private static final String TASK_ADMISSION_RETRY_AFTER = "task.admission.retryAfterSeconds";
   private static final String API_ENABLE_EXPRESSION_SKILL_VALIDATION =
       "api.enableExpressionSkillValidation";
   private static final String API_ENABLE_ENABLE_AGENT_CAPABILITIES_VALIDATION =
       "api.enableAgentCapabilitiesValidation";
   private static final String API_ENABLE_ENABLE_TASK_REQUIREMENTS_VALIDATION =
       "api.enableTaskRequirementsValidation";
+  private static final String API_ENABLE_QUERY_STATISTICS_HEADERS =
+      "api.enableQueryStatisticsHeaders";
 
   private static final String SHIRO_CONFIG_LOCATIONS = "shiro.configLocations";
 
@@ -88,6 +118,60 @@ public class ConfigurationImpl implements CoreConfiguration, Configuration {
         String.valueOf(CoreConfiguration.DEFAULT.getQueueProcessRetryDelay()));
     defaultProperties.setProperty(JPA_OPTIMISTIC_LOCK_RETRY_COUNT,
         String.valueOf(CoreConfiguration.DEFAULT.getJpaLockRetryCount()));
+    defaultProperties.setProperty(JPA_LOCK_RETRY_DELAY_MILLIS,
+        String.valueOf(CoreConfiguration.DEFAULT.getJpaLockRetryDelay()));
+    defaultProperties.setProperty(JPA_LOCK_RETRY_DELAY_MAX_MILLIS,
+        String.valueOf(CoreConfiguration.DEFAULT.getJpaLockRetryDelayMax()));
+    defaultProperties.setProperty(JPA_QUERY_STATISTICS_ENABLED,
+        String.valueOf(CoreConfiguration.DEFAULT.getJpaQueryStatisticsEnabled()));
+    defaultProperties.setProperty(JPA_BATCH_SIZE,
+        String.valueOf(CoreConfiguration.DEFAULT.getJpaBatchSize()));
+    defaultProperties.setProperty(JPA_READ_REPLICA_DATA_SOURCE,
+        CoreConfiguration.DEFAULT.getJpaReadReplicaDataSource());
+    defaultProperties.setProperty(TASK_ARCHIVE_AGE_SECONDS,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskArchiveAge()));
+    defaultProperties.setProperty(TASK_ARCHIVE_BATCH_SIZE,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskArchiveBatchSize()));
+    defaultProperties.setProperty(TASK_ARCHIVE_PERIOD_SECONDS,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskArchivePeriod()));
+    defaultProperties.setProperty(CLUSTER_ENABLED,
+        String.valueOf(CoreConfiguration.DEFAULT.getClusterEnabled()));
+    defaultProperties.setProperty(CLUSTER_NODE_ID,
+        CoreConfiguration.DEFAULT.getClusterNodeId());
+    defaultProperties.setProperty(CLUSTER_HEARTBEAT_SECONDS,
+        String.valueOf(CoreConfiguration.DEFAULT.getClusterHeartbeatInterval()));
+    defaultProperties.setProperty(CLUSTER_NODE_TIMEOUT_SECONDS,
+        String.valueOf(CoreConfiguration.DEFAULT.getClusterNodeTimeout()));
+    defaultProperties.setProperty(CLUSTER_SIGNAL_POLL_MILLIS,
+        String.valueOf(CoreConfiguration.DEFAULT.getClusterSignalPollInterval()));
+    defaultProperties.setProperty(BULKHEAD_CONCURRENCY,
+        String.valueOf(CoreConfiguration.DEFAULT.getDispatcherBulkheadConcurrency()));
+    defaultProperties.setProperty(BULKHEAD_GROUPS,
+        String.valueOf(CoreConfiguration.DEFAULT.getDispatcherBulkheadGroups()));
+    defaultProperties.setProperty(DISPATCHER_EXECUTOR,
+        CoreConfiguration.DEFAULT.getDispatcherExecutor());
+    defaultProperties.setProperty(DISPATCHER_COALESCE_MILLIS,
+        String.valueOf(CoreConfiguration.DEFAULT.getDispatcherCoalesceInterval()));
+    defaultProperties.setProperty(QUEUE_METRICS_PERIOD,
+        String.valueOf(CoreConfiguration.DEFAULT.getQueueMetricsPeriod()));
+    defaultProperties.setProperty(QUEUE_STATISTICS_WINDOW,
+        String.valueOf(CoreConfiguration.DEFAULT.getQueueStatisticsWindow()));
+    defaultProperties.setProperty(EVENT_BUFFER_SIZE,
+        String.valueOf(CoreConfiguration.DEFAULT.getEventBufferSize()));
+    defaultProperties.setProperty(QUEUE_MAPPING_ASYNC_THRESHOLD,
+        String.valueOf(CoreConfiguration.DEFAULT.getQueueMappingAsyncThreshold()));
+    defaultProperties.setProperty(QUEUE_MAPPING_BATCH_SIZE,
+        String.valueOf(CoreConfiguration.DEFAULT.getQueueMappingBatchSize()));
+    defaultProperties.setProperty(AGENT_HEARTBEAT_TTL_SECONDS,
+        String.valueOf(CoreConfiguration.DEFAULT.getAgentHeartbeatTtl()));
+    defaultProperties.setProperty(TASK_ADMISSION_ROUTER_RATE,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskAdmissionRouterRate()));
+    defaultProperties.setProperty(TASK_ADMISSION_MAX_WAITING,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskAdmissionMaxWaiting()));
+    defaultProperties.setProperty(TASK_ADMISSION_MAX_BACKLOG,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskAdmissionMaxBacklog()));
+    defaultProperties.setProperty(TASK_ADMISSION_RETRY_AFTER,
+        String.valueOf(CoreConfiguration.DEFAULT.getTaskAdmissionRetryAfter()));
     defaultProperties.setProperty(API_ENABLE_EXPRESSION_SKILL_VALIDATION,
         String.valueOf(CoreConfiguration.DEFAULT.getApiEnableExpressionSkillValidation()));
     defaultProperties.setProperty(API_ENABLE_ENABLE_AGENT_CAPABILITIES_VALIDATION,
@@ -101,6 +185,8 @@ public class ConfigurationImpl implements CoreConfiguration, Configuration {
         String.valueOf(Configuration.DEFAULT.getClientReadTimeout()));
     defaultProperties.setProperty(CLIENT_FOLLOW_REDIRECTS,
         String.valueOf(Configuration.DEFAULT.getClientFollowRedirects()));
+    defaultProperties.setProperty(API_ENABLE_QUERY_STATISTICS_HEADERS,
+        String.valueOf(Configuration.DEFAULT.getApiEnableQueryStatisticsHeaders()));
     defaultProperties.setProperty(SHIRO_CONFIG_LOCATIONS,
         String.valueOf(Configuration.DEFAULT.getShiroConfigLocations()));
   }
@@ -173,6 +259,11 @@ public class ConfigurationImpl implements CoreConfiguration, Configuration {
     return provider.getProperty(API_ENABLE_ENABLE_TASK_REQUIREMENTS_VALIDATION, Boolean.class);
   }
 
+  @Override
+  public Boolean getApiEnableQueryStatisticsHeaders() {
+    return provider.getProperty(API_ENABLE_QUERY_STATISTICS_HEADERS, Boolean.class);
+  }
+
   @Override
   public String getShiroConfigLocations() {
     return provider.getProperty(SHIRO_CONFIG_LOCATIONS, String.class);
@@ -218,6 +309,141 @@ public class ConfigurationImpl implements CoreConfiguration, Configuration {
     return provider.getProperty(JPA_OPTIMISTIC_LOCK_RETRY_COUNT, Integer.class);
   }
 
+  @Override
+  public Integer getJpaLockRetryDelay() {
+    return provider.getProperty(JPA_LOCK_RETRY_DELAY_MILLIS, Integer.class);
+  }
+
+  @Override
+  public Integer getJpaLockRetryDelayMax() {
+    return provider.getProperty(JPA_LOCK_RETRY_DELAY_MAX_MILLIS, Integer.class);
+  }
+
+  @Override
+  public Boolean getJpaQueryStatisticsEnabled() {
+    return provider.getProperty(JPA_QUERY_STATISTICS_ENABLED, Boolean.class);
+  }
+
+  @Override
+  public String getJpaReadReplicaDataSource() {
+    return provider.getProperty(JPA_READ_REPLICA_DATA_SOURCE, String.class);
+  }
+
+  @Override
+  public Integer getTaskArchiveAge() {
+    return provider.getProperty(TASK_ARCHIVE_AGE_SECONDS, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskArchiveBatchSize() {
+    return provider.getProperty(TASK_ARCHIVE_BATCH_SIZE, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskArchivePeriod() {
+    return provider.getProperty(TASK_ARCHIVE_PERIOD_SECONDS, Integer.class);
+  }
+
+  @Override
+  public Boolean getClusterEnabled() {
+    return provider.getProperty(CLUSTER_ENABLED, Boolean.class);
+  }
+
+  @Override
+  public String getClusterNodeId() {
+    return provider.getProperty(CLUSTER_NODE_ID, String.class);
+  }
+
+  @Override
+  public Integer getClusterHeartbeatInterval() {
+    return provider.getProperty(CLUSTER_HEARTBEAT_SECONDS, Integer.class);
+  }
+
+  @Override
+  public Integer getClusterNodeTimeout() {
+    return provider.getProperty(CLUSTER_NODE_TIMEOUT_SECONDS, Integer.class);
+  }
+
+  @Override
+  public Integer getClusterSignalPollInterval() {
+    return provider.getProperty(CLUSTER_SIGNAL_POLL_MILLIS, Integer.class);
+  }
+
+  @Override
+  public Integer getDispatcherBulkheadConcurrency() {
+    return provider.getProperty(BULKHEAD_CONCURRENCY, Integer.class);
+  }
+
+  @Override
+  public Integer getDispatcherBulkheadGroups() {
+    return provider.getProperty(BULKHEAD_GROUPS, Integer.class);
+  }
+
+  @Override
+  public String getDispatcherExecutor() {
+    return provider.getProperty(DISPATCHER_EXECUTOR, String.class);
+  }
+
+  @Override
+  public Integer getQueueMetricsPeriod() {
+    return provider.getProperty(QUEUE_METRICS_PERIOD, Integer.class);
+  }
+
+  @Override
+  public Integer getQueueStatisticsWindow() {
+    return provider.getProperty(QUEUE_STATISTICS_WINDOW, Integer.class);
+  }
+
+  @Override
+  public Integer getEventBufferSize() {
+    return provider.getProperty(EVENT_BUFFER_SIZE, Integer.class);
+  }
+
+  @Override
+  public Integer getQueueMappingAsyncThreshold() {
+    return provider.getProperty(QUEUE_MAPPING_ASYNC_THRESHOLD, Integer.class);
+  }
+
+  @Override
+  public Integer getQueueMappingBatchSize() {
+    return provider.getProperty(QUEUE_MAPPING_BATCH_SIZE, Integer.class);
+  }
+
+  @Override
+  public Integer getJpaBatchSize() {
+    return provider.getProperty(JPA_BATCH_SIZE, Integer.class);
+  }
+
+  @Override
+  public Integer getAgentHeartbeatTtl() {
+    return provider.getProperty(AGENT_HEARTBEAT_TTL_SECONDS, Integer.class);
+  }
+
+  @Override
+  public Integer getDispatcherCoalesceInterval() {
+    return provider.getProperty(DISPATCHER_COALESCE_MILLIS, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskAdmissionRouterRate() {
+    return provider.getProperty(TASK_ADMISSION_ROUTER_RATE, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskAdmissionMaxWaiting() {
+    return provider.getProperty(TASK_ADMISSION_MAX_WAITING, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskAdmissionMaxBacklog() {
+    return provider.getProperty(TASK_ADMISSION_MAX_BACKLOG, Integer.class);
+  }
+
+  @Override
+  public Integer getTaskAdmissionRetryAfter() {
+    return provider.getProperty(TASK_ADMISSION_RETRY_AFTER, Integer.class);
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ConfigurationImpl{");
@@ -25,6 +25,7 @@ import com.softavail.commsrouter.api.exception.ExceptionPresentation;
 import com.softavail.commsrouter.api.interfaces.PaginatedService;
 import com.softavail.commsrouter.api.interfaces.RouterObjectService;
 import com.softavail.commsrouter.api.service.PaginationHelper;
+import com.softavail.commsrouter.webservice.providers.ReplicaRead;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -88,6 +89,7 @@ public abstract class GenericRouterObjectResource<T extends RouterObjectRef>
   }
 
   @GET
+  @ReplicaRead
   @ApiOperation(
       value = "List all resources",
       notes = "Default paging will be applied",
@@ -145,6 +147,7 @@ public abstract class GenericRouterObjectResource<T extends RouterObjectRef>
   }
 
   @GET
+  @ReplicaRead
   @Path("{resourceRef}")
   @ApiOperation(value = "Get resource by ID", notes = "Returns resource by the given ID")
   @ApiResponses({
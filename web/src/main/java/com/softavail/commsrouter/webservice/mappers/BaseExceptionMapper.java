@@ -23,7 +23,7 @@ import org.apache.logging.log4j.Logger;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.Response.StatusType;
 import javax.ws.rs.ext.ExceptionMapper;
 
 /**
@@ -36,9 +36,9 @@ public class BaseExceptionMapper<E extends Throwable> implements ExceptionMapper
   @Context
   protected HttpHeaders headers;
 
-  private final Status status;
+  private final StatusType status;
 
-  public BaseExceptionMapper(Status status) {
+  public BaseExceptionMapper(StatusType status) {
     this.status = status;
   }
 
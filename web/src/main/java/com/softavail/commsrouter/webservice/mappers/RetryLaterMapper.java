@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.mappers;
+
+import com.softavail.commsrouter.api.exception.RetryLaterException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.StatusType;
+
+/**
+ * Tells the client when to repeat a request refused under overload. The refusals are expected
+ * then and come in large numbers, so they are not logged as errors.
+ */
+public class RetryLaterMapper<E extends RetryLaterException> extends BaseExceptionMapper<E> {
+
+  private static final Logger LOGGER = LogManager.getLogger(RetryLaterMapper.class);
+
+  private final StatusType status;
+
+  public RetryLaterMapper(StatusType status) {
+    super(status);
+    this.status = status;
+  }
+
+  @Override
+  public Response toResponse(E exception) {
+
+    LOGGER.debug("{}, retry after {}s", exception.getMessage(), exception.getRetryAfterSeconds());
+
+    return Response.status(status)
+        .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+        .entity(getExceptionPresentation(exception))
+        .type(headers.getMediaType())
+        .build();
+  }
+
+}
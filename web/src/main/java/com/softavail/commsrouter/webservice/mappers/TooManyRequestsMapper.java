@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.mappers;
+
+import com.softavail.commsrouter.api.exception.TooManyRequestsException;
+
+import javax.ws.rs.core.Response.Status.Family;
+import javax.ws.rs.core.Response.StatusType;
+import javax.ws.rs.ext.Provider;
+
+@Provider
+public class TooManyRequestsMapper extends RetryLaterMapper<TooManyRequestsException> {
+
+  // Not in Response.Status before JAX-RS 2.1
+  private static final StatusType TOO_MANY_REQUESTS = new StatusType() {
+    @Override
+    public int getStatusCode() {
+      return 429;
+    }
+
+    @Override
+    public Family getFamily() {
+      return Family.CLIENT_ERROR;
+    }
+
+    @Override
+    public String getReasonPhrase() {
+      return "Too Many Requests";
+    }
+  };
+
+  public TooManyRequestsMapper() {
+    super(TOO_MANY_REQUESTS);
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.providers;
+
+import com.softavail.commsrouter.jpa.QueryStatistics;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Adds the database cost of the request to the response. Registered only when
+ * api.enableQueryStatisticsHeaders is set. The statistics are collected on the request thread, so
+ * the suspended and the streamed responses, whose response filter runs on another thread, are
+ * skipped.
+ */
+public class QueryStatisticsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+  public static final String X_QUERY_TRANSACTIONS = "X-Query-Transactions";
+  public static final String X_QUERY_STATEMENTS = "X-Query-Statements";
+  public static final String X_QUERY_ENTITIES = "X-Query-Entities";
+  public static final String X_QUERY_TIME = "X-Query-Time";
+
+  private static final String PROPERTY = QueryStatistics.class.getName();
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    // Also drops a scope left on this thread by an earlier request
+    QueryStatistics.endScope();
+    if (isAsynchronous(resourceInfo.getResourceMethod())) {
+      return;
+    }
+    requestContext.setProperty(PROPERTY, QueryStatistics.startScope());
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+      ContainerResponseContext responseContext) {
+
+    QueryStatistics statistics = (QueryStatistics) requestContext.getProperty(PROPERTY);
+    if (statistics == null) {
+      return;
+    }
+    if (QueryStatistics.currentScope() == statistics) {
+      QueryStatistics.endScope();
+    }
+    MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+    headers.putSingle(X_QUERY_TRANSACTIONS, statistics.getTransactionCount());
+    headers.putSingle(X_QUERY_STATEMENTS, statistics.getStatementCount());
+    headers.putSingle(X_QUERY_ENTITIES, statistics.getEntityCount());
+    headers.putSingle(X_QUERY_TIME, statistics.getElapsedMillis());
+  }
+
+  private static boolean isAsynchronous(Method method) {
+    if (method == null) {
+      return false;
+    }
+    if (ChunkedOutput.class.isAssignableFrom(method.getReturnType())) {
+      return true;
+    }
+    for (Annotation[] annotations : method.getParameterAnnotations()) {
+      for (Annotation annotation : annotations) {
+        if (annotation instanceof Suspended) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
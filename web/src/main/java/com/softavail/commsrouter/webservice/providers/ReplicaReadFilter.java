@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.providers;
+
+import com.softavail.commsrouter.jpa.ReplicaReadScope;
+
+import java.lang.reflect.Method;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Opens a {@link ReplicaReadScope} for the methods annotated with {@link ReplicaRead}. Runs for
+ * every request and sets the scope of the thread either way, so a scope that was not closed on
+ * this thread - the response filter of an asynchronous response runs elsewhere - never sends the
+ * reads of the next request to the replica.
+ */
+@Provider
+public class ReplicaReadFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    if (isReplicaRead()) {
+      ReplicaReadScope.begin();
+    } else {
+      ReplicaReadScope.end();
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+      ContainerResponseContext responseContext) {
+
+    ReplicaReadScope.end();
+  }
+
+  private boolean isReplicaRead() {
+    Method method = resourceInfo.getResourceMethod();
+    Class<?> resourceClass = resourceInfo.getResourceClass();
+    return method != null && method.isAnnotationPresent(ReplicaRead.class)
+        || resourceClass != null && resourceClass.isAnnotationPresent(ReplicaRead.class);
+  }
+
+}
@@ -21,10 +21,13 @@ import com.softavail.commsrouter.api.dto.arg.UpdateAgentArg;
 import com.softavail.commsrouter.api.dto.model.AgentDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
+import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExceptionPresentation;
-import com.softavail.commsrouter.api.interfaces.AgentService;
 import com.softavail.commsrouter.api.interfaces.RouterObjectService;
+import com.softavail.commsrouter.api.service.CoreAgentService;
+import com.softavail.commsrouter.app.AssignmentWaiters;
 import com.softavail.commsrouter.webservice.helpers.GenericRouterObjectResource;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -35,14 +38,19 @@ import io.swagger.annotations.ResponseHeader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -59,8 +67,10 @@ public class AgentResource extends GenericRouterObjectResource<AgentDto> {
 
   private static final Logger LOGGER = LogManager.getLogger(AgentResource.class);
 
+  private static final int MAX_NEXT_TIMEOUT_SECONDS = 120;
+
   @Inject
-  private AgentService agentService;
+  private CoreAgentService agentService;
 
   @Override
   protected RouterObjectService<AgentDto> getService() {
@@ -161,4 +171,86 @@ public class AgentResource extends GenericRouterObjectResource<AgentDto> {
         .build();
   }
 
+  @POST
+  @Path("{resourceId}/heartbeat")
+  @ApiOperation(
+      value = "Report that the Agent is alive",
+      notes = "Once an Agent sends heartbeats it is made offline if it is ready and no heartbeat "
+          + "arrives for agent.heartbeat.ttlSeconds. The heartbeats are kept in memory, only the "
+          + "first one checks that the Agent exists")
+  @ApiResponses({
+      @ApiResponse(code = 204, message = "Successful operation"),
+      @ApiResponse(code = 404, message = "Agent not found",
+          response = ExceptionPresentation.class)})
+  public void heartbeat(
+      @ApiParam(value = "ID of the agent")
+      @PathParam("resourceId")
+          String resourceId) throws CommsRouterException {
+
+    agentService.heartbeat(getRouterObjectRef(resourceId));
+  }
+
+  @POST
+  @Path("{resourceId}/next")
+  @ApiOperation(
+      value = "Wait for the next task of an Agent",
+      notes = "Makes the agent ready if it is offline or unavailable and holds the request until "
+          + "a task is assigned to it or the timeout elapses. An assignment delivered here is not "
+          + "posted to the callback of the task. A busy agent gets its most recent assignment "
+          + "right away. An agent with a free slot is always held, a lost assignment of an agent "
+          + "with more than one slot is returned only once all its slots are occupied. A newer "
+          + "poll for the same agent ends the previous one with no content")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Task assigned", response = TaskAssignmentDto.class),
+      @ApiResponse(code = 204, message = "No task was assigned within the timeout"),
+      @ApiResponse(code = 400, message = "Invalid timeout",
+          response = ExceptionPresentation.class),
+      @ApiResponse(code = 404, message = "Agent not found",
+          response = ExceptionPresentation.class)})
+  public void next(
+      @ApiParam(value = "ID of the agent", required = true)
+      @PathParam("resourceId")
+          String resourceId,
+      @ApiParam(value = "Seconds to wait for a task, up to " + MAX_NEXT_TIMEOUT_SECONDS)
+      @QueryParam("timeout") @DefaultValue("30")
+          int timeout,
+      @Suspended
+          AsyncResponse asyncResponse) {
+
+    LOGGER.debug("Agent {} waits for next task up to {}s", resourceId, timeout);
+
+    if (timeout < 1 || timeout > MAX_NEXT_TIMEOUT_SECONDS) {
+      asyncResponse.resume(new BadValueException(
+          "Timeout must be between 1 and " + MAX_NEXT_TIMEOUT_SECONDS + " seconds"));
+      return;
+    }
+
+    RouterObjectRef objectRef = getRouterObjectRef(resourceId);
+    AssignmentWaiters.Waiter waiter = new AssignmentWaiters.Waiter() {
+      @Override
+      public boolean deliver(TaskAssignmentDto assignment) {
+        return asyncResponse.resume(assignment);
+      }
+
+      @Override
+      public void replaced() {
+        asyncResponse.resume(Response.noContent().build());
+      }
+    };
+    asyncResponse.setTimeoutHandler(response -> {
+      agentService.cancelAwaitAssignment(objectRef, waiter);
+      response.resume(Response.noContent().build());
+    });
+    asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
+
+    try {
+      TaskAssignmentDto current = agentService.awaitAssignment(objectRef, waiter);
+      if (current != null) {
+        asyncResponse.resume(current);
+      }
+    } catch (CommsRouterException | RuntimeException e) {
+      asyncResponse.resume(e);
+    }
+  }
+
 }
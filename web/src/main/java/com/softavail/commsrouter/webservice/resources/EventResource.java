@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.resources;
+
+import com.softavail.commsrouter.api.dto.misc.RouterEventDto;
+import com.softavail.commsrouter.api.exception.CommsRouterException;
+import com.softavail.commsrouter.api.exception.ExceptionPresentation;
+import com.softavail.commsrouter.api.interfaces.RouterService;
+import com.softavail.commsrouter.webservice.EventStreams;
+import com.softavail.commsrouter.webservice.helpers.RouterObjectResource;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+
+/**
+ * Server-sent events with the task and agent state changes of a router.
+ */
+@Api("/events")
+public class EventResource extends RouterObjectResource {
+
+  @Inject
+  private RouterService routerService;
+
+  @Inject
+  private EventStreams eventStreams;
+
+  @GET
+  @Produces(EventStreams.SERVER_SENT_EVENTS)
+  @ApiOperation(
+      value = "Stream the state changes",
+      notes = "Server-sent events of the task and agent state changes of the router as they "
+          + "commit. The event name is the type of the object and the data is the change. A "
+          + "client that does not keep up gets an 'evicted' event and is disconnected, then it "
+          + "should reload the state it needs before subscribing again. Only the changes made "
+          + "through the node serving the stream are delivered",
+      response = RouterEventDto.class,
+      tags = "events")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = RouterEventDto.class),
+      @ApiResponse(code = 404, message = "Router with the provided id is not found",
+          response = ExceptionPresentation.class)})
+  public ChunkedOutput<String> stream(
+      @ApiParam(value = "Only the changes of the tasks in this queue")
+      @QueryParam("queue") String queueRef,
+      @ApiParam(value = "Only the changes of this agent and of the tasks assigned to it")
+      @QueryParam("agent") String agentRef)
+      throws CommsRouterException {
+
+    routerService.get(routerRef); // Check that the router exists
+    return eventStreams.open(routerRef, queueRef, agentRef);
+  }
+
+}
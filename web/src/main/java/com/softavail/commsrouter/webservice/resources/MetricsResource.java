@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.resources;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+/**
+ * The metrics of this instance in the Prometheus text format.
+ */
+@Path("metrics")
+@Api("/metrics")
+public class MetricsResource {
+
+  @Inject
+  private PrometheusMeterRegistry meterRegistry;
+
+  @GET
+  @Produces(TextFormat.CONTENT_TYPE_004)
+  @ApiOperation(value = "Get metrics", notes = "Returns the metrics in the Prometheus text format")
+  public String scrape() {
+    return meterRegistry.scrape();
+  }
+
+}
@@ -16,8 +16,13 @@
 
 package com.softavail.commsrouter.webservice.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.softavail.commsrouter.api.dto.arg.CreateQueueArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateQueueArg;
+import com.softavail.commsrouter.api.dto.misc.PaginatedList;
+import com.softavail.commsrouter.api.dto.misc.QueueMappingDto;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.misc.SizeDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.QueueDto;
@@ -25,9 +30,12 @@ import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExceptionPresentation;
+import com.softavail.commsrouter.api.interfaces.PaginatedService;
 import com.softavail.commsrouter.api.interfaces.QueueService;
 import com.softavail.commsrouter.api.interfaces.RouterObjectService;
+import com.softavail.commsrouter.jpa.ReplicaReadScope;
 import com.softavail.commsrouter.webservice.helpers.GenericRouterObjectResource;
+import com.softavail.commsrouter.webservice.providers.ReplicaRead;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -37,8 +45,13 @@ import io.swagger.annotations.ResponseHeader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import javax.inject.Inject;
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
@@ -47,11 +60,16 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Providers;
 
 /**
  * Created by @author mapuo on 31.08.17.
@@ -63,9 +81,17 @@ public class QueueResource extends GenericRouterObjectResource<QueueDto> {
 
   private static final Logger LOGGER = LogManager.getLogger(QueueResource.class);
 
+  public static final String NDJSON = "application/x-ndjson";
+
+  private static final int DEFAULT_TASKS_PER_PAGE = 50;
+  private static final int STREAM_TASKS_PER_PAGE = 500;
+
   @Inject
   private QueueService queueService;
 
+  @Context
+  private Providers providers;
+
   @Override
   protected RouterObjectService<QueueDto> getService() {
     return queueService;
@@ -168,6 +194,7 @@ public class QueueResource extends GenericRouterObjectResource<QueueDto> {
   }
 
   @GET
+  @ReplicaRead
   @Path("{resourceId}/size")
   @ApiOperation(
       value = "Get the size of the Queue",
@@ -185,17 +212,130 @@ public class QueueResource extends GenericRouterObjectResource<QueueDto> {
   }
 
   @GET
+  @Path("{resourceId}/stats")
+  @ApiOperation(
+      value = "Get the statistics of the Queue",
+      notes = "Returns the arrivals, assignments, abandon rate, wait and handle times of the "
+          + "Queue identified by {resourceId} over the sliding statistics window. The statistics "
+          + "are kept in memory by the node that serves the request")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = QueueStatisticsDto.class)})
+  public QueueStatisticsDto getStatistics(@PathParam("resourceId") String resourceId)
+      throws CommsRouterException {
+
+    return queueService.getStatistics(getRouterObjectRef(resourceId));
+  }
+
+  @GET
+  @Path("{resourceId}/mapping")
+  @ApiOperation(
+      value = "Get the agent mapping of the Queue",
+      notes = "Returns the version of the agent mappings in use by the Queue identified by "
+          + "{resourceId}. On large routers a predicate change is mapped in the background and "
+          + "the previous predicate stays in effect until all agents are evaluated. The progress "
+          + "is reported only by the node that does the mapping")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = QueueMappingDto.class)})
+  public QueueMappingDto getMapping(@PathParam("resourceId") String resourceId)
+      throws CommsRouterException {
+
+    return queueService.getMapping(getRouterObjectRef(resourceId));
+  }
+
+  @GET
+  @ReplicaRead
   @Path("{resourceId}/tasks")
   @ApiOperation(
       value = "Get the Tasks waiting in the Queue",
-      notes = "List all Tasks in waiting state in the Queue identified by {resourceId}")
+      notes = "List the Tasks in waiting state in the Queue identified by {resourceId} in the "
+          + "order they will be assigned. Without per_page and token all of them are returned "
+          + "at once")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = TaskDto.class, responseContainer = "List", responseHeaders = {
+          @ResponseHeader(
+              name = PaginatedService.NEXT_TOKEN_HEADER,
+              description = "The token for the next page",
+              response = String.class)})})
+  public Response getTasks(
+      @PathParam("resourceId") String resourceId,
+      @ApiParam(value = "The token from the previous request")
+      @QueryParam(PaginatedService.TOKEN_PARAM) String token,
+      @ApiParam(
+          value = "Number of items per page (Maximum 500)",
+          allowableValues = "range[1, 500]")
+      @Valid
+      @Min(value = 1L, message = "{resource.list.min.items.per.page}")
+      @Max(value = 500, message = "{resource.list.max.items.per.page}")
+      @QueryParam(PaginatedService.ITEMS_PER_PAGE_PARAM) Integer perPage)
+      throws CommsRouterException {
+
+    RouterObjectRef objectRef = getRouterObjectRef(resourceId);
+    if (token == null && perPage == null) {
+      Collection<TaskDto> tasks = queueService.getTasks(objectRef);
+      return Response.ok(new GenericEntity<Collection<TaskDto>>(tasks) {}).build();
+    }
+
+    PaginatedList<TaskDto> page = queueService
+        .getTasks(objectRef, token, perPage != null ? perPage : DEFAULT_TASKS_PER_PAGE);
+
+    return Response.ok(new GenericEntity<List<TaskDto>>(page.getList()) {})
+        .header(PaginatedService.NEXT_TOKEN_HEADER, page.getNextToken())
+        .build();
+  }
+
+  @GET
+  @ReplicaRead
+  @Path("{resourceId}/tasks")
+  // Lower quality, so that clients accepting anything keep getting the JSON array
+  @Produces(NDJSON + ";qs=0.5")
+  @ApiOperation(
+      value = "Stream the Tasks waiting in the Queue",
+      notes = "Writes the Tasks in waiting state in the Queue identified by {resourceId} as "
+          + "newline delimited JSON, in the order they will be assigned. The tasks are read in "
+          + "pages, so a task that changes its state during the stream may be skipped")
   @ApiResponses({
       @ApiResponse(code = 200, message = "Successful operation",
           response = TaskDto.class, responseContainer = "List")})
-  public Collection<TaskDto> getTasks(@PathParam("resourceId") String resourceId)
+  public Response streamTasks(@PathParam("resourceId") String resourceId)
       throws CommsRouterException {
 
-    return queueService.getTasks(getRouterObjectRef(resourceId));
+    RouterObjectRef objectRef = getRouterObjectRef(resourceId);
+    // Fail with 404 before the response is committed
+    PaginatedList<TaskDto> firstPage =
+        queueService.getTasks(objectRef, null, STREAM_TASKS_PER_PAGE);
+    ObjectWriter writer = providers
+        .getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE)
+        .getContext(TaskDto.class)
+        .writerFor(TaskDto.class);
+
+    StreamingOutput output = outputStream -> {
+      PaginatedList<TaskDto> page = firstPage;
+      while (true) {
+        for (TaskDto task : page.getList()) {
+          outputStream.write(writer.writeValueAsBytes(task));
+          outputStream.write('\n');
+        }
+        outputStream.flush();
+        if (page.getNextToken() == null) {
+          return;
+        }
+        // The body is written after the filter has closed the replica scope of the request
+        ReplicaReadScope.begin();
+        try {
+          page = queueService.getTasks(objectRef, page.getNextToken(), STREAM_TASKS_PER_PAGE);
+        } catch (CommsRouterException e) {
+          // The status is already sent, all that is left is to cut the stream
+          throw new IOException("Streaming the tasks of " + objectRef + " failed", e);
+        } finally {
+          ReplicaReadScope.end();
+        }
+      }
+    };
+
+    return Response.ok(output, NDJSON).build();
   }
 
 }
@@ -16,17 +16,22 @@
 
 package com.softavail.commsrouter.webservice.resources;
 
+import com.softavail.commsrouter.api.dto.arg.BatchAgentArg;
 import com.softavail.commsrouter.api.dto.arg.CreateRouterArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateRouterArg;
 import com.softavail.commsrouter.api.dto.misc.PaginatedList;
 import com.softavail.commsrouter.api.dto.misc.PagingRequest;
+import com.softavail.commsrouter.api.dto.misc.QueueStatisticsDto;
 import com.softavail.commsrouter.api.dto.model.ApiObjectRef;
 import com.softavail.commsrouter.api.dto.model.RouterDto;
+import com.softavail.commsrouter.api.exception.BadValueException;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExceptionPresentation;
 import com.softavail.commsrouter.api.interfaces.PaginatedService;
+import com.softavail.commsrouter.api.service.CoreAgentService;
 import com.softavail.commsrouter.api.service.CoreRouterService;
 import com.softavail.commsrouter.api.service.PaginationHelper;
+import com.softavail.commsrouter.webservice.providers.ReplicaRead;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -79,13 +84,19 @@ public class RouterResource {
 
   private static final Logger LOGGER = LogManager.getLogger(RouterResource.class);
 
+  private static final int MAX_AGENTS_BATCH_SIZE = 1000;
+
   @Context
   private ResourceContext resourceContext;
 
   @Inject
   private CoreRouterService routerService;
 
+  @Inject
+  private CoreAgentService agentService;
+
   @GET
+  @ReplicaRead
   @ApiOperation(value = "Get All Routers",
       notes = "Returns a list of Router. A single Router object represents "
           + "a container for Agents, Tasks, Queues and Plans.",
@@ -145,6 +156,7 @@ public class RouterResource {
   }
 
   @GET
+  @ReplicaRead
   @Path("{id}")
   @ApiOperation(
       value = "Find router by ID",
@@ -185,6 +197,27 @@ public class RouterResource {
         .build();
   }
 
+  @GET
+  @Path("{id}/stats")
+  @ApiOperation(
+      value = "Get the statistics of the Router",
+      notes = "Returns the statistics of all queues of the router over the sliding statistics "
+          + "window, as kept in memory by the node that serves the request",
+      response = QueueStatisticsDto.class,
+      tags = "routers")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = QueueStatisticsDto.class),
+      @ApiResponse(code = 404, message = "Router with the provided id is not found",
+          response = ExceptionPresentation.class)})
+  public QueueStatisticsDto getStatistics(
+      @ApiParam(value = "ID of the router")
+      @PathParam("id") String id)
+      throws CommsRouterException {
+
+    return routerService.getStatistics(id);
+  }
+
   @POST
   @ApiOperation(
       value = "Create a Router",
@@ -313,6 +346,39 @@ public class RouterResource {
     routerService.delete(ref);
   }
 
+  @POST
+  @Path("{routerRef}/agents:batch")
+  @ApiOperation(
+      value = "Create or update Agents in bulk",
+      notes = "Creates the Agents whose refs do not exist and updates the given properties and "
+          + "state of the others, all in a single transaction. The Agents are matched to the "
+          + "queues once for the whole batch and the tasks are dispatched per queue instead of "
+          + "per Agent. The versions of the Agents are not checked",
+      response = ApiObjectRef.class,
+      responseContainer = "List",
+      tags = "agents")
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation",
+          response = ApiObjectRef.class, responseContainer = "List"),
+      @ApiResponse(code = 400, message = "Invalid batch",
+          response = ExceptionPresentation.class),
+      @ApiResponse(code = 404, message = "Router not found",
+          response = ExceptionPresentation.class)})
+  public List<ApiObjectRef> batchAgents(
+      @ApiParam(value = "The id of the router") @PathParam("routerRef") String routerRef,
+      @ApiParam(value = "The Agents to create or update", required = true)
+          List<BatchAgentArg> agents)
+      throws CommsRouterException {
+
+    if (agents == null || agents.size() > MAX_AGENTS_BATCH_SIZE) {
+      throw new BadValueException(
+          "Expected a list of at most " + MAX_AGENTS_BATCH_SIZE + " agents");
+    }
+    LOGGER.debug("Router {}: upserting {} agents", routerRef, agents.size());
+
+    return agentService.batch(agents, routerRef);
+  }
+
   // Sub-resources
 
   @Path("{routerRef}/plans")
@@ -363,6 +429,22 @@ public class RouterResource {
     return resource;
   }
 
+  @Path("{routerRef}/task_history")
+  @ApiOperation(
+      value = "Task history sub-resource",
+      response = TaskHistoryResource.class,
+      tags = "tasks")
+  public TaskHistoryResource taskHistoryResource(@PathParam("routerRef") String routerRef) {
+    LOGGER.debug("Router {} task history", routerRef);
+
+    TaskHistoryResource resource = resourceContext.getResource(TaskHistoryResource.class);
+    resource.setRouterRef(routerRef);
+    UriBuilder taskHistoryResource =
+        UriBuilder.fromResource(this.getClass()).path(this.getClass(), "taskHistoryResource");
+    resource.setEntryPoint(taskHistoryResource);
+    return resource;
+  }
+
   @Path("{routerRef}/agents")
   @ApiOperation(
       value = "Agents sub-resource",
@@ -395,4 +477,20 @@ public class RouterResource {
     return resource;
   }
 
+  @Path("{routerRef}/events")
+  @ApiOperation(
+      value = "Events sub-resource",
+      response = EventResource.class,
+      tags = "events")
+  public EventResource eventResource(@PathParam("routerRef") String routerRef) {
+    LOGGER.debug("Router {} events", routerRef);
+
+    EventResource resource = resourceContext.getResource(EventResource.class);
+    resource.setRouterRef(routerRef);
+    UriBuilder eventResource =
+        UriBuilder.fromResource(this.getClass()).path(this.getClass(), "eventResource");
+    resource.setEntryPoint(eventResource);
+    return resource;
+  }
+
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 SoftAvail Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.softavail.commsrouter.webservice.resources;
+
+import com.softavail.commsrouter.api.dto.model.TaskDto;
+import com.softavail.commsrouter.api.interfaces.RouterObjectService;
+import com.softavail.commsrouter.api.interfaces.TaskHistoryService;
+import com.softavail.commsrouter.webservice.helpers.GenericRouterObjectResource;
+import io.swagger.annotations.Api;
+
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Completed and canceled tasks moved out of the task table. Supports list, get and delete.
+ */
+@Produces({MediaType.APPLICATION_JSON})
+@Consumes({MediaType.APPLICATION_JSON})
+@Api("/task_history")
+public class TaskHistoryResource extends GenericRouterObjectResource<TaskDto> {
+
+  @Inject
+  private TaskHistoryService taskHistoryService;
+
+  @Override
+  protected RouterObjectService<TaskDto> getService() {
+    return taskHistoryService;
+  }
+
+}
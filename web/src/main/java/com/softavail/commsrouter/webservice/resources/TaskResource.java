@@ -20,12 +20,15 @@ import com.softavail.commsrouter.api.dto.arg.CreateTaskArg;
 import com.softavail.commsrouter.api.dto.arg.UpdateTaskArg;
 import com.softavail.commsrouter.api.dto.model.CreatedTaskDto;
 import com.softavail.commsrouter.api.dto.model.RouterObjectRef;
+import com.softavail.commsrouter.api.dto.model.TaskAssignmentDto;
 import com.softavail.commsrouter.api.dto.model.TaskDto;
 import com.softavail.commsrouter.api.exception.CommsRouterException;
 import com.softavail.commsrouter.api.exception.ExceptionPresentation;
 import com.softavail.commsrouter.api.interfaces.RouterObjectService;
 import com.softavail.commsrouter.api.interfaces.TaskService;
+import com.softavail.commsrouter.api.service.CoreTaskService;
 import com.softavail.commsrouter.webservice.helpers.GenericRouterObjectResource;
+import com.softavail.commsrouter.webservice.providers.ReplicaRead;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -66,6 +69,9 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
   @Inject
   private TaskService taskService;
 
+  @Inject
+  private CoreTaskService coreTaskService;
+
   @Context
   private ResourceContext resourceContext;
 
@@ -85,6 +91,7 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
   }
 
   @GET
+  @ReplicaRead
   @Path("byTag")
   @ApiOperation(value = "Get resource by Tag", notes = "Returns resource by the given Tag")
   public Response getByTag(@QueryParam("tag") String tag)
@@ -102,7 +109,7 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
   @ApiOperation(
       value = "Add new Task",
       notes = "Create a new Task within a Router")
-  @ApiResponses(
+  @ApiResponses({
       @ApiResponse(
           code = 201,
           message = "Created successfully",
@@ -115,7 +122,15 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
               @ResponseHeader(
                   name = TaskService.X_QUEUE_SIZE,
                   response = Long.class,
-                  description = "The number of tasks in the queue before that one")}))
+                  description = "The number of tasks in the queue before that one")}),
+      @ApiResponse(code = 429, message = "Router rate exceeded or the queue is full",
+          response = ExceptionPresentation.class, responseHeaders = @ResponseHeader(
+              name = HttpHeaders.RETRY_AFTER, response = Long.class,
+              description = "Seconds to wait before retrying")),
+      @ApiResponse(code = 503, message = "The dispatcher of the router is overloaded",
+          response = ExceptionPresentation.class, responseHeaders = @ResponseHeader(
+              name = HttpHeaders.RETRY_AFTER, response = Long.class,
+              description = "Seconds to wait before retrying"))})
   public Response create(CreateTaskArg taskArg)
       throws CommsRouterException {
 
@@ -139,7 +154,15 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
       @ApiResponse(code = 404, message = "Task not found",
           response = ExceptionPresentation.class),
       @ApiResponse(code = 405, message = "Validation exception",
-          response = ExceptionPresentation.class)})
+          response = ExceptionPresentation.class),
+      @ApiResponse(code = 429, message = "Router rate exceeded or the queue is full",
+          response = ExceptionPresentation.class, responseHeaders = @ResponseHeader(
+              name = HttpHeaders.RETRY_AFTER, response = Long.class,
+              description = "Seconds to wait before retrying")),
+      @ApiResponse(code = 503, message = "The dispatcher of the router is overloaded",
+          response = ExceptionPresentation.class, responseHeaders = @ResponseHeader(
+              name = HttpHeaders.RETRY_AFTER, response = Long.class,
+              description = "Seconds to wait before retrying"))})
   public Response create(
       @ApiParam(value = "The id of the task to be replaced", required = true)
       @PathParam("resourceId")
@@ -163,6 +186,8 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
       value = "Update an existing Task",
       notes = "Update some properties of an existing Task")
   @ApiResponses({
+      @ApiResponse(code = 200, message = "Completed, the next assignment of the agent",
+          response = TaskAssignmentDto.class),
       @ApiResponse(code = 204, message = "Successful operation"),
       @ApiResponse(code = 400, message = "Invalid ID supplied",
           response = ExceptionPresentation.class),
@@ -170,14 +195,22 @@ public class TaskResource extends GenericRouterObjectResource<TaskDto> {
           response = ExceptionPresentation.class),
       @ApiResponse(code = 405, message = "Validation exception",
           response = ExceptionPresentation.class)})
-  public void update(@PathParam("resourceId") String resourceId, UpdateTaskArg taskArg)
+  public Response update(@PathParam("resourceId") String resourceId, UpdateTaskArg taskArg)
       throws CommsRouterException {
 
     RouterObjectRef objectId = getRouterObjectRef(resourceId);
 
     LOGGER.debug("Updating task: {}", taskArg);
 
+    if (Boolean.TRUE.equals(taskArg.getFetchNext())) {
+      TaskAssignmentDto next = coreTaskService.updateAndFetchNext(taskArg, objectId);
+      if (next != null) {
+        return Response.ok(next).build();
+      }
+      return Response.noContent().build();
+    }
     taskService.update(taskArg, objectId);
+    return Response.noContent().build();
   }
 
   // Sub-resources